@@ -0,0 +1,106 @@
+package com.example.edog.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 设备文本上报解析基准：单遍扫描 vs 原来的正则解析
+ * 运行：mvn -Pjmh test-compile exec:exec -Djmh.include=DeviceProtocolParserBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DeviceProtocolParserBenchmark {
+
+    @Param({
+            "(45,80)",
+            "(volume,60)",
+            "{\"type\":\"status\",\"volume\":60}",
+            "ping"
+    })
+    private String message;
+
+    private final DeviceTelemetry telemetry = new DeviceTelemetry();
+
+    @Setup
+    public void setup() {
+        if (DeviceProtocolParser.parse(message, telemetry) != Legacy.recognised(message)) {
+            throw new IllegalStateException("新旧实现结果不一致: " + message);
+        }
+    }
+
+    @Benchmark
+    public boolean scanner() {
+        return DeviceProtocolParser.parse(message, telemetry);
+    }
+
+    /**
+     * 与改写前 handleTextMessage 的调用顺序一致：trim，先解析音量，再解析灯光状态
+     */
+    @Benchmark
+    public Object legacy() {
+        String text = message.trim();
+        Integer volume = Legacy.parseVolume(text);
+        if (volume != null) return volume;
+        return Legacy.parseLightStatus(text);
+    }
+
+    /**
+     * 改写前的实现，仅用于对比
+     */
+    private static final class Legacy {
+
+        private static final Pattern LT_PATTERN = Pattern.compile("^\\((\\d+)\\s*[，,]\\s*(\\d+)\\)$");
+        private static final Pattern VOLUME_PATTERN = Pattern.compile("^\\((?i:volume|vol)\\s*[，,]\\s*(\\d{1,3})\\)$");
+        private static final Pattern VOLUME_JSON_PATTERN = Pattern.compile("\"volume\"\\s*:\\s*(\\d{1,3})");
+
+        static boolean recognised(String message) {
+            String text = message.trim();
+            return parseVolume(text) != null || parseLightStatus(text) != null;
+        }
+
+        static Integer parseVolume(String text) {
+            Matcher vMatcher = VOLUME_PATTERN.matcher(text);
+            if (vMatcher.matches()) return parseIntSafe(vMatcher.group(1));
+            Matcher vjMatcher = VOLUME_JSON_PATTERN.matcher(text);
+            if (vjMatcher.find()) return parseIntSafe(vjMatcher.group(1));
+            return null;
+        }
+
+        static String parseLightStatus(String text) {
+            Matcher matcher = LT_PATTERN.matcher(text);
+            if (!matcher.matches()) return null;
+            try {
+                int b = Math.max(0, Math.min(100, Integer.parseInt(matcher.group(1))));
+                int t = Math.max(0, Math.min(100, Integer.parseInt(matcher.group(2))));
+                return "(" + b + "," + t + ")";
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        private static int parseIntSafe(String val) {
+            try {
+                return Math.max(0, Math.min(100, Integer.parseInt(val)));
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.edog.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 唤醒词检测基准：位并行匹配器 vs 原来的滑动窗口 Levenshtein
+ * 运行：mvn -Pjmh test-compile exec:exec -Djmh.include=WakeWordMatcherBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WakeWordMatcherBenchmark {
+
+    @Param({
+            // 普通指令，不含唤醒词（最常见，也是旧实现最慢的情况）
+            "bangwobadengtiaoliangyidianranhouzaibayinliangtiaoxiao",
+            // 唤醒词在句首
+            "xiaoaitongxuekaideng",
+            // 识别偏差（小艾同鞋）且前面带有其他字
+            "nihaoxiaoaitongxiebangwoguandeng"
+    })
+    private String pinyin;
+
+    private WakeWordMatcher matcher;
+
+    @Setup
+    public void setup() {
+        matcher = WakeWordUtils.defaultMatcher();
+        if ((matcher.match(pinyin) >= 0) != Legacy.isWakeWord(pinyin)) {
+            throw new IllegalStateException("新旧实现结果不一致: " + pinyin);
+        }
+    }
+
+    @Benchmark
+    public boolean matcher() {
+        return matcher.match(pinyin) >= 0;
+    }
+
+    @Benchmark
+    public boolean legacy() {
+        return Legacy.isWakeWord(pinyin);
+    }
+
+    /**
+     * 改写前的实现（去掉日志），仅用于对比
+     */
+    private static final class Legacy {
+
+        private static final String WAKE_WORD_PINYIN = "xiaoaitongxue";
+        private static final double WAKE_WORD_SIMILARITY_THRESHOLD = 0.75;
+
+        static boolean isWakeWord(String cleanPinyin) {
+            if (cleanPinyin == null || cleanPinyin.isEmpty()) return false;
+            if (cleanPinyin.contains(WAKE_WORD_PINYIN)) return true;
+            if (similarity(cleanPinyin, WAKE_WORD_PINYIN) >= WAKE_WORD_SIMILARITY_THRESHOLD) return true;
+            if (cleanPinyin.length() > WAKE_WORD_PINYIN.length()) {
+                int windowSize = WAKE_WORD_PINYIN.length();
+                for (int i = 0; i <= cleanPinyin.length() - windowSize; i++) {
+                    String sub = cleanPinyin.substring(i, i + windowSize);
+                    if (similarity(sub, WAKE_WORD_PINYIN) >= WAKE_WORD_SIMILARITY_THRESHOLD) return true;
+                }
+            }
+            return false;
+        }
+
+        static double similarity(String p1, String p2) {
+            if (p1.equals(p2)) return 1.0;
+            int maxLen = Math.max(p1.length(), p2.length());
+            if (maxLen == 0) return 1.0;
+            return 1.0 - (double) levenshtein(p1, p2) / maxLen;
+        }
+
+        static int levenshtein(String s1, String s2) {
+            int m = s1.length();
+            int n = s2.length();
+            int[][] dp = new int[m + 1][n + 1];
+            for (int i = 0; i <= m; i++) dp[i][0] = i;
+            for (int j = 0; j <= n; j++) dp[0][j] = j;
+            for (int i = 1; i <= m; i++) {
+                for (int j = 1; j <= n; j++) {
+                    int cost = s1.charAt(i - 1) == s2.charAt(j - 1) ? 0 : 1;
+                    dp[i][j] = Math.min(Math.min(dp[i - 1][j] + 1, dp[i][j - 1] + 1), dp[i - 1][j - 1] + cost);
+                }
+            }
+            return dp[m][n];
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.edog.configurer;
+
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.util.Map;
+
+/**
+ * 设备握手拦截器
+ * 把设备在握手时携带的身份信息（查询参数或请求头）写入 WebSocket 会话属性，
+ * 例如 ws://host:6060/esp32?userId=xxx&deviceId=yyy 或请求头 X-User-Id / X-Device-Id
+ * 设备请求二进制协议（proto=bin 或 X-Lamp-Proto: bin）时在响应头中回写 X-Lamp-Proto: bin 表示已接受
+ */
+public class DeviceHandshakeInterceptor implements HandshakeInterceptor {
+
+    public static final String ATTR_USER_ID = "userId";
+    public static final String ATTR_DEVICE_ID = "deviceId";
+    public static final String ATTR_WAKE_WORD = "wakeWord";
+    public static final String ATTR_PROTOCOL = "proto";
+    public static final String PROTOCOL_BINARY = "bin";
+
+    private static final String HEADER_USER_ID = "X-User-Id";
+    private static final String HEADER_DEVICE_ID = "X-Device-Id";
+    private static final String HEADER_WAKE_WORD = "X-Wake-Word";
+    private static final String HEADER_PROTOCOL = "X-Lamp-Proto";
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        Map<String, String> query = UriComponentsBuilder.fromUri(request.getURI()).build().getQueryParams().toSingleValueMap();
+
+        copy(query.get(ATTR_USER_ID), request.getHeaders().getFirst(HEADER_USER_ID), ATTR_USER_ID, attributes);
+        copy(query.get(ATTR_DEVICE_ID), request.getHeaders().getFirst(HEADER_DEVICE_ID), ATTR_DEVICE_ID, attributes);
+        copy(query.get(ATTR_WAKE_WORD), request.getHeaders().getFirst(HEADER_WAKE_WORD), ATTR_WAKE_WORD, attributes);
+        copy(query.get(ATTR_PROTOCOL), request.getHeaders().getFirst(HEADER_PROTOCOL), ATTR_PROTOCOL, attributes);
+
+        if (isBinaryProtocol(attributes)) {
+            response.getHeaders().set(HEADER_PROTOCOL, PROTOCOL_BINARY);
+        }
+        return true;
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                               WebSocketHandler wsHandler, Exception exception) {
+    }
+
+    public static boolean isBinaryProtocol(Map<String, Object> attributes) {
+        Object proto = attributes.get(ATTR_PROTOCOL);
+        return proto != null && PROTOCOL_BINARY.equalsIgnoreCase(proto.toString());
+    }
+
+    private static void copy(String queryValue, String headerValue, String key, Map<String, Object> attributes) {
+        String value = queryValue != null && !queryValue.isBlank() ? queryValue : headerValue;
+        if (value != null && !value.isBlank()) {
+            attributes.put(key, value.trim());
+        }
+    }
+}
@@ -25,6 +25,7 @@ public class WebSocketConfig implements WebSocketConfigurer {
         
         registry.addHandler(webSocketServer, "/esp32")
                 .setHandshakeHandler(handshakeHandler)
+                .addInterceptors(new DeviceHandshakeInterceptor())
                 .setAllowedOrigins("*");
     }
 
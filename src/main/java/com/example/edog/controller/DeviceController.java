@@ -0,0 +1,81 @@
+package com.example.edog.controller;
+
+import com.example.edog.dto.DeviceStateResponse;
+import com.example.edog.service.DeviceRegistry;
+import com.example.edog.service.DeviceStateHub;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 设备状态查询
+ */
+@RestController
+@RequestMapping("/device")
+@CrossOrigin(origins = "*", maxAge = 3600)
+public class DeviceController {
+
+    @Autowired
+    private DeviceRegistry deviceRegistry;
+
+    @Autowired
+    private DeviceStateHub deviceStateHub;
+
+    /**
+     * 查询单台设备的完整状态
+     * GET /device/{deviceId}
+     * 响应带 ETag（设备ID与状态版本号），请求头 If-None-Match 相同时返回 304
+     */
+    @GetMapping("/{deviceId}")
+    public ResponseEntity<DeviceStateResponse> getDevice(@PathVariable String deviceId,
+                                                         @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+        DeviceRegistry.DeviceState device = deviceRegistry.get(deviceId);
+        if (device == null) return ResponseEntity.notFound().build();
+
+        DeviceStateResponse state = device.toResponse();
+        String etag = DeviceRegistry.etag(state);
+        if (etag.equals(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        return ResponseEntity.ok().eTag(etag).body(state);
+    }
+
+    /**
+     * 订阅设备状态推送（SSE），替代轮询 /light/getlt 与 /voice/getvolume
+     * GET /device/stream?deviceId=a&deviceId=b 或 /device/stream?userId=xxx
+     * 连接建立后先推送一次完整状态，之后每次变化推送 state 事件，只包含变化的字段
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(@RequestParam(value = "deviceId", required = false) List<String> deviceIds,
+                             @RequestParam(value = "userId", required = false) String userId) {
+        Collection<String> targets = deviceIds != null && !deviceIds.isEmpty() ? deviceIds : deviceRegistry.devicesOfUser(userId);
+        if (targets.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "请指定 deviceId 或已绑定设备的 userId");
+        }
+        if (targets.size() > deviceStateHub.getMaxDevicesPerSubscription()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "单个订阅最多 " + deviceStateHub.getMaxDevicesPerSubscription() + " 台设备");
+        }
+
+        SseEmitter emitter = deviceStateHub.subscribe(targets);
+        if (emitter == null) {
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "订阅数已达上限");
+        }
+        return emitter;
+    }
+
+    /**
+     * 列出所有设备状态
+     * GET /device/list?onlineOnly=true
+     */
+    @GetMapping("/list")
+    public List<DeviceStateResponse> listDevices(@RequestParam(value = "onlineOnly", required = false, defaultValue = "false") boolean onlineOnly) {
+        return deviceRegistry.snapshot(onlineOnly);
+    }
+}
@@ -1,13 +1,40 @@
 package com.example.edog.controller;
 
+import com.example.edog.dto.HealthHistoryPage;
+import com.example.edog.dto.VitalsSample;
 import com.example.edog.entity.HealthData;
+import com.example.edog.enums.RollupGranularity;
 import com.example.edog.service.HealthDataService;
+import com.example.edog.service.HealthHistoryService;
+import com.example.edog.service.HealthRollupService;
+import com.example.edog.service.LiveVitalsHub;
+import com.example.edog.service.RecentVitalsStore;
+import com.example.edog.utils.HealthSampleCodec;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
 
 /**
  * 健康数据控制器
@@ -20,6 +47,33 @@ import java.util.Map;
 public class HealthDataController {
     
     private final HealthDataService healthDataService;
+
+    private final HealthRollupService healthRollupService;
+
+    private final RecentVitalsStore recentVitalsStore;
+
+    private final HealthHistoryService healthHistoryService;
+
+    private final LiveVitalsHub liveVitalsHub;
+
+    // 历史查询未指定起始时间时的默认值
+    private static final LocalDateTime HISTORY_START = LocalDateTime.of(2000, 1, 1, 0, 0);
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    private static final ObjectReader BULK_READER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+            .readerFor(BulkUploadRequest.class);
+
+    // 单次批量上传的样本数与（解压后）请求体大小上限
+    @Value("${lamp.health.bulk.max-samples:5000}")
+    private int maxBulkSamples = 5000;
+
+    @Value("${lamp.health.bulk.max-body-bytes:1048576}")
+    private int maxBulkBodyBytes = 1048576;
+
+    // 趋势查询单次返回的时间桶数上限
+    @Value("${lamp.health.trend.max-points:1500}")
+    private int maxTrendPoints = 1500;
     
     /**
      * 上传健康数据接口
@@ -37,21 +91,10 @@ public class HealthDataController {
         
         try {
             // 参数校验
-            if (request.getHeartRate() == null || request.getBreathingRate() == null) {
-                response.put("success", false);
-                response.put("message", "心率或呼吸频率不能为空");
-                return response;
-            }
-            
-            if (request.getHeartRate() < 0 || request.getHeartRate() > 300) {
-                response.put("success", false);
-                response.put("message", "心率数值异常（正常范围: 0-300）");
-                return response;
-            }
-            
-            if (request.getBreathingRate() < 0 || request.getBreathingRate() > 100) {
+            String error = HealthDataService.validate(request.getHeartRate(), request.getBreathingRate());
+            if (error != null) {
                 response.put("success", false);
-                response.put("message", "呼吸频率数值异常（正常范围: 0-100）");
+                response.put("message", error);
                 return response;
             }
             
@@ -61,6 +104,12 @@ public class HealthDataController {
                 request.getBreathingRate()
             );
             
+            if (savedData == null) {
+                response.put("success", false);
+                response.put("message", "服务繁忙，请稍后重试");
+                return response;
+            }
+            
             response.put("success", true);
             response.put("message", "数据上传成功");
             response.put("data", savedData);
@@ -74,6 +123,278 @@ public class HealthDataController {
         return response;
     }
     
+    /**
+     * 批量上传接口
+     * 设备离线期间缓存的样本或攒下的多条样本一次上传，每条带设备端序号和采样时间。
+     * 请求体为 JSON（{@link BulkUploadRequest}）或紧凑二进制（application/octet-stream，见 {@link HealthSampleCodec}），
+     * 均可加 Content-Encoding: gzip。设备ID取自查询参数 deviceId、请求头 X-Device-Id 或 JSON 体。
+     * 同一设备重复提交相同序号的样本不会产生重复数据；返回 success=false 时可整批重试。
+     *
+     * @return received 样本数、accepted 入队数、invalid 不合法数及前若干条错误
+     */
+    @PostMapping("/bulk")
+    public Map<String, Object> uploadBulk(@RequestBody byte[] body,
+                                          @RequestParam(required = false) String deviceId,
+                                          @RequestHeader(value = "X-Device-Id", required = false) String deviceHeader,
+                                          @RequestHeader(value = HttpHeaders.CONTENT_TYPE, required = false) String contentType,
+                                          @RequestHeader(value = HttpHeaders.CONTENT_ENCODING, required = false) String contentEncoding) {
+        Map<String, Object> response = new HashMap<>();
+        String device = deviceId != null && !deviceId.isBlank() ? deviceId : deviceHeader;
+
+        HealthDataService.BulkBatch batch;
+        int received;
+        try {
+            if (body.length > maxBulkBodyBytes) return failure(response, "请求体过大");
+            byte[] payload = contentEncoding != null && contentEncoding.toLowerCase().contains("gzip")
+                    ? gunzip(body, maxBulkBodyBytes) : body;
+
+            if (contentType != null && contentType.startsWith(MediaType.APPLICATION_OCTET_STREAM_VALUE)) {
+                if (!isValidDeviceId(device)) return failure(response, "缺少或无效的设备ID");
+                HealthDataService.BulkBatch binaryBatch = healthDataService.newBulkBatch(device.trim(), 64);
+                received = HealthSampleCodec.decode(ByteBuffer.wrap(payload), maxBulkSamples,
+                        (index, seq, epochSecond, heartRate, breathingRate) ->
+                                binaryBatch.add(index, seq, epochSecond * 1000, heartRate, breathingRate));
+                batch = binaryBatch;
+            } else {
+                BulkUploadRequest request = BULK_READER.readValue(payload);
+                if (device == null || device.isBlank()) device = request.getDeviceId();
+                if (!isValidDeviceId(device)) return failure(response, "缺少或无效的设备ID");
+                List<BulkSample> samples = request.getSamples() != null ? request.getSamples() : List.of();
+                if (samples.size() > maxBulkSamples) return failure(response, "样本数超过上限: " + maxBulkSamples);
+
+                batch = healthDataService.newBulkBatch(device.trim(), samples.size());
+                for (int i = 0; i < samples.size(); i++) {
+                    BulkSample sample = samples.get(i);
+                    if (sample == null) {
+                        batch.add(i, null, null, null, null);
+                    } else {
+                        batch.add(i, sample.getSeq(), sample.getTimestamp(), sample.getHeartRate(), sample.getBreathingRate());
+                    }
+                }
+                received = samples.size();
+            }
+        } catch (IllegalArgumentException | IOException e) {
+            log.warn("批量健康数据解析失败: device={}, error={}", device, e.getMessage());
+            return failure(response, "请求体格式错误: " + e.getMessage());
+        }
+
+        int accepted = healthDataService.saveBulk(batch);
+        boolean complete = accepted == batch.getValidCount();
+        response.put("success", complete);
+        response.put("message", complete ? "数据上传成功" : "服务繁忙，请稍后重试");
+        response.put("received", received);
+        response.put("accepted", accepted);
+        response.put("invalid", batch.getInvalidCount());
+        if (!batch.getErrors().isEmpty()) response.put("errors", batch.getErrors());
+        return response;
+    }
+
+    /**
+     * 健康数据趋势
+     * 只读取按分钟/小时/天预先汇总的数据，不扫描原始样本。
+     *
+     * @param deviceId 设备ID
+     * @param granularity 粒度：1m / 1h（默认）/ 1d
+     * @param from 起始时间（含），默认向前 60 个时间桶
+     * @param to 结束时间（不含），默认当前时间
+     * @return data 为按时间升序的趋势点
+     */
+    @GetMapping("/trend")
+    public Map<String, Object> trend(@RequestParam String deviceId,
+                                     @RequestParam(defaultValue = "1h") String granularity,
+                                     @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                     @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        Map<String, Object> response = new HashMap<>();
+        RollupGranularity g = RollupGranularity.fromCode(granularity);
+        if (g == null) return failure(response, "不支持的粒度: " + granularity);
+
+        LocalDateTime end = to != null ? to : LocalDateTime.now();
+        LocalDateTime start = from != null ? from : g.bucketStart(end).minus(60, g.getUnit());
+        if (!start.isBefore(end)) return failure(response, "起始时间必须早于结束时间");
+        if (g.getUnit().between(g.bucketStart(start), end) >= maxTrendPoints) {
+            return failure(response, "时间范围过大，请使用更粗的粒度");
+        }
+
+        try {
+            response.put("success", true);
+            response.put("data", healthRollupService.trend(deviceId, g, start, end));
+        } catch (Exception e) {
+            log.error("健康数据趋势查询失败", e);
+            return failure(response, "查询失败: " + e.getMessage());
+        }
+        return response;
+    }
+
+    /**
+     * 设备最新一条健康数据（内存缓存）
+     */
+    @GetMapping("/recent/latest")
+    public Map<String, Object> recentLatest(@RequestParam String deviceId) {
+        Map<String, Object> response = new HashMap<>();
+        VitalsSample latest = recentVitalsStore.latest(deviceId);
+        if (latest == null) return failure(response, "暂无该设备的最近数据");
+        response.put("success", true);
+        response.put("data", latest);
+        return response;
+    }
+
+    /**
+     * 设备最近 limit 条健康数据，按时间升序（内存缓存）
+     */
+    @GetMapping("/recent")
+    public Map<String, Object> recent(@RequestParam String deviceId,
+                                      @RequestParam(defaultValue = "20") int limit) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("data", recentVitalsStore.last(deviceId, Math.min(limit, recentVitalsStore.getCapacityPerDevice())));
+        return response;
+    }
+
+    /**
+     * 设备最近 windowMs 毫秒内的统计：最小、最大、均值、标准差（内存缓存）
+     */
+    @GetMapping("/recent/stats")
+    public Map<String, Object> recentStats(@RequestParam String deviceId,
+                                           @RequestParam(defaultValue = "600000") long windowMs) {
+        Map<String, Object> response = new HashMap<>();
+        if (windowMs <= 0) return failure(response, "windowMs 必须大于 0");
+        response.put("success", true);
+        response.put("data", recentVitalsStore.stats(deviceId, windowMs));
+        return response;
+    }
+
+    /**
+     * 订阅设备的实时健康数据（SSE）
+     * GET /api/health/live?deviceId=xxx&intervalMs=2000
+     * 每个间隔最多推送一个 vitals 事件（{@link com.example.edog.dto.LiveVitalsFrame}），间隔内没有新样本时不推送
+     *
+     * @param intervalMs 推送间隔，超出允许范围时取边界值
+     */
+    @GetMapping(value = "/live", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter live(@RequestParam String deviceId,
+                           @RequestParam(required = false) Long intervalMs) {
+        if (!isValidDeviceId(deviceId)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "设备ID无效");
+        }
+        SseEmitter emitter = liveVitalsHub.subscribe(deviceId, liveVitalsHub.normalizeInterval(intervalMs));
+        if (emitter == null) {
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "订阅数已达上限");
+        }
+        return emitter;
+    }
+
+    /**
+     * 健康数据历史，键集分页
+     *
+     * @param deviceId 设备ID
+     * @param from 起始时间（含），默认不限
+     * @param to 结束时间（不含），默认当前时间
+     * @param cursor 上一页返回的 nextCursor，第一页不传
+     * @param limit 每页条数，最多 1000
+     * @return data 为 {@link HealthHistoryPage}
+     */
+    @GetMapping("/history")
+    public Map<String, Object> history(@RequestParam String deviceId,
+                                       @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                       @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                       @RequestParam(required = false) String cursor,
+                                       @RequestParam(defaultValue = "100") int limit) {
+        Map<String, Object> response = new HashMap<>();
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) return failure(response, "limit 取值范围 1-" + MAX_PAGE_SIZE);
+        try {
+            HealthHistoryPage page = healthHistoryService.page(deviceId,
+                    from != null ? from : HISTORY_START, to != null ? to : LocalDateTime.now(), cursor, limit);
+            response.put("success", true);
+            response.put("data", page);
+        } catch (IllegalArgumentException e) {
+            return failure(response, e.getMessage());
+        } catch (Exception e) {
+            log.error("健康数据历史查询失败", e);
+            return failure(response, "查询失败: " + e.getMessage());
+        }
+        return response;
+    }
+
+    /**
+     * 导出健康数据历史，流式写出，适合导出数月的数据
+     *
+     * @param format csv（默认）或 ndjson
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> export(@RequestParam String deviceId,
+                                                        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                                        @RequestParam(defaultValue = "csv") String format) {
+        HealthHistoryService.ExportFormat exportFormat = "ndjson".equalsIgnoreCase(format)
+                ? HealthHistoryService.ExportFormat.NDJSON : HealthHistoryService.ExportFormat.CSV;
+        LocalDateTime start = from != null ? from : HISTORY_START;
+        LocalDateTime end = to != null ? to : LocalDateTime.now();
+        String filename = "health-" + deviceId.replaceAll("[^A-Za-z0-9_-]", "_")
+                + (exportFormat == HealthHistoryService.ExportFormat.CSV ? ".csv" : ".ndjson");
+
+        StreamingResponseBody body = out -> healthHistoryService.export(deviceId, start, end, exportFormat, out);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                .contentType(exportFormat == HealthHistoryService.ExportFormat.CSV
+                        ? new MediaType("text", "csv", StandardCharsets.UTF_8)
+                        : new MediaType("application", "x-ndjson", StandardCharsets.UTF_8))
+                .body(body);
+    }
+
+    private static Map<String, Object> failure(Map<String, Object> response, String message) {
+        response.put("success", false);
+        response.put("message", message);
+        return response;
+    }
+
+    private static boolean isValidDeviceId(String deviceId) {
+        return deviceId != null && !deviceId.isBlank() && deviceId.trim().length() <= 64;
+    }
+
+    /**
+     * 解压 gzip 请求体，解压后超过上限视为格式错误
+     */
+    private static byte[] gunzip(byte[] body, int maxBytes) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            byte[] out = in.readNBytes(maxBytes + 1);
+            if (out.length > maxBytes) throw new IOException("解压后超过 " + maxBytes + " 字节");
+            return out;
+        }
+    }
+
+    /**
+     * 批量上传请求体（JSON）
+     */
+    @lombok.Data
+    public static class BulkUploadRequest {
+        /**
+         * 设备ID（也可通过查询参数或请求头传递）
+         */
+        private String deviceId;
+
+        private List<BulkSample> samples;
+    }
+
+    /**
+     * 批量上传中的单条样本
+     */
+    @lombok.Data
+    public static class BulkSample {
+        /**
+         * 设备端序号，同一设备内唯一
+         */
+        private Long seq;
+
+        /**
+         * 采样时间（毫秒时间戳）
+         */
+        private Long timestamp;
+
+        private Integer heartRate;
+
+        private Integer breathingRate;
+    }
+
     /**
      * 健康数据请求体
      */
@@ -1,11 +1,14 @@
 package com.example.edog.controller;
 
+import com.example.edog.dto.DeviceStateResponse;
+import com.example.edog.service.DeviceRegistry;
 import com.example.edog.service.WebSocketServer;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.web.bind.annotation.PostMapping;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RequestParam;
-import org.springframework.web.bind.annotation.RestController;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/light")
@@ -14,40 +17,65 @@ public class LightController {
     @Autowired
     private WebSocketServer webSocketServer;
 
+    @Autowired
+    private DeviceRegistry deviceRegistry;
+
     @PostMapping("/brightness")
-    public String controlBrightness(@RequestParam("command") Integer command, 
-                                    @RequestParam(value = "value", required = false, defaultValue = "10") Integer value) {
-        String message = "";
+    public CompletableFuture<String> controlBrightness(@RequestParam("command") Integer command,
+                                                       @RequestParam(value = "value", required = false, defaultValue = "10") Integer value,
+                                                       @RequestParam(value = "deviceId", required = false) String deviceId,
+                                                       @RequestParam(value = "userId", required = false) String userId) {
+        String message;
         if (command == 1) {
             message = "(brightness_up," + value + ")";
         } else if (command == 2) {
             message = "(brightness_down," + value + ")";
         } else {
-            return "Unknown brightness command";
+            return CompletableFuture.completedFuture("Unknown brightness command");
         }
         
-        webSocketServer.broadcastControlMessage(message);
-        return "Sent: " + message;
+        return webSocketServer.dispatchControl(deviceId, userId, message)
+                .thenApply(report -> "Sent: " + message + " (" + report + ")");
     }
 
     @PostMapping("/temperature")
-    public String controlTemperature(@RequestParam("command") Integer command,
-                                    @RequestParam(value = "value", required = false, defaultValue = "10") Integer value) {
-        String message = "";
+    public CompletableFuture<String> controlTemperature(@RequestParam("command") Integer command,
+                                                        @RequestParam(value = "value", required = false, defaultValue = "10") Integer value,
+                                                        @RequestParam(value = "deviceId", required = false) String deviceId,
+                                                        @RequestParam(value = "userId", required = false) String userId) {
+        String message;
         if (command == 3) {
             message = "(tem_up," + value + ")";
         } else if (command == 4) {
             message = "(tem_down," + value + ")";
         } else {
-            return "Unknown temperature command";
+            return CompletableFuture.completedFuture("Unknown temperature command");
         }
 
-        webSocketServer.broadcastControlMessage(message);
-        return "Sent: " + message;
+        return webSocketServer.dispatchControl(deviceId, userId, message)
+                .thenApply(report -> "Sent: " + message + " (" + report + ")");
     }
 
-    @PostMapping("/getlt")
-    public String getLt() {
-        return webSocketServer.getLatestLt();
+    /**
+     * 查询灯光状态 "(亮度,色温)"
+     * 不传 deviceId 时返回最近上报的设备；响应带 ETag（设备ID与状态版本号），请求头 If-None-Match 相同时返回 304
+     */
+    @RequestMapping(value = "/getlt", method = {RequestMethod.GET, RequestMethod.POST})
+    public ResponseEntity<String> getLt(@RequestParam(value = "deviceId", required = false) String deviceId,
+                                        @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+        DeviceRegistry.DeviceState device = deviceRegistry.get(deviceId);
+        if (device == null) {
+            return deviceId == null || deviceId.isEmpty()
+                    ? ResponseEntity.ok("(0,0)")
+                    : ResponseEntity.status(HttpStatus.NOT_FOUND).body("Unknown device");
+        }
+
+        DeviceStateResponse state = device.toResponse();
+        String etag = DeviceRegistry.etag(state);
+        if (etag.equals(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        String body = state.getBrightness() == null ? "(0,0)" : "(" + state.getBrightness() + "," + state.getTemperature() + ")";
+        return ResponseEntity.ok().eTag(etag).body(body);
     }
 }
@@ -1,11 +1,14 @@
 package com.example.edog.controller;
 
+import com.example.edog.dto.DeviceStateResponse;
+import com.example.edog.service.DeviceRegistry;
 import com.example.edog.service.WebSocketServer;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.web.bind.annotation.PostMapping;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RequestParam;
-import org.springframework.web.bind.annotation.RestController;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/voice")
@@ -14,10 +17,15 @@ public class VoiceController {
     @Autowired
     private WebSocketServer webSocketServer;
 
+    @Autowired
+    private DeviceRegistry deviceRegistry;
+
     @PostMapping("/volume")
-    public String controlVolume(@RequestParam("command") Integer command,
-                                @RequestParam(value = "value", required = false) Integer value) {
-        if (command == null) return "Missing command";
+    public CompletableFuture<String> controlVolume(@RequestParam("command") Integer command,
+                                                   @RequestParam(value = "value", required = false) Integer value,
+                                                   @RequestParam(value = "deviceId", required = false) String deviceId,
+                                                   @RequestParam(value = "userId", required = false) String userId) {
+        if (command == null) return CompletableFuture.completedFuture("Missing command");
 
         String message;
         if (command == 1) {
@@ -29,20 +37,37 @@ public class VoiceController {
             if (step < 0) step = 0;
             message = "(volume_down," + step + ")";
         } else if (command == 3) {
-            if (value == null) return "Missing volume value";
+            if (value == null) return CompletableFuture.completedFuture("Missing volume value");
             int target = clampVolume(value);
             message = "(volume_set," + target + ")";
         } else {
-            return "Unknown volume command";
+            return CompletableFuture.completedFuture("Unknown volume command");
         }
 
-        webSocketServer.broadcastControlMessage(message);
-        return "Sent: " + message;
+        return webSocketServer.dispatchControl(deviceId, userId, message)
+                .thenApply(report -> "Sent: " + message + " (" + report + ")");
     }
 
-    @PostMapping("/getvolume")
-    public String getVolume() {
-        return String.valueOf(webSocketServer.getLatestVolume());
+    /**
+     * 查询音量
+     * 不传 deviceId 时返回最近上报的设备；响应带 ETag（设备ID与状态版本号），请求头 If-None-Match 相同时返回 304
+     */
+    @RequestMapping(value = "/getvolume", method = {RequestMethod.GET, RequestMethod.POST})
+    public ResponseEntity<String> getVolume(@RequestParam(value = "deviceId", required = false) String deviceId,
+                                            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+        DeviceRegistry.DeviceState device = deviceRegistry.get(deviceId);
+        if (device == null) {
+            return deviceId == null || deviceId.isEmpty()
+                    ? ResponseEntity.ok("0")
+                    : ResponseEntity.status(HttpStatus.NOT_FOUND).body("Unknown device");
+        }
+
+        DeviceStateResponse state = device.toResponse();
+        String etag = DeviceRegistry.etag(state);
+        if (etag.equals(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        return ResponseEntity.ok().eTag(etag).body(String.valueOf(state.getVolume() == null ? 0 : state.getVolume()));
     }
 
     private int clampVolume(int volume) {
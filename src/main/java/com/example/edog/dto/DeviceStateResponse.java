@@ -0,0 +1,76 @@
+package com.example.edog.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 设备状态响应对象
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class DeviceStateResponse {
+
+    /**
+     * 设备ID
+     */
+    private String deviceId;
+
+    /**
+     * 亮度 0-100，设备尚未上报时为 null
+     */
+    private Integer brightness;
+
+    /**
+     * 色温 0-100，设备尚未上报时为 null
+     */
+    private Integer temperature;
+
+    /**
+     * 音量 0-100，设备尚未上报时为 null
+     */
+    private Integer volume;
+
+    /**
+     * 是否在线
+     */
+    private Boolean online;
+
+    /**
+     * 状态版本号，值每变化一次加一
+     */
+    private Long version;
+
+    /**
+     * 最后活跃时间（毫秒时间戳）
+     */
+    private Long lastSeen;
+
+    /**
+     * 当前 WebSocket 会话ID
+     */
+    private String sessionId;
+
+    /**
+     * 设备远程地址
+     */
+    private String remoteAddress;
+
+    /**
+     * 绑定的用户ID
+     */
+    private String userId;
+
+    /**
+     * 是否使用二进制协议
+     */
+    private Boolean binaryProtocol;
+
+    /**
+     * 连接建立时间（毫秒时间戳）
+     */
+    private Long connectedAt;
+}
@@ -0,0 +1,29 @@
+package com.example.edog.dto;
+
+import com.example.edog.entity.HealthData;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 健康数据历史分页响应对象
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class HealthHistoryPage {
+
+    /**
+     * 本页数据，按上传时间升序
+     */
+    private List<HealthData> items;
+
+    /**
+     * 下一页游标，原样传回即可取下一页；没有更多数据时为 null
+     */
+    private String nextCursor;
+}
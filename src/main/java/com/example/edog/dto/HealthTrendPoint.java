@@ -0,0 +1,54 @@
+package com.example.edog.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 健康数据趋势点（一个汇总时间桶）
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class HealthTrendPoint {
+
+    /**
+     * 时间桶起点
+     */
+    private LocalDateTime bucketStart;
+
+    /**
+     * 样本数
+     */
+    private Integer sampleCount;
+
+    private Integer heartRateMin;
+
+    private Integer heartRateMax;
+
+    private Double heartRateAvg;
+
+    /**
+     * 心率中位数（由分布草图估计）
+     */
+    private Double heartRateP50;
+
+    /**
+     * 心率 95 分位数（由分布草图估计）
+     */
+    private Double heartRateP95;
+
+    private Integer breathingRateMin;
+
+    private Integer breathingRateMax;
+
+    private Double breathingRateAvg;
+
+    private Double breathingRateP50;
+
+    private Double breathingRateP95;
+}
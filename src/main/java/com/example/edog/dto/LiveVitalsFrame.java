@@ -0,0 +1,42 @@
+package com.example.edog.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 实时健康数据推送的一帧：合并了上一帧之后到达的全部样本
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class LiveVitalsFrame {
+
+    private String deviceId;
+
+    /**
+     * 最新一条样本的采样时间（毫秒时间戳）
+     */
+    private Long timestamp;
+
+    /**
+     * 最新一条样本的心率与呼吸频率
+     */
+    private Integer heartRate;
+
+    private Integer breathingRate;
+
+    /**
+     * 本帧合并的样本数
+     */
+    private Integer samples;
+
+    /**
+     * 本帧合并样本的平均心率与呼吸频率
+     */
+    private Double avgHeartRate;
+
+    private Double avgBreathingRate;
+}
@@ -0,0 +1,31 @@
+package com.example.edog.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 单条健康样本
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class VitalsSample {
+
+    /**
+     * 采样时间（毫秒时间戳）
+     */
+    private Long timestamp;
+
+    /**
+     * 心率（次/分钟）
+     */
+    private Integer heartRate;
+
+    /**
+     * 呼吸频率（次/分钟）
+     */
+    private Integer breathingRate;
+}
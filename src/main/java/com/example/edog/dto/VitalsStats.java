@@ -0,0 +1,50 @@
+package com.example.edog.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 时间窗口内的健康数据统计
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class VitalsStats {
+
+    /**
+     * 窗口起点（毫秒时间戳）
+     */
+    private Long from;
+
+    /**
+     * 窗口终点（毫秒时间戳）
+     */
+    private Long to;
+
+    /**
+     * 窗口内样本数；为 0 时其余统计值为 null
+     */
+    private Integer count;
+
+    private Integer heartRateMin;
+
+    private Integer heartRateMax;
+
+    private Double heartRateMean;
+
+    /**
+     * 心率总体标准差
+     */
+    private Double heartRateStddev;
+
+    private Integer breathingRateMin;
+
+    private Integer breathingRateMax;
+
+    private Double breathingRateMean;
+
+    private Double breathingRateStddev;
+}
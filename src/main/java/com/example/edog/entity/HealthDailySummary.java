@@ -0,0 +1,59 @@
+package com.example.edog.entity;
+
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * 每晚睡眠与生命体征汇总实体类
+ * 每台设备每晚一行，由夜间分析任务在早晨根据前一晚的样本计算
+ */
+@Data
+@TableName("health_daily_summary")
+public class HealthDailySummary {
+
+    /**
+     * 设备ID
+     */
+    private String deviceId;
+
+    /**
+     * 汇总日期：夜间窗口结束（早晨）所在的日期
+     */
+    private LocalDate summaryDate;
+
+    /**
+     * 夜间窗口内的有效样本数（心率、呼吸都大于 0，即有人在床）
+     */
+    private Integer sampleCount;
+
+    /**
+     * 估计的入睡时间，无法判断时为空
+     */
+    private LocalDateTime sleepOnset;
+
+    /**
+     * 静息心率：5 分钟滑动平均的最小值
+     */
+    private Integer restingHeartRate;
+
+    private Double avgHeartRate;
+
+    private Double avgBreathingRate;
+
+    /**
+     * 呼吸规律性：入睡后呼吸频率的变异系数（标准差 / 均值），越小越规律
+     */
+    private Double breathingCv;
+
+    /**
+     * 偏离中位数超过 3.5 个稳健标准差的心率样本数
+     */
+    private Integer heartRateOutliers;
+
+    private Integer breathingRateOutliers;
+
+    private LocalDateTime computedAt;
+}
@@ -21,6 +21,16 @@ public class HealthData {
     @TableId(type = IdType.AUTO)
     private Long id;
     
+    /**
+     * 设备ID（批量上传时填写）
+     */
+    private String deviceId;
+    
+    /**
+     * 设备端样本序号，与设备ID一起唯一，用于重复提交去重
+     */
+    private Long seq;
+    
     /**
      * 心率（次/分钟）
      */
@@ -0,0 +1,60 @@
+package com.example.edog.entity;
+
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 健康数据汇总实体类
+ * 每台设备每个时间桶（1 分钟 / 1 小时 / 1 天）一行，随样本写入增量维护
+ */
+@Data
+@TableName("health_rollup")
+public class HealthRollup {
+
+    /**
+     * 设备ID
+     */
+    private String deviceId;
+
+    /**
+     * 粒度代码：1m / 1h / 1d
+     */
+    private String granularity;
+
+    /**
+     * 时间桶起点
+     */
+    private LocalDateTime bucketStart;
+
+    /**
+     * 样本数
+     */
+    private Integer sampleCount;
+
+    private Integer heartRateMin;
+
+    private Integer heartRateMax;
+
+    /**
+     * 心率之和，与样本数相除得到平均值
+     */
+    private Long heartRateSum;
+
+    private Integer breathingRateMin;
+
+    private Integer breathingRateMax;
+
+    private Long breathingRateSum;
+
+    /**
+     * 心率分布草图（{@link com.example.edog.utils.ValueHistogram} 序列化），用于估计分位数
+     */
+    private byte[] heartRateSketch;
+
+    /**
+     * 呼吸频率分布草图
+     */
+    private byte[] breathingRateSketch;
+}
@@ -1,52 +1,95 @@
 package com.example.edog.enums;
 
-import java.util.regex.Pattern;
+import com.example.edog.utils.IntentEngine;
 
 public enum ControlCommandEnum {
-    
-    LIGHT_OFF("关灯", Pattern.compile("关灯"), "(brightness_down,100)", "好的"),
-    LIGHT_ON("开灯", Pattern.compile("开灯"), "(brightness_up,50)", "好的"),
-    BRIGHTNESS_DOWN_SMALL("调低亮度", Pattern.compile("调低亮度"), "(brightness_down,10)", "好的，已将灯光亮度调低10%"),
-    BRIGHTNESS_UP_SMALL("调高亮度", Pattern.compile("调高亮度"), "(brightness_up,10)", "好的，已将灯光亮度调高10%"),
-    TEMP_UP_SMALL("调高色温", Pattern.compile("调高色温"), "(tem_up,10)", "好的，已将灯光色温调高10%"),
-    TEMP_DOWN_SMALL("调低色温", Pattern.compile("调低色温"), "(tem_down,10)", "好的，已将灯光色温调低10%"),
-    
-    VOLUME_UP("音量调高", Pattern.compile("(调高|提高|增大|加大|升高|大一?点|大声|音量.*[加增高大升]|volume.*up|louder|increase.*volume)", Pattern.CASE_INSENSITIVE), "(volume_up,15)", "好的，音量已调高"),
-    VOLUME_DOWN("音量调低", Pattern.compile("(调低|降低|减小|减少|小一?点|小声|音量.*[减降低小]|volume.*down|quieter|decrease.*volume)", Pattern.CASE_INSENSITIVE), "(volume_down,15)", "好的，音量已调低"),
-    
-    BRIGHTNESS_UP("亮度调高", Pattern.compile("(调亮|提亮|增亮|亮一?点|亮度.*[加增高大升亮]|brighter|brightness.*up)", Pattern.CASE_INSENSITIVE), "(brightness_up,15)", "好的，亮度已调高"),
-    BRIGHTNESS_DOWN("亮度调低", Pattern.compile("(调暗|降暗|暗一?点|亮度.*[减降低小暗]|dimmer|brightness.*down)", Pattern.CASE_INSENSITIVE), "(brightness_down,15)", "好的，亮度已调低"),
-    
-    TEMP_UP("色温调暖", Pattern.compile("(调暖|变暖|暖一?点|暖色|色温.*[加增高大升暖]|warmer|temperature.*up)", Pattern.CASE_INSENSITIVE), "(tem_up,15)", "好的，色温已调暖"),
-    TEMP_DOWN("色温调冷", Pattern.compile("(调冷|变冷|冷一?点|冷色|色温.*[减降低小冷]|cooler|temperature.*down)", Pattern.CASE_INSENSITIVE), "(tem_down,15)", "好的，色温已调冷");
+
+    LIGHT_OFF("关灯", "brightness_down", 100, "好的", "关灯", "关掉灯", "把灯关"),
+    LIGHT_ON("开灯", "brightness_up", 50, "好的", "开灯", "打开灯", "把灯打开"),
+    BRIGHTNESS_DOWN_SMALL("调低亮度", "brightness_down", 10, "好的，已将灯光亮度调低10%", "调低亮度"),
+    BRIGHTNESS_UP_SMALL("调高亮度", "brightness_up", 10, "好的，已将灯光亮度调高10%", "调高亮度"),
+    TEMP_UP_SMALL("调高色温", "tem_up", 10, "好的，已将灯光色温调高10%", "调高色温"),
+    TEMP_DOWN_SMALL("调低色温", "tem_down", 10, "好的，已将灯光色温调低10%", "调低色温"),
+
+    VOLUME_UP("音量调高", "volume_up", 15, "好的，音量已调高", "大声", "louder"),
+    VOLUME_DOWN("音量调低", "volume_down", 15, "好的，音量已调低", "小声", "quieter"),
+
+    BRIGHTNESS_UP("亮度调高", "brightness_up", 15, "好的，亮度已调高", "调亮", "提亮", "增亮", "亮一点", "亮点", "brighter"),
+    BRIGHTNESS_DOWN("亮度调低", "brightness_down", 15, "好的，亮度已调低", "调暗", "降暗", "暗一点", "暗点", "dimmer"),
+
+    TEMP_UP("色温调暖", "tem_up", 15, "好的，色温已调暖", "调暖", "变暖", "暖一点", "暖点", "暖色", "warmer"),
+    TEMP_DOWN("色温调冷", "tem_down", 15, "好的，色温已调冷", "调冷", "变冷", "冷一点", "冷点", "冷色", "cooler"),
+
+    // 带参数的绝对设置，如"音量调到百分之五十"
+    VOLUME_SET("音量设置", "volume_set", -1, "好的，音量已调到%d"),
+    BRIGHTNESS_SET("亮度设置", null, -1, "好的，亮度已调到%d"),
+    TEMP_SET("色温设置", null, -1, "好的，色温已调到%d");
 
     private final String description;
-    private final Pattern pattern;
-    private final String commandTemplate;
+    private final String commandName;
+    private final int defaultValue;
     private final String confirmText;
+    private final String[] phrases;
 
-    ControlCommandEnum(String description, Pattern pattern, String commandTemplate, String confirmText) {
+    ControlCommandEnum(String description, String commandName, int defaultValue, String confirmText, String... phrases) {
         this.description = description;
-        this.pattern = pattern;
-        this.commandTemplate = commandTemplate;
+        this.commandName = commandName;
+        this.defaultValue = defaultValue;
         this.confirmText = confirmText;
+        this.phrases = phrases;
     }
 
+    /**
+     * 匹配控制命令（忽略识别出的参数）
+     * @see IntentEngine#match(CharSequence)
+     */
     public static ControlCommandEnum match(String text) {
-        if (text == null || text.isEmpty()) return null;
-        for (ControlCommandEnum command : values()) {
-            if (command.pattern.matcher(text).find()) {
-                return command;
-            }
-        }
-        return null;
+        IntentEngine.IntentMatch match = IntentEngine.match(text);
+        return match == null ? null : match.getCommand();
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * 设备协议中的命令名，如 "volume_up"；亮度/色温的绝对设置没有对应的设备命令，返回 null
+     */
+    public String getCommandName() {
+        return commandName;
+    }
+
+    public int getDefaultValue() {
+        return defaultValue;
+    }
+
+    /**
+     * 直接映射到该命令的完整短语（关键词表）
+     */
+    public String[] getPhrases() {
+        return phrases;
+    }
+
+    /**
+     * 是否为绝对设置类命令（需要参数）
+     */
+    public boolean isAbsolute() {
+        return defaultValue < 0;
     }
 
     public String getCommand() {
-        return commandTemplate;
+        return format(defaultValue);
+    }
+
+    public String format(int value) {
+        return "(" + commandName + "," + value + ")";
     }
 
     public String getConfirmText() {
-        return confirmText;
+        return isAbsolute() ? null : confirmText;
+    }
+
+    public String getConfirmText(int value) {
+        return isAbsolute() ? String.format(confirmText, value) : confirmText;
     }
 }
@@ -0,0 +1,54 @@
+package com.example.edog.enums;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * 健康数据汇总粒度
+ */
+public enum RollupGranularity {
+
+    MINUTE("1m", ChronoUnit.MINUTES),
+    HOUR("1h", ChronoUnit.HOURS),
+    DAY("1d", ChronoUnit.DAYS);
+
+    private final String code;
+    private final ChronoUnit unit;
+
+    RollupGranularity(String code, ChronoUnit unit) {
+        this.code = code;
+        this.unit = unit;
+    }
+
+    /**
+     * 数据库中保存的粒度代码，如 "1h"
+     */
+    public String getCode() {
+        return code;
+    }
+
+    public ChronoUnit getUnit() {
+        return unit;
+    }
+
+    /**
+     * 时间所在桶的起点（按服务器时区的自然分钟/小时/天对齐）
+     */
+    public LocalDateTime bucketStart(LocalDateTime time) {
+        return time.truncatedTo(unit);
+    }
+
+    public LocalDateTime bucketEnd(LocalDateTime bucketStart) {
+        return bucketStart.plus(1, unit);
+    }
+
+    /**
+     * @return 代码不存在时返回 null
+     */
+    public static RollupGranularity fromCode(String code) {
+        for (RollupGranularity g : values()) {
+            if (g.code.equalsIgnoreCase(code)) return g;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.edog.event;
+
+import com.example.edog.entity.UserAlarms;
+
+/**
+ * 闹钟增删改事件
+ * 由闹钟服务在创建、删除、启用/禁用后发布，闹钟引擎据此增量更新调度
+ *
+ * @param alarmId 闹钟ID
+ * @param alarm   变更后的闹钟；删除时为 null
+ */
+public record AlarmChangedEvent(Long alarmId, UserAlarms alarm) {
+}
@@ -0,0 +1,14 @@
+package com.example.edog.event;
+
+/**
+ * 闹钟响铃事件
+ * 由闹钟引擎在到点时发布，设备连接监听后向用户的台灯播报
+ *
+ * @param alarmId 闹钟ID
+ * @param userId  闹钟所属用户
+ * @param tag     闹钟标签
+ * @param fireAt  计划响铃时间（毫秒时间戳）
+ * @param message 播报用的提示语
+ */
+public record AlarmFiredEvent(Long alarmId, String userId, String tag, long fireAt, String message) {
+}
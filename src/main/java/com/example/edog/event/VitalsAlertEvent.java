@@ -0,0 +1,17 @@
+package com.example.edog.event;
+
+/**
+ * 健康数据异常告警事件
+ * 由异常检测发布，设备连接（语音播报）与 App 状态推送（SSE）分别监听
+ *
+ * @param deviceId  设备ID
+ * @param metric    指标：HEART_RATE / BREATHING_RATE
+ * @param rule      规则：Z_SCORE / SUSTAINED_HIGH / SUSTAINED_LOW
+ * @param value     触发告警的样本值
+ * @param baseline  触发时的个人基线均值
+ * @param timestamp 样本时间（毫秒时间戳）
+ * @param message   播报与展示用的提示语
+ */
+public record VitalsAlertEvent(String deviceId, String metric, String rule, int value, double baseline,
+                               long timestamp, String message) {
+}
@@ -0,0 +1,23 @@
+package com.example.edog.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.example.edog.entity.HealthDailySummary;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+/**
+ * 每晚汇总Mapper接口
+ */
+@Mapper
+public interface HealthDailySummaryMapper extends BaseMapper<HealthDailySummary> {
+
+    /**
+     * 批量写入汇总行，同一设备同一天重新计算时整体覆盖
+     *
+     * @param list 汇总行
+     * @return 影响行数
+     */
+    int upsertBatch(@Param("list") List<HealthDailySummary> list);
+}
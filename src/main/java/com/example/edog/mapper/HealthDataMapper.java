@@ -3,6 +3,11 @@ package com.example.edog.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.example.edog.entity.HealthData;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.cursor.Cursor;
+
+import java.time.LocalDateTime;
+import java.util.List;
 
 /**
  * 健康数据Mapper接口
@@ -10,6 +15,93 @@ import org.apache.ibatis.annotations.Mapper;
  */
 @Mapper
 public interface HealthDataMapper extends BaseMapper<HealthData> {
-    // MyBatis-Plus 已提供基础CRUD方法，无需额外定义
-    // 如需自定义SQL，可在此添加方法并使用@Select、@Insert等注解
+
+    /**
+     * 多行插入，一条 INSERT 写入整批数据
+     *
+     * @param list 待写入的数据
+     * @return 写入行数
+     */
+    int insertBatch(@Param("list") List<HealthData> list);
+
+    /**
+     * 查询已入库的 (设备ID, 序号)，用于在写库前识别重复提交的样本
+     *
+     * @param list 带设备ID与序号的样本
+     * @return 已存在的样本（只填充 deviceId 与 seq）
+     */
+    List<HealthData> selectExistingSeqs(@Param("list") List<HealthData> list);
+
+    /**
+     * 当前最大主键，用于标记已计入汇总的数据
+     *
+     * @return 表为空时返回 null
+     */
+    Long selectMaxId();
+
+    /**
+     * 主键大于 afterId 的数据，按主键升序
+     *
+     * @param afterId 主键下限（不含）
+     * @param limit 每页条数
+     * @return 数据列表（只填充 id、deviceId 与 uploadTime）
+     */
+    List<HealthData> selectKeysAfterId(@Param("afterId") long afterId, @Param("limit") int limit);
+
+    /**
+     * 键集分页：按 (上传时间, ID) 升序返回游标之后的一页
+     *
+     * @param deviceId 设备ID
+     * @param from 起始时间（含）
+     * @param to 结束时间（不含）
+     * @param afterTime 上一页最后一条的上传时间，第一页传 null
+     * @param afterId 上一页最后一条的ID
+     * @param limit 每页条数
+     * @return 数据列表
+     */
+    List<HealthData> selectPage(
+            @Param("deviceId") String deviceId,
+            @Param("from") LocalDateTime from,
+            @Param("to") LocalDateTime to,
+            @Param("afterTime") LocalDateTime afterTime,
+            @Param("afterId") Long afterId,
+            @Param("limit") int limit
+    );
+
+    /**
+     * 与 {@link #selectPage} 相同的查询，以游标逐行读取，必须在事务内使用
+     */
+    Cursor<HealthData> streamPage(
+            @Param("deviceId") String deviceId,
+            @Param("from") LocalDateTime from,
+            @Param("to") LocalDateTime to,
+            @Param("afterTime") LocalDateTime afterTime,
+            @Param("afterId") Long afterId,
+            @Param("limit") int limit
+    );
+
+    /**
+     * 有早于指定时间的数据的设备
+     *
+     * @param before 时间上限（不含）
+     * @return 设备ID列表
+     */
+    List<String> selectArchivableDevices(@Param("before") LocalDateTime before);
+
+    /**
+     * 按主键删除已归档的数据
+     *
+     * @param ids 主键，按升序排列
+     * @return 删除行数
+     */
+    int deleteArchived(@Param("ids") List<Long> ids);
+
+    /**
+     * 在时间范围内有数据的设备
+     *
+     * @param from 起始时间（含）
+     * @param to 结束时间（不含）
+     * @return 设备ID列表
+     */
+    List<String> selectDevicesInRange(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
 }
@@ -0,0 +1,48 @@
+package com.example.edog.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.example.edog.entity.HealthRollup;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 健康数据汇总Mapper接口
+ */
+@Mapper
+public interface HealthRollupMapper extends BaseMapper<HealthRollup> {
+
+    /**
+     * 按主键批量查询已有的汇总行（只用 deviceId、granularity、bucketStart 三个字段）
+     *
+     * @param keys 待查询的时间桶
+     * @return 已存在的汇总行
+     */
+    List<HealthRollup> selectByKeys(@Param("keys") List<HealthRollup> keys);
+
+    /**
+     * 批量写入汇总行，已存在的行整体覆盖
+     *
+     * @param list 汇总行
+     * @return 影响行数
+     */
+    int upsertBatch(@Param("list") List<HealthRollup> list);
+
+    /**
+     * 查询设备在时间范围内的汇总行，按时间升序
+     *
+     * @param deviceId 设备ID
+     * @param granularity 粒度代码
+     * @param from 起始时间（含）
+     * @param to 结束时间（不含）
+     * @return 汇总行
+     */
+    List<HealthRollup> selectRange(
+            @Param("deviceId") String deviceId,
+            @Param("granularity") String granularity,
+            @Param("from") LocalDateTime from,
+            @Param("to") LocalDateTime to
+    );
+}
@@ -53,4 +53,13 @@ public interface UserAlarmsMapper extends BaseMapper<UserAlarms> {
             @Param("type") Integer type,
             @Param("targetDate") LocalDate targetDate
     );
+
+    /**
+     * 按ID升序分页读取所有启用的闹钟，供闹钟引擎启动时加载
+     *
+     * @param afterId 上一页最后一个闹钟的ID，第一页传 0
+     * @param limit 每页条数
+     * @return 闹钟列表
+     */
+    List<UserAlarms> selectEnabledAfter(@Param("afterId") long afterId, @Param("limit") int limit);
 }
@@ -0,0 +1,356 @@
+package com.example.edog.service;
+
+import com.example.edog.entity.UserAlarms;
+import com.example.edog.event.AlarmChangedEvent;
+import com.example.edog.event.AlarmFiredEvent;
+import com.example.edog.mapper.UserAlarmsMapper;
+import com.example.edog.utils.TimingWheel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 闹钟引擎
+ * 启动时分页加载所有启用的闹钟，计算下一次响铃时间后放入分层时间轮（{@link TimingWheel}），每个 tick 推进一次；
+ * 到点发布 {@link AlarmFiredEvent}，由设备连接向用户名下的台灯播报标签，循环闹钟随即排入下一次。
+ * 闹钟的创建、删除、启用/禁用通过 {@link AlarmChangedEvent} 增量更新，不重新加载。
+ * 已推进到的时间定期写入本地文件；重启后从该时间补算停机期间错过的响铃，catch-up-window-ms 内的补响一次，更早的跳过。
+ * 加载在独立线程中进行，数据库不可用时退避重试，从失败的那一页继续；加载成功前不更新状态文件，下次重启仍能补响。
+ */
+@Slf4j
+@Service
+public class AlarmEngine {
+
+    private static final int ALARM_TYPE_ONE_TIME = 1;
+    private static final int ALARM_TYPE_RECURRING = 2;
+    private static final int ALARM_STATUS_ENABLED = 1;
+
+    @Autowired
+    private UserAlarmsMapper userAlarmsMapper;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Value("${lamp.alarm.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${lamp.alarm.tick-ms:1000}")
+    private long tickMs = 1000;
+
+    // 每层的格数：第一层 512 秒，第二层约 3 天，第三层约 4 年
+    @Value("${lamp.alarm.wheel-size:512}")
+    private int wheelSize = 512;
+
+    @Value("${lamp.alarm.load-page-size:10000}")
+    private int loadPageSize = 10000;
+
+    // 停机期间错过的响铃，在此时间内的重启后补响
+    @Value("${lamp.alarm.catch-up-window-ms:600000}")
+    private long catchUpWindowMs = 600000;
+
+    @Value("${lamp.alarm.state-file:data/alarm-engine.state}")
+    private String stateFile = "data/alarm-engine.state";
+
+    @Value("${lamp.alarm.state-flush-ms:10000}")
+    private long stateFlushMs = 10000;
+
+    @Value("${lamp.alarm.load-max-backoff-ms:60000}")
+    private long loadMaxBackoffMs = 60000;
+
+    @Value("${lamp.alarm.fire-threads:2}")
+    private int fireThreads = 2;
+
+    private record Alarm(Long id, String userId, String tag, int type, LocalTime time, LocalDate targetDate, int repeatMask) {
+    }
+
+    // 以下字段只在持有 this 锁时访问
+    private TimingWheel<Alarm> wheel;
+    private final Map<Long, TimingWheel.Entry<Alarm>> scheduled = new HashMap<>();
+    // 加载期间已由事件处理过的闹钟，加载时不再用可能过期的数据覆盖
+    private Set<Long> changedWhileLoading = new HashSet<>();
+
+    private final ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor();
+    private final ScheduledExecutorService loader = Executors.newSingleThreadScheduledExecutor();
+    private ExecutorService fireExecutor;
+    private long lastStateFlush;
+    private volatile boolean loaded;
+
+    // 加载进度，只在 loader 线程中访问；失败重试时从 afterId 之后继续
+    private long loadSince;
+    private long loadBegin;
+    private long loadAfterId;
+    private int loadAttempt;
+    private int loadedCount;
+    private int caughtUpCount;
+    private int missedCount;
+
+    private Counter firedCounter;
+    private Counter missedCounter;
+    private Timer tickTimer;
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) return;
+        fireExecutor = Executors.newFixedThreadPool(Math.max(1, fireThreads));
+        if (meterRegistry != null) {
+            Gauge.builder("lamp.alarms.scheduled", this, AlarmEngine::getScheduledCount)
+                    .description("时间轮中等待响铃的闹钟数")
+                    .register(meterRegistry);
+            firedCounter = Counter.builder("lamp.alarms.fired")
+                    .description("响铃次数（含补响）")
+                    .register(meterRegistry);
+            missedCounter = Counter.builder("lamp.alarms.missed")
+                    .description("停机期间错过且超出补响窗口的响铃数")
+                    .register(meterRegistry);
+            tickTimer = Timer.builder("lamp.alarms.tick")
+                    .description("一次推进时间轮的耗时")
+                    .register(meterRegistry);
+        }
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            wheel = new TimingWheel<>(tickMs, wheelSize, now);
+        }
+        // 加载可能较慢，不阻塞应用启动；加载期间时间轮照常推进，新建和修改的闹钟立即生效
+        ticker.scheduleAtFixedRate(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+        loader.execute(() -> {
+            loadSince = loadState(now);
+            loadBegin = System.currentTimeMillis();
+            load();
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (!enabled) return;
+        loader.shutdownNow();
+        ticker.shutdownNow();
+        fireExecutor.shutdown();
+        // 未加载成功时保留上次的状态，下次启动仍从那里补响
+        if (loaded) saveState(System.currentTimeMillis());
+    }
+
+    // ---------------------------------------------------------------- 加载与补响
+
+    /**
+     * 从 loadAfterId 之后逐页加载；失败时退避后重新提交自身
+     */
+    private void load() {
+        try {
+            while (true) {
+                List<UserAlarms> page = userAlarmsMapper.selectEnabledAfter(loadAfterId, loadPageSize);
+                long now = System.currentTimeMillis();
+                List<Alarm> due = new ArrayList<>();
+                synchronized (this) {
+                    for (UserAlarms row : page) {
+                        Alarm alarm = toAlarm(row);
+                        if (alarm == null || changedWhileLoading.contains(alarm.id())) continue;
+                        loadedCount++;
+                        // 上次推进到的时间之后应响过；补响窗口内有一次则补响一次，否则记为错过
+                        Long missedAt = nextFire(alarm, loadSince);
+                        if (missedAt != null && missedAt <= now) {
+                            Long recent = nextFire(alarm, Math.max(loadSince, now - catchUpWindowMs - 1));
+                            if (recent != null && recent <= now) {
+                                due.add(alarm);
+                                caughtUpCount++;
+                            } else {
+                                missedCount++;
+                            }
+                        }
+                        scheduleLocked(alarm, now);
+                    }
+                }
+                for (Alarm alarm : due) fire(alarm, now);
+                if (page.size() < loadPageSize) break;
+                loadAfterId = page.get(page.size() - 1).getId();
+            }
+        } catch (Exception e) {
+            loadAttempt++;
+            long backoff = Math.min(loadMaxBackoffMs, 1000L * loadAttempt);
+            log.error("闹钟加载失败，{}ms 后第 {} 次重试: {}", backoff, loadAttempt, e.getMessage());
+            loader.schedule(this::load, backoff, TimeUnit.MILLISECONDS);
+            return;
+        }
+        synchronized (this) {
+            changedWhileLoading = null;
+        }
+        loaded = true;
+        if (missedCounter != null) missedCounter.increment(missedCount);
+        log.info("闹钟引擎已启动: 加载={}, 补响={}, 错过={}, 上次推进到={}, 耗时={}ms",
+                loadedCount, caughtUpCount, missedCount,
+                LocalDateTime.ofInstant(Instant.ofEpochMilli(loadSince), ZoneId.systemDefault()),
+                System.currentTimeMillis() - loadBegin);
+    }
+
+    private long loadState(long fallback) {
+        try {
+            Path path = Paths.get(stateFile);
+            if (!Files.exists(path)) return fallback;
+            return Long.parseLong(Files.readString(path, StandardCharsets.UTF_8).trim());
+        } catch (Exception e) {
+            log.warn("闹钟引擎状态读取失败，不补响: {}", e.getMessage());
+            return fallback;
+        }
+    }
+
+    private void saveState(long time) {
+        try {
+            Path path = Paths.get(stateFile);
+            if (path.getParent() != null) Files.createDirectories(path.getParent());
+            Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            Files.writeString(tmp, Long.toString(time), StandardCharsets.UTF_8);
+            Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            log.warn("闹钟引擎状态写入失败: {}", e.getMessage());
+        }
+    }
+
+    // ---------------------------------------------------------------- 推进与响铃
+
+    private void tick() {
+        long start = System.nanoTime();
+        long now = System.currentTimeMillis();
+        List<TimingWheel.Entry<Alarm>> expired = new ArrayList<>();
+        synchronized (this) {
+            wheel.advance(now, expired::add);
+            for (TimingWheel.Entry<Alarm> entry : expired) {
+                Alarm alarm = entry.getValue();
+                scheduled.remove(alarm.id());
+                // 循环闹钟排入下一次；从本次响铃时间往后算，避免同一分钟重复
+                if (alarm.type() == ALARM_TYPE_RECURRING) scheduleLocked(alarm, entry.getExpiration());
+            }
+        }
+        for (TimingWheel.Entry<Alarm> entry : expired) fire(entry.getValue(), entry.getExpiration());
+        // 加载成功前不推进状态文件，否则重启后无法补响加载失败期间的闹钟
+        if (loaded && now - lastStateFlush >= stateFlushMs) {
+            lastStateFlush = now;
+            saveState(now);
+        }
+        if (tickTimer != null) tickTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private void fire(Alarm alarm, long fireAt) {
+        if (firedCounter != null) firedCounter.increment();
+        String tag = alarm.tag() == null || alarm.tag().isBlank() || "无".equals(alarm.tag()) ? null : alarm.tag();
+        String message = tag != null ? "闹钟时间到了，" + tag : "闹钟时间到了";
+        AlarmFiredEvent event = new AlarmFiredEvent(alarm.id(), alarm.userId(), tag, fireAt, message);
+        fireExecutor.execute(() -> {
+            try {
+                eventPublisher.publishEvent(event);
+            } catch (Exception e) {
+                log.warn("闹钟响铃通知失败: alarm={}, error={}", alarm.id(), e.getMessage());
+            }
+        });
+    }
+
+    // ---------------------------------------------------------------- 增量更新
+
+    @EventListener
+    public void onAlarmChanged(AlarmChangedEvent event) {
+        if (!enabled) return;
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            if (changedWhileLoading != null) changedWhileLoading.add(event.alarmId());
+            TimingWheel.Entry<Alarm> previous = scheduled.remove(event.alarmId());
+            if (previous != null) wheel.cancel(previous);
+            Alarm alarm = event.alarm() != null ? toAlarm(event.alarm()) : null;
+            if (alarm != null) scheduleLocked(alarm, now);
+        }
+    }
+
+    /**
+     * 计算 after 之后的下一次响铃并放入时间轮；没有下一次（单次闹钟已过）时不放入
+     */
+    private void scheduleLocked(Alarm alarm, long after) {
+        // 加载某页中途失败后重试会再次处理同一闹钟，先撤下旧的
+        TimingWheel.Entry<Alarm> previous = scheduled.remove(alarm.id());
+        if (previous != null) wheel.cancel(previous);
+        Long next = nextFire(alarm, after);
+        if (next == null) return;
+        TimingWheel.Entry<Alarm> entry = wheel.schedule(alarm, next);
+        if (entry != null) {
+            scheduled.put(alarm.id(), entry);
+        } else {
+            // 时间轮刚推进过这一刻，下个 tick 立即响
+            scheduled.put(alarm.id(), wheel.schedule(alarm, wheel.getCurrentTime()));
+        }
+    }
+
+    /**
+     * 严格晚于 after 的下一次响铃时间（毫秒时间戳）
+     * @return 单次闹钟已过或循环闹钟没有有效的星期时返回 null
+     */
+    private static Long nextFire(Alarm alarm, long after) {
+        ZoneId zone = ZoneId.systemDefault();
+        if (alarm.type() == ALARM_TYPE_ONE_TIME) {
+            if (alarm.targetDate() == null) return null;
+            long at = alarm.targetDate().atTime(alarm.time()).atZone(zone).toInstant().toEpochMilli();
+            return at > after ? at : null;
+        }
+        if (alarm.repeatMask() == 0) return null;
+        LocalDate day = LocalDateTime.ofInstant(Instant.ofEpochMilli(after), zone).toLocalDate();
+        for (int i = 0; i <= 7; i++, day = day.plusDays(1)) {
+            if ((alarm.repeatMask() & 1 << day.getDayOfWeek().getValue()) == 0) continue;
+            long at = day.atTime(alarm.time()).atZone(zone).toInstant().toEpochMilli();
+            if (at > after) return at;
+        }
+        return null;
+    }
+
+    /**
+     * @return 未启用或数据不完整时返回 null
+     */
+    private static Alarm toAlarm(UserAlarms row) {
+        if (row.getId() == null || row.getAlarmTime() == null || row.getType() == null
+                || !Integer.valueOf(ALARM_STATUS_ENABLED).equals(row.getStatus())) return null;
+        int mask = 0;
+        if (row.getType() == ALARM_TYPE_RECURRING && row.getRepeatDays() != null) {
+            for (String day : row.getRepeatDays().split(",")) {
+                try {
+                    int d = Integer.parseInt(day.trim());
+                    if (d >= 1 && d <= 7) mask |= 1 << d;
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        return new Alarm(row.getId(), row.getUserId(), row.getTag(), row.getType(), row.getAlarmTime(),
+                row.getTargetDate(), mask);
+    }
+
+    public synchronized int getScheduledCount() {
+        return wheel != null ? wheel.size() : 0;
+    }
+}
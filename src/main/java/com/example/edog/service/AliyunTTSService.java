@@ -21,6 +21,7 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
 @Slf4j
@@ -94,13 +95,22 @@ public class AliyunTTSService {
      *
      * @param text          要合成的文本
      * @param opusConsumer  接收 Opus 帧的回调
-     * @param onComplete    完成时的回调
+     * @param onComplete    结束时的回调（只调用一次），参数为是否完整合成；失败或超时时已输出的帧是不完整的
+     * @return 是否完整合成
      */
-    public void synthesizeStream(String text, Consumer<byte[]> opusConsumer, Runnable onComplete) {
+    public boolean synthesizeStream(String text, Consumer<byte[]> opusConsumer, Consumer<Boolean> onComplete) {
         String token = tokenService.getToken();
         NlsClient localClient = new NlsClient(token);
         FlowingSpeechSynthesizer synthesizer = null;
         CountDownLatch finished = new CountDownLatch(1);
+        AtomicBoolean succeeded = new AtomicBoolean(false);
+        AtomicBoolean completed = new AtomicBoolean(false);
+        Consumer<Boolean> complete = ok -> {
+            if (!completed.compareAndSet(false, true)) return;
+            succeeded.set(ok);
+            if (onComplete != null) onComplete.accept(ok);
+            finished.countDown();
+        };
 
         try {
             // 初始化 Opus 编码器 (24kHz, Mono, VOIP)
@@ -131,19 +141,13 @@ public class AliyunTTSService {
                 public void onSynthesisComplete(FlowingSpeechSynthesizerResponse response) {
                     log.info("TTS Complete: {}", response.getTaskId());
                     // 处理剩余的 PCM 数据 (如果不足一帧，通常填充静音或丢弃，这里简单起见丢弃)
-                    if (onComplete != null) {
-                        onComplete.run();
-                    }
-                    finished.countDown();
+                    complete.accept(true);
                 }
 
                 @Override
                 public void onFail(FlowingSpeechSynthesizerResponse response) {
                     log.error("TTS Failed: {} - {}", response.getStatus(), response.getStatusText());
-                    if (onComplete != null) {
-                        onComplete.run();
-                    }
-                    finished.countDown();
+                    complete.accept(false);
                 }
 
                 @Override
@@ -230,14 +234,14 @@ public class AliyunTTSService {
             synthesizer.start();
             synthesizer.send(text);
             synthesizer.stop(); // 标记文本发送结束，等待音频流完成
-            finished.await(60, TimeUnit.SECONDS);
+            if (!finished.await(60, TimeUnit.SECONDS)) {
+                log.error("TTS Synthesis Timeout: {}", text);
+                complete.accept(false);
+            }
 
         } catch (Exception e) {
             log.error("TTS Synthesis Error", e);
-            if (onComplete != null) {
-                onComplete.run();
-            }
-            finished.countDown();
+            complete.accept(false);
         } finally {
             if (synthesizer != null) {
                 try {
@@ -250,5 +254,6 @@ public class AliyunTTSService {
             } catch (Exception ignored) {
             }
         }
+        return succeeded.get();
     }
 }
@@ -0,0 +1,318 @@
+package com.example.edog.service;
+
+import com.example.edog.dto.DeviceStateResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.function.Consumer;
+
+/**
+ * 设备状态注册表
+ * 按设备ID保存每台台灯最近上报的亮度、色温、音量以及在线状态和连接信息。
+ * 状态值与版本号打包在一个 long 中，通过 CAS 无锁更新，读取只需一次 volatile 读；
+ * 值真正变化时版本号加一，REST 接口据此实现条件读取（ETag / 304）。
+ * 未携带 deviceId 的设备以连接地址（含临时端口）为键，每次重连都是新键，断开后立即移除，避免注册表无限增长。
+ */
+@Service
+public class DeviceRegistry {
+
+    // 打包布局：[version:32][flags:8][volume:8][temperature:8][brightness:8]
+    private static final int TEMPERATURE_SHIFT = 8;
+    private static final int VOLUME_SHIFT = 16;
+    private static final long ONLINE = 1L << 24;
+    private static final long LIGHT_KNOWN = 1L << 25;
+    private static final long VOLUME_KNOWN = 1L << 26;
+    private static final int VERSION_SHIFT = 32;
+    private static final long VALUE_MASK = (1L << VERSION_SHIFT) - 1;
+
+    private final ConcurrentHashMap<String, DeviceState> devices;
+
+    // 用户 -> 设备ID 集合，用于按用户下发指令
+    private final ConcurrentHashMap<String, Set<String>> userDevices = new ConcurrentHashMap<>();
+
+    // 最近一次上报状态的设备，供未指定设备ID的旧接口使用
+    private volatile DeviceState lastReported;
+
+    // 状态变化监听（在更新线程中同步调用，监听方不应阻塞）
+    private final List<Consumer<DeviceState>> listeners = new CopyOnWriteArrayList<>();
+
+    public DeviceRegistry(@Value("${lamp.device-registry.initial-capacity:1024}") int initialCapacity) {
+        this.devices = new ConcurrentHashMap<>(Math.max(16, initialCapacity));
+    }
+
+    /**
+     * 单台设备的状态
+     */
+    public static final class DeviceState {
+
+        private static final AtomicLongFieldUpdater<DeviceState> PACKED =
+                AtomicLongFieldUpdater.newUpdater(DeviceState.class, "packed");
+
+        private final String deviceId;
+        private volatile long packed;
+        private volatile long lastSeen;
+
+        // 连接信息，仅在连接建立/断开时写入
+        private volatile String sessionId;
+        private volatile String remoteAddress;
+        private volatile String userId;
+        private volatile boolean binaryProtocol;
+        private volatile long connectedAt;
+        // 没有稳定的设备ID（以连接地址为键），断开后移除
+        private volatile boolean ephemeral;
+
+        private DeviceState(String deviceId) {
+            this.deviceId = deviceId;
+        }
+
+        /**
+         * @return 值是否发生变化
+         */
+        private boolean update(long setBits, long clearBits) {
+            while (true) {
+                long current = packed;
+                long value = (current & VALUE_MASK & ~clearBits) | setBits;
+                if (value == (current & VALUE_MASK)) return false;
+                long next = (current & ~VALUE_MASK) + (1L << VERSION_SHIFT) | value;
+                if (PACKED.compareAndSet(this, current, next)) return true;
+            }
+        }
+
+        /** 打包的状态值，用于 {@link #toDelta} */
+        long packed() {
+            return packed;
+        }
+
+        /**
+         * 相对于 previous 发生变化的字段（previous 为 0 时返回全部已知字段）
+         * @return 至少包含 deviceId 与 version
+         */
+        Map<String, Object> toDelta(long previous, long current) {
+            Map<String, Object> delta = new LinkedHashMap<>();
+            delta.put("deviceId", deviceId);
+            delta.put("version", current >>> VERSION_SHIFT);
+            long changed = previous == 0 ? VALUE_MASK : (previous ^ current) & VALUE_MASK;
+            if ((current & LIGHT_KNOWN) != 0) {
+                if ((changed & 0xFF) != 0 || (changed & LIGHT_KNOWN) != 0) delta.put("brightness", (int) (current & 0xFF));
+                if ((changed & 0xFF00) != 0 || (changed & LIGHT_KNOWN) != 0) delta.put("temperature", (int) (current >>> TEMPERATURE_SHIFT & 0xFF));
+            }
+            if ((current & VOLUME_KNOWN) != 0 && (changed & (0xFFL << VOLUME_SHIFT | VOLUME_KNOWN)) != 0) {
+                delta.put("volume", (int) (current >>> VOLUME_SHIFT & 0xFF));
+            }
+            if ((changed & ONLINE) != 0) delta.put("online", (current & ONLINE) != 0);
+            return delta;
+        }
+
+        public String getDeviceId() {
+            return deviceId;
+        }
+
+        public int getBrightness() {
+            return (int) (packed & 0xFF);
+        }
+
+        public int getTemperature() {
+            return (int) (packed >>> TEMPERATURE_SHIFT & 0xFF);
+        }
+
+        public int getVolume() {
+            return (int) (packed >>> VOLUME_SHIFT & 0xFF);
+        }
+
+        public boolean isOnline() {
+            return (packed & ONLINE) != 0;
+        }
+
+        public boolean isLightKnown() {
+            return (packed & LIGHT_KNOWN) != 0;
+        }
+
+        public boolean isVolumeKnown() {
+            return (packed & VOLUME_KNOWN) != 0;
+        }
+
+        /** 状态版本号，值每变化一次加一 */
+        public long getVersion() {
+            return packed >>> VERSION_SHIFT;
+        }
+
+        public long getLastSeen() {
+            return lastSeen;
+        }
+
+        public String getSessionId() {
+            return sessionId;
+        }
+
+        public String getUserId() {
+            return userId;
+        }
+
+        /**
+         * 一致性快照：亮度、色温、音量、在线状态与版本号来自同一次读取
+         */
+        public DeviceStateResponse toResponse() {
+            long p = packed;
+            return DeviceStateResponse.builder()
+                    .deviceId(deviceId)
+                    .brightness((p & LIGHT_KNOWN) != 0 ? (int) (p & 0xFF) : null)
+                    .temperature((p & LIGHT_KNOWN) != 0 ? (int) (p >>> TEMPERATURE_SHIFT & 0xFF) : null)
+                    .volume((p & VOLUME_KNOWN) != 0 ? (int) (p >>> VOLUME_SHIFT & 0xFF) : null)
+                    .online((p & ONLINE) != 0)
+                    .version(p >>> VERSION_SHIFT)
+                    .lastSeen(lastSeen)
+                    .sessionId(sessionId)
+                    .remoteAddress(remoteAddress)
+                    .userId(userId)
+                    .binaryProtocol(binaryProtocol)
+                    .connectedAt(connectedAt)
+                    .build();
+        }
+    }
+
+    // ---------------------------------------------------------------- 写入
+
+    private DeviceState getOrCreate(String deviceId) {
+        DeviceState state = devices.get(deviceId);
+        return state != null ? state : devices.computeIfAbsent(deviceId, DeviceState::new);
+    }
+
+    /**
+     * 设备连接建立
+     * @param ephemeral deviceId 不是设备自身的稳定ID（如连接地址），断开后不保留
+     */
+    public DeviceState connected(String deviceId, String sessionId, String remoteAddress, String userId,
+                                 boolean binaryProtocol, boolean ephemeral) {
+        DeviceState state = getOrCreate(deviceId);
+        long now = System.currentTimeMillis();
+        String previousUser = state.userId;
+        if (previousUser != null && !previousUser.equals(userId)) {
+            userDevices.computeIfPresent(previousUser, (k, set) -> {
+                set.remove(deviceId);
+                return set.isEmpty() ? null : set;
+            });
+        }
+        if (userId != null) {
+            userDevices.compute(userId, (k, set) -> {
+                if (set == null) set = ConcurrentHashMap.newKeySet();
+                set.add(deviceId);
+                return set;
+            });
+        }
+        state.sessionId = sessionId;
+        state.remoteAddress = remoteAddress;
+        state.userId = userId;
+        state.binaryProtocol = binaryProtocol;
+        state.connectedAt = now;
+        state.ephemeral = ephemeral;
+        state.lastSeen = now;
+        if (state.update(ONLINE, 0)) fireChanged(state);
+        return state;
+    }
+
+    /**
+     * 设备连接断开；只有当前登记的会话断开才标记离线，避免重连后被旧会话的关闭事件覆盖
+     */
+    public void disconnected(String deviceId, String sessionId) {
+        DeviceState state = devices.get(deviceId);
+        if (state == null || !sessionId.equals(state.sessionId)) return;
+        if (state.update(0, ONLINE)) fireChanged(state);
+        if (state.ephemeral && devices.remove(deviceId, state) && state.userId != null) {
+            userDevices.computeIfPresent(state.userId, (k, set) -> {
+                set.remove(deviceId);
+                return set.isEmpty() ? null : set;
+            });
+        }
+    }
+
+    public void updateLight(String deviceId, int brightness, int temperature) {
+        DeviceState state = getOrCreate(deviceId);
+        state.lastSeen = System.currentTimeMillis();
+        long bits = clamp(brightness) | (long) clamp(temperature) << TEMPERATURE_SHIFT | LIGHT_KNOWN;
+        lastReported = state;
+        if (state.update(bits, 0xFFFFL)) fireChanged(state);
+    }
+
+    public void updateVolume(String deviceId, int volume) {
+        DeviceState state = getOrCreate(deviceId);
+        state.lastSeen = System.currentTimeMillis();
+        lastReported = state;
+        if (state.update((long) clamp(volume) << VOLUME_SHIFT | VOLUME_KNOWN, 0xFFL << VOLUME_SHIFT)) fireChanged(state);
+    }
+
+    /**
+     * 收到设备任意消息时刷新最后活跃时间
+     */
+    public void touch(String deviceId) {
+        DeviceState state = devices.get(deviceId);
+        if (state != null) state.lastSeen = System.currentTimeMillis();
+    }
+
+    public void addListener(Consumer<DeviceState> listener) {
+        listeners.add(listener);
+    }
+
+    private void fireChanged(DeviceState state) {
+        for (Consumer<DeviceState> listener : listeners) {
+            try {
+                listener.accept(state);
+            } catch (Exception ignored) {
+            }
+        }
+    }
+
+    private static int clamp(int v) {
+        return Math.max(0, Math.min(100, v));
+    }
+
+    // ---------------------------------------------------------------- 读取
+
+    /**
+     * @param deviceId 设备ID；为空时返回最近上报状态的设备
+     */
+    public DeviceState get(String deviceId) {
+        if (deviceId == null || deviceId.isEmpty()) return lastReported;
+        return devices.get(deviceId);
+    }
+
+    /**
+     * 用户名下的设备ID（包括离线设备）
+     */
+    public Set<String> devicesOfUser(String userId) {
+        Set<String> set = userId != null ? userDevices.get(userId) : null;
+        return set != null ? Collections.unmodifiableSet(set) : Collections.emptySet();
+    }
+
+    public void forEach(Consumer<DeviceState> action) {
+        devices.values().forEach(action);
+    }
+
+    public List<DeviceStateResponse> snapshot(boolean onlineOnly) {
+        List<DeviceStateResponse> list = new ArrayList<>(devices.size());
+        for (DeviceState state : devices.values()) {
+            if (!onlineOnly || state.isOnline()) list.add(state.toResponse());
+        }
+        return list;
+    }
+
+    public int size() {
+        return devices.size();
+    }
+
+    /**
+     * 条件读取用的 ETag：设备ID + 版本号
+     * 不传 deviceId 的旧接口返回的设备会变，不同设备的版本号可能相同，只用版本号会误返回 304
+     */
+    public static String etag(DeviceStateResponse state) {
+        return "\"" + state.getDeviceId().replace("\"", "") + "-" + state.getVersion() + "\"";
+    }
+}
@@ -0,0 +1,185 @@
+package com.example.edog.service;
+
+import com.example.edog.event.VitalsAlertEvent;
+import com.example.edog.utils.ConflatingEmitter;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 设备状态推送中心（SSE）
+ * App 订阅一台或多台设备，设备状态变化时推送变化的字段；每个订阅按设备合并，慢客户端只收到最新状态。
+ * 心跳同样经由合并队列发送，单次发送阻塞过久的订阅者会被断开，不影响其他 App。
+ * 订阅总数与单个订阅的设备数都有上限。
+ */
+@Service
+public class DeviceStateHub {
+
+    private static final Logger log = LoggerFactory.getLogger(DeviceStateHub.class);
+
+    public static final String EVENT_STATE = "state";
+    public static final String EVENT_ALERT = "alert";
+
+    @Autowired
+    private DeviceRegistry deviceRegistry;
+
+    @Value("${lamp.sse.max-subscribers:1000}")
+    private int maxSubscribers = 1000;
+
+    @Value("${lamp.sse.max-devices-per-subscription:32}")
+    private int maxDevicesPerSubscription = 32;
+
+    @Value("${lamp.sse.timeout-ms:1800000}")
+    private long timeoutMs = 1800000;
+
+    @Value("${lamp.sse.heartbeat-ms:25000}")
+    private long heartbeatMs = 25000;
+
+    @Value("${lamp.sse.push-threads:4}")
+    private int pushThreads = 4;
+
+    // 单次发送阻塞超过该时长的订阅者被断开
+    @Value("${lamp.sse.max-send-block-ms:10000}")
+    private long maxSendBlockMs = 10000;
+
+    private ExecutorService pushExecutor;
+    private final ScheduledExecutorService heartbeatScheduler = Executors.newSingleThreadScheduledExecutor();
+
+    private final Map<String, Set<Subscription>> byDevice = new ConcurrentHashMap<>();
+    private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+
+    private final class Subscription {
+        final ConflatingEmitter out;
+        final Set<String> deviceIds;
+        // 每台设备最近一次推送的打包状态，只在推送线程中读写
+        final Map<String, Long> lastSent = new ConcurrentHashMap<>();
+        final AtomicBoolean removed = new AtomicBoolean(false);
+
+        Subscription(ConflatingEmitter out, Set<String> deviceIds) {
+            this.out = out;
+            this.deviceIds = deviceIds;
+        }
+
+        void push(DeviceRegistry.DeviceState state) {
+            String deviceId = state.getDeviceId();
+            out.offer(deviceId, EVENT_STATE, () -> {
+                long current = state.packed();
+                Long previous = lastSent.get(deviceId);
+                if (previous != null && previous == current) return null;
+                lastSent.put(deviceId, current);
+                return state.toDelta(previous == null ? 0 : previous, current);
+            });
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        pushExecutor = Executors.newFixedThreadPool(Math.max(1, pushThreads));
+        deviceRegistry.addListener(this::onStateChanged);
+        heartbeatScheduler.scheduleAtFixedRate(this::heartbeat, heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 心跳只投递到各订阅的推送队列，不在本线程写连接；发送阻塞的订阅者直接断开
+     */
+    private void heartbeat() {
+        for (Subscription subscription : subscriptions) {
+            if (subscription.out.dropIfStalled(maxSendBlockMs)) {
+                log.info("状态订阅发送阻塞超过 {}ms，断开: devices={}", maxSendBlockMs, subscription.deviceIds);
+                unsubscribe(subscription);
+            } else {
+                subscription.out.heartbeat();
+            }
+        }
+    }
+
+    public int getMaxDevicesPerSubscription() {
+        return maxDevicesPerSubscription;
+    }
+
+    /**
+     * 订阅设备状态，连接建立后先推送一次当前完整状态
+     * @return 订阅数已达上限时返回 null
+     */
+    public SseEmitter subscribe(Collection<String> deviceIds) {
+        if (subscriberCount.incrementAndGet() > maxSubscribers) {
+            subscriberCount.decrementAndGet();
+            return null;
+        }
+
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        Subscription subscription = new Subscription(new ConflatingEmitter(emitter, pushExecutor), new LinkedHashSet<>(deviceIds));
+        emitter.onCompletion(() -> unsubscribe(subscription));
+        emitter.onTimeout(() -> unsubscribe(subscription));
+        emitter.onError(e -> unsubscribe(subscription));
+
+        subscriptions.add(subscription);
+        for (String deviceId : subscription.deviceIds) {
+            byDevice.computeIfAbsent(deviceId, k -> ConcurrentHashMap.newKeySet()).add(subscription);
+            DeviceRegistry.DeviceState state = deviceRegistry.get(deviceId);
+            if (state != null) subscription.push(state);
+        }
+        log.info("状态订阅建立: devices={}, 当前订阅数={}", subscription.deviceIds, subscriberCount.get());
+        return emitter;
+    }
+
+    private void unsubscribe(Subscription subscription) {
+        if (!subscription.removed.compareAndSet(false, true)) return;
+        subscription.out.close();
+        subscriptions.remove(subscription);
+        for (String deviceId : subscription.deviceIds) {
+            byDevice.computeIfPresent(deviceId, (k, set) -> {
+                set.remove(subscription);
+                return set.isEmpty() ? null : set;
+            });
+        }
+        subscriberCount.decrementAndGet();
+    }
+
+    private void onStateChanged(DeviceRegistry.DeviceState state) {
+        Set<Subscription> subs = byDevice.get(state.getDeviceId());
+        if (subs == null) return;
+        for (Subscription subscription : subs) {
+            if (subscription.out.isClosed()) {
+                unsubscribe(subscription);
+            } else {
+                subscription.push(state);
+            }
+        }
+    }
+
+    /**
+     * 健康告警推送给订阅了该设备的 App；同一设备同一类告警未发出前只保留最新一条
+     */
+    @EventListener
+    public void onVitalsAlert(VitalsAlertEvent event) {
+        Set<Subscription> subs = byDevice.get(event.deviceId());
+        if (subs == null) return;
+        String key = EVENT_ALERT + ":" + event.deviceId() + ":" + event.metric() + ":" + event.rule();
+        for (Subscription subscription : subs) {
+            subscription.out.offer(key, EVENT_ALERT, () -> event);
+        }
+    }
+
+    public int getSubscriberCount() {
+        return subscriberCount.get();
+    }
+}
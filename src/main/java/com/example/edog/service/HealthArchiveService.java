@@ -0,0 +1,331 @@
+package com.example.edog.service;
+
+import com.example.edog.entity.HealthData;
+import com.example.edog.mapper.HealthDataMapper;
+import com.example.edog.utils.HealthSegmentCodec;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 健康数据冷数据归档
+ * 定时把超过保留天数的数据按设备、按天写成本地列式段文件（见 {@link HealthSegmentCodec}），
+ * 段文件落盘并 fsync 后再按主键分小块从 health_data 删除，每块一个短语句，避免长时间持锁。
+ * 同一天再次归档（迟到的数据或上次删除中断）时与已有段文件合并去重后整体替换；
+ * 读取时内存映射段文件，只解码查询范围内的部分。没有设备ID的旧数据不能按设备查询，不归档。
+ */
+@Slf4j
+@Service
+public class HealthArchiveService {
+
+    public static final Comparator<HealthData> TIME_ORDER =
+            Comparator.comparing(HealthData::getUploadTime).thenComparing(HealthData::getId);
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    // 查询下限：早于此时间的数据不存在
+    private static final LocalDateTime EPOCH = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    @Autowired
+    private HealthDataMapper healthDataMapper;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Value("${lamp.health.archive.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${lamp.health.archive.dir:data/health-archive}")
+    private String dir = "data/health-archive";
+
+    // 数据库中保留最近多少天（按自然日），更早的整天数据归档
+    @Value("${lamp.health.archive.retention-days:90}")
+    private int retentionDays = 90;
+
+    @Value("${lamp.health.archive.interval-ms:3600000}")
+    private long intervalMs = 3600000;
+
+    // 归档时每次从数据库读取的行数
+    @Value("${lamp.health.archive.read-chunk-size:5000}")
+    private int readChunkSize = 5000;
+
+    // 每条 DELETE 删除的行数，以及两块之间的停顿
+    @Value("${lamp.health.archive.delete-chunk-size:500}")
+    private int deleteChunkSize = 500;
+
+    @Value("${lamp.health.archive.delete-pause-ms:20}")
+    private long deletePauseMs = 20;
+
+    private Path root;
+    private final ScheduledExecutorService archiveScheduler = Executors.newSingleThreadScheduledExecutor();
+
+    private Counter archivedCounter;
+    private Counter purgedCounter;
+    private DistributionSummary segmentBytes;
+    private Timer runTimer;
+
+    @PostConstruct
+    public void init() {
+        root = Paths.get(dir);
+        if (meterRegistry != null) {
+            archivedCounter = Counter.builder("lamp.health.archive.rows")
+                    .description("写入归档段的行数")
+                    .register(meterRegistry);
+            purgedCounter = Counter.builder("lamp.health.archive.purged")
+                    .description("归档后从数据库删除的行数")
+                    .register(meterRegistry);
+            segmentBytes = DistributionSummary.builder("lamp.health.archive.segment.bytes")
+                    .description("归档段文件大小")
+                    .baseUnit("bytes")
+                    .register(meterRegistry);
+            runTimer = Timer.builder("lamp.health.archive.run")
+                    .description("一次归档任务的耗时")
+                    .register(meterRegistry);
+        }
+        if (!enabled) return;
+        archiveScheduler.scheduleWithFixedDelay(this::runSafely, Math.min(intervalMs, 60000), intervalMs, TimeUnit.MILLISECONDS);
+        log.info("健康数据归档已启动: dir={}, retentionDays={}, interval={}ms", root.toAbsolutePath(), retentionDays, intervalMs);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        archiveScheduler.shutdownNow();
+    }
+
+    private void runSafely() {
+        try {
+            archive();
+        } catch (Exception e) {
+            log.error("健康数据归档失败: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 早于此时间的数据应已归档
+     */
+    public LocalDateTime horizon() {
+        return LocalDate.now().minusDays(retentionDays).atStartOfDay();
+    }
+
+    /**
+     * 归档所有设备早于保留期限的数据并从数据库删除
+     * @return 归档行数
+     */
+    public synchronized long archive() throws IOException {
+        long start = System.nanoTime();
+        LocalDateTime horizon = horizon();
+        long total = 0;
+        List<String> devices = healthDataMapper.selectArchivableDevices(horizon);
+        for (String deviceId : devices) {
+            total += archiveDevice(deviceId, horizon);
+        }
+        if (runTimer != null) runTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (!devices.isEmpty()) {
+            log.info("健康数据归档完成: 设备={}, 行数={}, 截止={}, 耗时={}ms",
+                    devices.size(), total, horizon, (System.nanoTime() - start) / 1_000_000);
+        }
+        return total;
+    }
+
+    /**
+     * 按 (上传时间, ID) 顺序读出设备早于 horizon 的数据，每凑齐一天写一个段并删除对应行
+     */
+    private long archiveDevice(String deviceId, LocalDateTime horizon) throws IOException {
+        List<HealthData> day = new ArrayList<>();
+        LocalDateTime afterTime = null;
+        Long afterId = null;
+        long total = 0;
+        while (true) {
+            List<HealthData> rows = healthDataMapper.selectPage(deviceId, EPOCH, horizon, afterTime, afterId, readChunkSize);
+            for (HealthData row : rows) {
+                if (!day.isEmpty() && !row.getUploadTime().toLocalDate().equals(day.get(0).getUploadTime().toLocalDate())) {
+                    total += seal(deviceId, day);
+                    day = new ArrayList<>();
+                }
+                day.add(row);
+            }
+            if (rows.size() < readChunkSize) break;
+            HealthData last = rows.get(rows.size() - 1);
+            afterTime = last.getUploadTime();
+            afterId = last.getId();
+        }
+        if (!day.isEmpty()) total += seal(deviceId, day);
+        return total;
+    }
+
+    /**
+     * 写入一天的段文件（与已有段合并），落盘后删除数据库中的这些行
+     */
+    private int seal(String deviceId, List<HealthData> rows) throws IOException {
+        LocalDate day = rows.get(0).getUploadTime().toLocalDate();
+        Path file = segmentFile(deviceId, day);
+
+        List<HealthData> merged = rows;
+        if (Files.exists(file)) {
+            merged = new ArrayList<>(rows);
+            Set<Long> ids = new HashSet<>();
+            for (HealthData row : rows) ids.add(row.getId());
+            for (HealthData old : readSegment(file, deviceId, Long.MIN_VALUE, Long.MAX_VALUE, 0, null, Integer.MAX_VALUE)) {
+                if (ids.add(old.getId())) merged.add(old);
+            }
+            merged.sort(TIME_ORDER);
+        }
+
+        byte[] bytes = HealthSegmentCodec.encode(merged);
+        Files.createDirectories(file.getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) channel.write(buffer);
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        if (archivedCounter != null) archivedCounter.increment(rows.size());
+        if (segmentBytes != null) segmentBytes.record(bytes.length);
+
+        purge(rows);
+        log.debug("健康数据归档段: device={}, day={}, 新增={}, 段内={}, 大小={}B",
+                deviceId, day, rows.size(), merged.size(), bytes.length);
+        return rows.size();
+    }
+
+    /**
+     * 按主键升序分块删除，每块一条短 DELETE
+     */
+    private void purge(List<HealthData> rows) {
+        long[] ids = rows.stream().mapToLong(HealthData::getId).sorted().toArray();
+        int chunk = Math.max(1, deleteChunkSize);
+        for (int from = 0; from < ids.length; from += chunk) {
+            List<Long> batch = new ArrayList<>(chunk);
+            for (int i = from; i < Math.min(ids.length, from + chunk); i++) batch.add(ids[i]);
+            int deleted = healthDataMapper.deleteArchived(batch);
+            if (purgedCounter != null) purgedCounter.increment(deleted);
+            if (deletePauseMs > 0 && from + chunk < ids.length) {
+                try {
+                    Thread.sleep(deletePauseMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 从归档段读取设备在 [from, to) 内、位于游标之后的数据，按 (上传时间, ID) 升序
+     * @param afterTime 游标时间，第一页传 null
+     */
+    public List<HealthData> read(String deviceId, LocalDateTime from, LocalDateTime to,
+                                 LocalDateTime afterTime, Long afterId, int limit) {
+        List<HealthData> result = new ArrayList<>();
+        LocalDate firstDay = (afterTime != null && afterTime.isAfter(from) ? afterTime : from).toLocalDate();
+        long fromMillis = HealthSegmentCodec.toMillis(from);
+        long toMillis = HealthSegmentCodec.toMillis(to);
+        long afterMillis = afterTime != null ? HealthSegmentCodec.toMillis(afterTime) : 0;
+        try {
+            for (LocalDate day : days(deviceId)) {
+                if (day.isBefore(firstDay)) continue;
+                if (!day.atStartOfDay().isBefore(to) || result.size() >= limit) break;
+                result.addAll(readSegment(segmentFile(deviceId, day), deviceId, fromMillis, toMillis,
+                        afterMillis, afterTime != null ? afterId : null, limit - result.size()));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return result;
+    }
+
+    /**
+     * 设备最后一个归档段的结束时间，没有归档时返回 null
+     */
+    public LocalDateTime archivedUntil(String deviceId) {
+        try {
+            TreeSet<LocalDate> days = days(deviceId);
+            return days.isEmpty() ? null : days.last().plusDays(1).atStartOfDay();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 在指定日期有归档段的设备
+     */
+    public List<String> archivedDevices(LocalDate day) {
+        List<String> devices = new ArrayList<>();
+        if (!Files.isDirectory(root)) return devices;
+        try (Stream<Path> dirs = Files.list(root)) {
+            for (Path deviceDir : (Iterable<Path>) dirs::iterator) {
+                if (!Files.exists(deviceDir.resolve(day + SEGMENT_SUFFIX))) continue;
+                devices.add(new String(Base64.getUrlDecoder().decode(deviceDir.getFileName().toString()), StandardCharsets.UTF_8));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return devices;
+    }
+
+    private List<HealthData> readSegment(Path file, String deviceId, long fromMillis, long toMillis,
+                                         long afterMillis, Long afterId, int limit) throws IOException {
+        List<HealthData> rows = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // 映射在通道关闭后仍然有效，由 GC 回收
+            MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            HealthSegmentCodec.decode(segment, deviceId, fromMillis, toMillis, afterMillis, afterId, limit, rows::add);
+        }
+        return rows;
+    }
+
+    private TreeSet<LocalDate> days(String deviceId) throws IOException {
+        TreeSet<LocalDate> days = new TreeSet<>();
+        Path deviceDir = deviceDir(deviceId);
+        if (!Files.isDirectory(deviceDir)) return days;
+        try (Stream<Path> files = Files.list(deviceDir)) {
+            files.map(p -> p.getFileName().toString())
+                    .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+                    .forEach(name -> days.add(LocalDate.parse(name.substring(0, name.length() - SEGMENT_SUFFIX.length()))));
+        }
+        return days;
+    }
+
+    private Path deviceDir(String deviceId) {
+        // 设备ID可能含有文件名中不允许的字符
+        return root.resolve(Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(deviceId.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private Path segmentFile(String deviceId, LocalDate day) {
+        return deviceDir(deviceId).resolve(day + SEGMENT_SUFFIX);
+    }
+}
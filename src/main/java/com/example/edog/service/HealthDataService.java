@@ -4,9 +4,15 @@ import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.example.edog.entity.HealthData;
 import com.example.edog.mapper.HealthDataMapper;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * 健康数据服务类
@@ -15,12 +21,48 @@ import java.time.LocalDateTime;
 @Slf4j
 @Service
 public class HealthDataService extends ServiceImpl<HealthDataMapper, HealthData> {
+
+    @Autowired
+    private HealthDataWriteBehind writeBehind;
+
+    @Autowired
+    private HealthDataWal wal;
+
+    @Autowired
+    private RecentVitalsStore recentVitalsStore;
+
+    @Autowired
+    private VitalsAnomalyService anomalyService;
+
+    @Autowired
+    private LiveVitalsHub liveVitalsHub;
+
+    // 批量上传接受的样本时间范围：最早为多久以前（离线缓存），最晚允许超前多少（设备时钟误差）
+    @Value("${lamp.health.bulk.max-sample-age-ms:604800000}")
+    private long maxSampleAgeMs = 604800000L;
+
+    @Value("${lamp.health.bulk.max-clock-skew-ms:300000}")
+    private long maxClockSkewMs = 300000;
+
+    private static final int MAX_REPORTED_ERRORS = 10;
+
+    /**
+     * 校验心率与呼吸频率
+     * @return 不合法的原因；合法时返回 null
+     */
+    public static String validate(Integer heartRate, Integer breathingRate) {
+        if (heartRate == null || breathingRate == null) return "心率或呼吸频率不能为空";
+        if (heartRate < 0 || heartRate > 300) return "心率数值异常（正常范围: 0-300）";
+        if (breathingRate < 0 || breathingRate > 100) return "呼吸频率数值异常（正常范围: 0-100）";
+        return null;
+    }
     
     /**
      * 保存健康数据
+     * 启用 WAL（默认）时数据落盘到本地日志后即返回；关闭 WAL 时才退回到批量写入队列。都不等待写库完成，因此返回对象没有主键ID
      * @param heartRate 心率
      * @param breathingRate 呼吸频率
-     * @return 保存的数据
+     * @return 待保存的数据；日志积压过多或写入队列已满时返回 null
      */
     public HealthData saveHealthData(Integer heartRate, Integer breathingRate) {
         HealthData healthData = new HealthData();
@@ -28,15 +70,103 @@ public class HealthDataService extends ServiceImpl<HealthDataMapper, HealthData>
         healthData.setBreathingRate(breathingRate);
         healthData.setUploadTime(LocalDateTime.now());
         
-        boolean success = this.save(healthData);
-        
-        if (success) {
-            log.info("健康数据保存成功: 心率={}, 呼吸频率={}, 时间={}", 
-                heartRate, breathingRate, healthData.getUploadTime());
-        } else {
-            log.error("健康数据保存失败");
+        boolean accepted = wal.isEnabled() ? wal.append(List.of(healthData)) : writeBehind.submit(healthData);
+        if (!accepted) {
+            return null;
         }
         
+        log.debug("健康数据已入队: 心率={}, 呼吸频率={}, 时间={}", 
+            heartRate, breathingRate, healthData.getUploadTime());
         return healthData;
     }
+
+    /**
+     * 开始一批带设备序号的样本
+     */
+    public BulkBatch newBulkBatch(String deviceId, int expectedSize) {
+        long now = System.currentTimeMillis();
+        return new BulkBatch(deviceId, now - maxSampleAgeMs, now + maxClockSkewMs, expectedSize);
+    }
+
+    /**
+     * 把校验通过的样本写入本地日志（启用 WAL 时整批追加，默认）；关闭 WAL 时退回到批量写入队列
+     * 同一设备的 (deviceId, seq) 唯一，重复提交的样本在写库时被忽略，设备可以放心整批重试
+     * @return 成功入队的条数；小于样本数说明日志积压过多或队列已满
+     */
+    public int saveBulk(BulkBatch batch) {
+        int queued = wal.isEnabled()
+                ? (wal.append(batch.samples) ? batch.samples.size() : 0)
+                : writeBehind.submitAll(batch.samples);
+        List<HealthData> accepted = batch.samples.subList(0, queued);
+        recentVitalsStore.record(accepted);
+        anomalyService.inspect(accepted);
+        liveVitalsHub.publish(accepted);
+        log.debug("批量健康数据入队: device={}, 有效={}, 无效={}, 入队={}",
+                batch.deviceId, batch.samples.size(), batch.invalid, queued);
+        return queued;
+    }
+
+    /**
+     * 一次批量上传的样本，逐条校验后累积
+     */
+    public static final class BulkBatch {
+        private final String deviceId;
+        private final long minTime;
+        private final long maxTime;
+        private final List<HealthData> samples;
+        private final List<String> errors = new ArrayList<>();
+        private int invalid;
+
+        private BulkBatch(String deviceId, long minTime, long maxTime, int expectedSize) {
+            this.deviceId = deviceId;
+            this.minTime = minTime;
+            this.maxTime = maxTime;
+            this.samples = new ArrayList<>(Math.max(0, expectedSize));
+        }
+
+        /**
+         * 校验并加入一条样本，不合法的样本计入 invalid 并跳过
+         * @param index 样本在请求中的下标，用于错误提示
+         */
+        public void add(int index, Long seq, Long epochMillis, Integer heartRate, Integer breathingRate) {
+            String error = validate(heartRate, breathingRate);
+            if (error == null && (seq == null || seq < 0)) error = "缺少序号";
+            if (error == null && epochMillis == null) error = "缺少时间戳";
+            if (error == null && (epochMillis < minTime || epochMillis > maxTime)) error = "时间戳超出允许范围";
+            if (error != null) {
+                invalid++;
+                if (errors.size() < MAX_REPORTED_ERRORS) errors.add(index + ": " + error);
+                return;
+            }
+
+            HealthData data = new HealthData();
+            data.setDeviceId(deviceId);
+            data.setSeq(seq);
+            data.setHeartRate(heartRate);
+            data.setBreathingRate(breathingRate);
+            data.setUploadTime(LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault()));
+            samples.add(data);
+        }
+
+        /**
+         * 前 count 条有效样本中最后一条的序号
+         * @return count 为 0 时返回 -1
+         */
+        public long lastSeq(int count) {
+            return count > 0 ? samples.get(count - 1).getSeq() : -1;
+        }
+
+        public int getValidCount() {
+            return samples.size();
+        }
+
+        public int getInvalidCount() {
+            return invalid;
+        }
+
+        /** 前若干条不合法样本的原因 */
+        public List<String> getErrors() {
+            return errors;
+        }
+    }
 }
@@ -0,0 +1,467 @@
+package com.example.edog.service;
+
+import com.example.edog.entity.HealthData;
+import com.example.edog.utils.HealthSegmentCodec;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * 健康数据本地预写日志（WAL）
+ * 上传的样本先追加到内存映射的日志段并落盘后才向设备确认，再由后台回放线程按批写入数据库，
+ * 写库成功后推进检查点；数据库变慢或不可用时上传延迟只取决于本地磁盘，已确认的样本不会丢失。
+ * <ul>
+ *   <li>组提交：追加方只写映射内存，提交线程一次 force 覆盖期间所有追加，并发上传共享一次 fsync。</li>
+ *   <li>记录格式：长度(int) | CRC32C(int) | 样本；段文件预分配固定大小，放不下时切换到下一个段。</li>
+ *   <li>启动时从最后一个段开头校验记录，截断写了一半的尾部记录，从检查点继续回放。</li>
+ *   <li>积压超过 max-backlog-bytes 时拒绝追加（背压），由接口提示设备稍后重试。</li>
+ * </ul>
+ * 回放按 (设备ID, 序号) 去重，带序号的样本重复回放不会重复入库；没有序号的旧接口样本在检查点写入前崩溃时可能重复一次。
+ */
+@Slf4j
+@Service
+public class HealthDataWal {
+
+    private static final int RECORD_HEADER = 8;
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final int HAS_DEVICE = 1;
+    private static final int HAS_SEQ = 2;
+
+    @Autowired
+    private HealthDataWriteBehind writeBehind;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Value("${lamp.health.wal.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${lamp.health.wal.dir:data/health-wal}")
+    private String dir = "data/health-wal";
+
+    @Value("${lamp.health.wal.segment-size-bytes:67108864}")
+    private int segmentSize = 64 * 1024 * 1024;
+
+    // 尚未回放的日志超过此大小时拒绝新的追加
+    @Value("${lamp.health.wal.max-backlog-bytes:1073741824}")
+    private long maxBacklogBytes = 1024L * 1024 * 1024;
+
+    @Value("${lamp.health.wal.replay-batch-size:500}")
+    private int replayBatchSize = 500;
+
+    @Value("${lamp.health.wal.replay-idle-ms:200}")
+    private long replayIdleMs = 200;
+
+    // 写库失败后的重试间隔上限（按次数线性增长）
+    @Value("${lamp.health.wal.replay-max-backoff-ms:10000}")
+    private long replayMaxBackoffMs = 10000;
+
+    @Value("${lamp.health.wal.shutdown-timeout-ms:10000}")
+    private long shutdownTimeoutMs = 10000;
+
+    private Path root;
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final Object appendLock = new Object();
+    private final Object durableMonitor = new Object();
+
+    // 以下字段只在持有 appendLock 时修改
+    private Segment current;
+    private long writePosition;
+    private int pendingRecords;
+
+    private volatile long durablePosition;
+    private volatile long checkpoint;
+    private volatile boolean running;
+    private Thread committer;
+    private Thread replayer;
+
+    private Timer fsyncTimer;
+    private DistributionSummary groupSummary;
+    private Counter rejectedCounter;
+    private Counter replayedCounter;
+
+    private static final class Segment {
+        final long base;
+        final Path path;
+        final MappedByteBuffer buffer;
+
+        Segment(long base, Path path, MappedByteBuffer buffer) {
+            this.base = base;
+            this.path = path;
+            this.buffer = buffer;
+        }
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) return;
+        root = Paths.get(dir);
+        Files.createDirectories(root);
+        recover();
+
+        if (meterRegistry != null) {
+            fsyncTimer = Timer.builder("lamp.health.wal.fsync.latency")
+                    .description("一次组提交落盘的耗时")
+                    .register(meterRegistry);
+            groupSummary = DistributionSummary.builder("lamp.health.wal.group.records")
+                    .description("一次落盘覆盖的追加记录数")
+                    .register(meterRegistry);
+            Gauge.builder("lamp.health.wal.backlog.bytes", this, HealthDataWal::getBacklogBytes)
+                    .register(meterRegistry);
+            rejectedCounter = Counter.builder("lamp.health.wal.rejected")
+                    .description("积压过多被拒绝的追加")
+                    .register(meterRegistry);
+            replayedCounter = Counter.builder("lamp.health.wal.replayed")
+                    .description("从日志回放写库的样本数")
+                    .register(meterRegistry);
+        }
+
+        running = true;
+        committer = new Thread(this::runCommitter, "health-wal-commit");
+        committer.setDaemon(true);
+        committer.start();
+        replayer = new Thread(this::runReplayer, "health-wal-replay");
+        replayer.setDaemon(true);
+        replayer.start();
+        log.info("健康数据 WAL 已启动: dir={}, 检查点={}, 末尾={}, 待回放={}B",
+                root.toAbsolutePath(), checkpoint, writePosition, getBacklogBytes());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 追加一批样本，落盘后返回
+     * @return 积压过多时返回 false，样本未被记录；等待落盘时被中断也返回 false，但已写入的记录之后仍会回放
+     */
+    public boolean append(List<HealthData> samples) {
+        if (samples.isEmpty()) return true;
+        byte[] payload = encode(samples);
+        int size = RECORD_HEADER + payload.length;
+        if (size > segmentSize) {
+            log.warn("健康数据 WAL 记录过大，拒绝追加: {}B", size);
+            return false;
+        }
+
+        long end;
+        synchronized (appendLock) {
+            if (!running || writePosition - checkpoint + size > maxBacklogBytes) {
+                if (rejectedCounter != null) rejectedCounter.increment();
+                log.warn("健康数据 WAL 积压过多，拒绝追加: backlog={}B", writePosition - checkpoint);
+                return false;
+            }
+            int offset = (int) (writePosition - current.base);
+            if (offset + size > segmentSize) {
+                roll();
+                offset = 0;
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(payload);
+            ByteBuffer out = current.buffer.duplicate();
+            out.position(offset);
+            out.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+            writePosition = current.base + offset + size;
+            pendingRecords++;
+            end = writePosition;
+        }
+        LockSupport.unpark(committer);
+
+        synchronized (durableMonitor) {
+            while (durablePosition < end) {
+                try {
+                    durableMonitor.wait(100);
+                } catch (InterruptedException e) {
+                    // 记录已写入映射内存，之后仍会落盘并回放；只是不能再向调用方确认
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 当前段写满：整段落盘后切换到新段，新段的起始位置紧接旧段的末尾
+     */
+    private void roll() {
+        current.buffer.force();
+        try {
+            current = openSegment(current.base + segmentSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        segments.put(current.base, current);
+        writePosition = current.base;
+    }
+
+    private void runCommitter() {
+        while (running || durablePosition < writePosition()) {
+            Segment segment;
+            long target;
+            int records;
+            synchronized (appendLock) {
+                segment = current;
+                target = writePosition;
+                records = pendingRecords;
+                pendingRecords = 0;
+            }
+            if (target == durablePosition) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(50));
+                continue;
+            }
+
+            long start = System.nanoTime();
+            // 切换段时旧段已整段落盘，这里只需落盘当前段的新增部分
+            int from = (int) Math.max(0, durablePosition - segment.base);
+            segment.buffer.force(from, (int) (target - segment.base) - from);
+            if (fsyncTimer != null) fsyncTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            if (groupSummary != null) groupSummary.record(records);
+
+            durablePosition = target;
+            synchronized (durableMonitor) {
+                durableMonitor.notifyAll();
+            }
+        }
+    }
+
+    private long writePosition() {
+        synchronized (appendLock) {
+            return writePosition;
+        }
+    }
+
+    private void runReplayer() {
+        long position = checkpoint;
+        while (running) {
+            List<HealthData> batch = new ArrayList<>(replayBatchSize);
+            long next = read(position, batch);
+            if (batch.isEmpty()) {
+                position = next;
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(replayIdleMs));
+                continue;
+            }
+            if (!writeWithRetry(batch)) return;
+            if (replayedCounter != null) replayedCounter.increment(batch.size());
+            position = next;
+            try {
+                saveCheckpoint(position);
+                deleteConsumedSegments();
+            } catch (IOException e) {
+                log.error("健康数据 WAL 检查点写入失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 从 position 开始读取已落盘的记录，凑够一批为止
+     * @return 下一次读取的位置
+     */
+    private long read(long position, List<HealthData> batch) {
+        while (batch.size() < replayBatchSize && position < durablePosition) {
+            Segment segment = segments.floorEntry(position).getValue();
+            int offset = (int) (position - segment.base);
+            int length = offset + RECORD_HEADER <= segmentSize ? segment.buffer.getInt(offset) : 0;
+            if (length == 0) {
+                // 段内剩余空间放不下下一条记录，继续读下一个段
+                position = segments.higherKey(segment.base);
+                continue;
+            }
+            byte[] payload = new byte[length];
+            segment.buffer.get(offset + RECORD_HEADER, payload);
+            decode(payload, batch);
+            position = segment.base + offset + RECORD_HEADER + length;
+        }
+        return position;
+    }
+
+    private boolean writeWithRetry(List<HealthData> batch) {
+        for (int attempt = 1; running; attempt++) {
+            try {
+                writeBehind.writeBatch(batch);
+                return true;
+            } catch (Exception e) {
+                long backoff = Math.min(replayMaxBackoffMs, 200L * attempt);
+                log.warn("健康数据 WAL 回放写库失败，{}ms 后第 {} 次重试: {}", backoff, attempt, e.getMessage());
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(backoff));
+            }
+        }
+        return false;
+    }
+
+    // ---------------------------------------------------------------- 段文件与检查点
+
+    private void recover() throws IOException {
+        checkpoint = loadCheckpoint();
+        try (Stream<Path> files = Files.list(root)) {
+            for (Path path : (Iterable<Path>) files::iterator) {
+                String name = path.getFileName().toString();
+                if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) continue;
+                long base = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                if (base + segmentSize <= checkpoint) {
+                    Files.delete(path);
+                } else {
+                    segments.put(base, openSegment(base));
+                }
+            }
+        }
+        if (segments.isEmpty()) segments.put(checkpoint, openSegment(checkpoint));
+
+        // 只有最后一个段可能有写了一半的记录；从段首逐条校验找到有效末尾
+        current = segments.lastEntry().getValue();
+        int offset = 0;
+        while (offset + RECORD_HEADER <= segmentSize) {
+            int length = current.buffer.getInt(offset);
+            if (length <= 0 || offset + RECORD_HEADER + length > segmentSize) break;
+            byte[] payload = new byte[length];
+            current.buffer.get(offset + RECORD_HEADER, payload);
+            CRC32C crc = new CRC32C();
+            crc.update(payload);
+            if ((int) crc.getValue() != current.buffer.getInt(offset + 4)) break;
+            offset += RECORD_HEADER + length;
+        }
+        if (offset + RECORD_HEADER <= segmentSize && current.buffer.getInt(offset) != 0) {
+            int torn = Math.max(0, current.buffer.getInt(offset));
+            int end = (int) Math.min(segmentSize, (long) offset + RECORD_HEADER + torn);
+            current.buffer.put(offset, new byte[end - offset]);
+            current.buffer.force(offset, end - offset);
+            log.warn("健康数据 WAL 截断不完整的尾部记录: segment={}, offset={}", current.path.getFileName(), offset);
+        }
+        writePosition = current.base + offset;
+        durablePosition = writePosition;
+        if (checkpoint < segments.firstKey()) checkpoint = segments.firstKey();
+    }
+
+    private Segment openSegment(long base) throws IOException {
+        Path path = root.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, base, SEGMENT_SUFFIX));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // 映射超出文件长度的部分会自动扩展文件，新文件内容为 0
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            return new Segment(base, path, buffer);
+        }
+    }
+
+    private long loadCheckpoint() throws IOException {
+        Path file = root.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(file)) return 0;
+        return ByteBuffer.wrap(Files.readAllBytes(file)).getLong();
+    }
+
+    private void saveCheckpoint(long position) throws IOException {
+        Path tmp = root.resolve(CHECKPOINT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.allocate(8).putLong(0, position));
+            channel.force(true);
+        }
+        Files.move(tmp, root.resolve(CHECKPOINT_FILE), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        checkpoint = position;
+    }
+
+    /**
+     * 删除已全部回放的段；映射由 GC 回收
+     */
+    private void deleteConsumedSegments() throws IOException {
+        for (Map.Entry<Long, Segment> entry : segments.entrySet()) {
+            Segment segment = entry.getValue();
+            if (segment.base + segmentSize > checkpoint || segment == segments.lastEntry().getValue()) break;
+            segments.remove(entry.getKey());
+            Files.deleteIfExists(segment.path);
+        }
+    }
+
+    // ---------------------------------------------------------------- 记录编码
+
+    private static byte[] encode(List<HealthData> samples) {
+        int size = 4;
+        List<byte[]> deviceIds = new ArrayList<>(samples.size());
+        for (HealthData d : samples) {
+            byte[] id = d.getDeviceId() != null ? d.getDeviceId().getBytes(StandardCharsets.UTF_8) : null;
+            deviceIds.add(id);
+            size += 1 + (id != null ? 2 + id.length : 0) + (d.getSeq() != null ? 8 : 0) + 8 + 4 + 4;
+        }
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.putInt(samples.size());
+        for (int i = 0; i < samples.size(); i++) {
+            HealthData d = samples.get(i);
+            byte[] id = deviceIds.get(i);
+            out.put((byte) ((id != null ? HAS_DEVICE : 0) | (d.getSeq() != null ? HAS_SEQ : 0)));
+            if (id != null) out.putShort((short) id.length).put(id);
+            if (d.getSeq() != null) out.putLong(d.getSeq());
+            out.putLong(HealthSegmentCodec.toMillis(d.getUploadTime()));
+            out.putInt(d.getHeartRate());
+            out.putInt(d.getBreathingRate());
+        }
+        return out.array();
+    }
+
+    private static void decode(byte[] payload, List<HealthData> sink) {
+        ByteBuffer in = ByteBuffer.wrap(payload);
+        int count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            int flags = in.get();
+            HealthData d = new HealthData();
+            if ((flags & HAS_DEVICE) != 0) {
+                byte[] id = new byte[in.getShort() & 0xFFFF];
+                in.get(id);
+                d.setDeviceId(new String(id, StandardCharsets.UTF_8));
+            }
+            if ((flags & HAS_SEQ) != 0) d.setSeq(in.getLong());
+            d.setUploadTime(HealthSegmentCodec.fromMillis(in.getLong()));
+            d.setHeartRate(in.getInt());
+            d.setBreathingRate(in.getInt());
+            sink.add(d);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (!enabled) return;
+        running = false;
+        // 不中断回放线程，避免打断正在进行的写库；未写入检查点的部分下次启动时重新回放
+        LockSupport.unpark(replayer);
+        LockSupport.unpark(committer);
+        try {
+            committer.join(shutdownTimeoutMs);
+            replayer.join(shutdownTimeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.info("健康数据 WAL 已关闭: 检查点={}, 待回放={}B", checkpoint, getBacklogBytes());
+    }
+
+    /** 已记录但尚未写入数据库的字节数 */
+    public long getBacklogBytes() {
+        return Math.max(0, durablePosition - checkpoint);
+    }
+}
@@ -0,0 +1,268 @@
+package com.example.edog.service;
+
+import com.example.edog.entity.HealthData;
+import com.example.edog.mapper.HealthDataMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 健康数据异步批量写入
+ * 上传接口只把数据放入有界队列即返回，后台线程攒够 batch-size 条或等待 flush-interval-ms 后用一条多行 INSERT 写库。
+ * 队列满时提交方最多等待 offer-timeout-ms，仍无空位则拒绝（背压），由接口提示设备稍后重试；应用关闭时写完队列中剩余数据。
+ * 注意：默认启用 WAL（lamp.health.wal.enabled），此时上传只写本地日志，队列、背压和队列深度指标都不经过，
+ * 本类只提供 {@link #writeBatch}（去重、写库、汇总及批次指标）给 WAL 回放使用；队列仅在关闭 WAL 时作为写入路径。
+ * WAL 回放不能经过队列：回放必须在写库成功后才推进检查点，而队列在重试耗尽后会丢弃数据。
+ */
+@Slf4j
+@Service
+public class HealthDataWriteBehind {
+
+    @Autowired
+    private HealthDataMapper healthDataMapper;
+
+    @Autowired
+    private HealthRollupService rollupService;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Value("${lamp.health.write-behind.queue-capacity:10000}")
+    private int queueCapacity = 10000;
+
+    @Value("${lamp.health.write-behind.batch-size:500}")
+    private int batchSize = 500;
+
+    @Value("${lamp.health.write-behind.flush-interval-ms:1000}")
+    private long flushIntervalMs = 1000;
+
+    @Value("${lamp.health.write-behind.offer-timeout-ms:200}")
+    private long offerTimeoutMs = 200;
+
+    @Value("${lamp.health.write-behind.max-retries:3}")
+    private int maxRetries = 3;
+
+    @Value("${lamp.health.write-behind.shutdown-timeout-ms:10000}")
+    private long shutdownTimeoutMs = 10000;
+
+    // 启用 WAL 时上传不经过本队列
+    @Value("${lamp.health.wal.enabled:true}")
+    private boolean walEnabled = true;
+
+    private BlockingQueue<HealthData> queue;
+    private Thread flusher;
+    private volatile boolean running;
+
+    private DistributionSummary batchSizeSummary;
+    private Timer flushTimer;
+    private Counter rejectedCounter;
+    private Counter droppedCounter;
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        if (meterRegistry != null) {
+            batchSizeSummary = DistributionSummary.builder("lamp.health.write.batch.size")
+                    .description("每次写库的行数")
+                    .register(meterRegistry);
+            flushTimer = Timer.builder("lamp.health.write.flush.latency")
+                    .description("一次批量写库的耗时")
+                    .register(meterRegistry);
+            Gauge.builder("lamp.health.write.queue.depth", this, HealthDataWriteBehind::getQueueDepth)
+                    .register(meterRegistry);
+            rejectedCounter = Counter.builder("lamp.health.write.rejected")
+                    .description("队列已满被拒绝的上传数")
+                    .register(meterRegistry);
+            droppedCounter = Counter.builder("lamp.health.write.dropped")
+                    .description("重试后仍写库失败而丢弃的行数")
+                    .register(meterRegistry);
+        }
+
+        running = true;
+        flusher = new Thread(this::runFlusher, "health-write-behind");
+        flusher.setDaemon(true);
+        flusher.start();
+        if (walEnabled) {
+            log.info("健康数据批量写入队列已启动，但 WAL 已启用，上传经 WAL 回放写库，队列仅在关闭 WAL 时使用");
+        } else {
+            log.info("健康数据批量写入已启动: queueCapacity={}, batchSize={}, flushInterval={}ms",
+                    queueCapacity, batchSize, flushIntervalMs);
+        }
+    }
+
+    /**
+     * 提交一条待写入的数据
+     * @return 队列已满且等待超时时返回 false
+     */
+    public boolean submit(HealthData data) {
+        try {
+            if (running && queue.offer(data, offerTimeoutMs, TimeUnit.MILLISECONDS)) return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (rejectedCounter != null) rejectedCounter.increment();
+        log.warn("健康数据写入队列已满，拒绝本次上传: depth={}", queue.size());
+        return false;
+    }
+
+    /**
+     * 按顺序提交一批数据，遇到队列已满即停止
+     * @return 成功提交的条数
+     */
+    public int submitAll(List<HealthData> list) {
+        int submitted = 0;
+        for (HealthData data : list) {
+            if (!submit(data)) break;
+            submitted++;
+        }
+        return submitted;
+    }
+
+    private void runFlusher() {
+        List<HealthData> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                HealthData first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+
+                // 从第一条到达起最多再等一个间隔，攒满一批提前写
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while (batch.size() < batchSize && running) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    if (batch.size() >= batchSize) break;
+                    long waitNanos = deadline - System.nanoTime();
+                    if (waitNanos <= 0) break;
+                    HealthData next = queue.poll(waitNanos, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+                queue.drainTo(batch, batchSize - batch.size());
+            } catch (InterruptedException e) {
+                // 关闭时被唤醒，继续写完剩余数据
+                queue.drainTo(batch, batchSize - batch.size());
+            }
+
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<HealthData> batch) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                writeBatch(batch);
+                return;
+            } catch (Exception e) {
+                if (attempt > maxRetries) {
+                    if (droppedCounter != null) droppedCounter.increment(batch.size());
+                    log.error("健康数据批量写入失败，丢弃 {} 条: {}", batch.size(), e.getMessage());
+                    return;
+                }
+                log.warn("健康数据批量写入失败，第 {} 次重试: {}", attempt, e.getMessage());
+                try {
+                    Thread.sleep(200L * attempt);
+                } catch (InterruptedException ie) {
+                    // 关闭期间不再等待，直接进入下一次重试
+                }
+            }
+        }
+    }
+
+    /**
+     * 去重后用一条多行 INSERT 写入并更新汇总；失败时抛出异常，由调用方决定是否重试
+     * 写库与汇总串行执行，写入后读到的最大主键恰好覆盖已交给汇总的所有行
+     * @return 实际新增的行数
+     */
+    synchronized int writeBatch(List<HealthData> batch) {
+        long start = System.nanoTime();
+        List<HealthData> fresh = withoutDuplicates(batch);
+        long maxId = 0;
+        if (!fresh.isEmpty()) {
+            healthDataMapper.insertBatch(fresh);
+            maxId = lastInsertedId();
+        }
+        if (flushTimer != null) flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (batchSizeSummary != null) batchSizeSummary.record(fresh.size());
+        log.debug("健康数据批量写入: {} 条（重复 {} 条）, 耗时 {}ms",
+                fresh.size(), batch.size() - fresh.size(), (System.nanoTime() - start) / 1_000_000);
+        // 只汇总真正新增的样本，重试提交的重复样本不重复计数
+        rollupService.record(fresh, maxId);
+        return fresh.size();
+    }
+
+    /**
+     * 写入后的最大主键；读取失败时返回 0（本批照常汇总，只是暂不推进汇总水位）
+     */
+    private long lastInsertedId() {
+        try {
+            Long maxId = healthDataMapper.selectMaxId();
+            return maxId != null ? maxId : 0;
+        } catch (Exception e) {
+            log.warn("读取健康数据最大主键失败: {}", e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * 去掉已入库或在本批内重复的 (设备ID, 序号) 样本；不带序号的旧数据原样保留
+     */
+    private List<HealthData> withoutDuplicates(List<HealthData> batch) {
+        List<HealthData> keyed = new ArrayList<>();
+        for (HealthData data : batch) {
+            if (data.getDeviceId() != null && data.getSeq() != null) keyed.add(data);
+        }
+        if (keyed.isEmpty()) return batch;
+
+        Set<String> seen = new HashSet<>();
+        for (HealthData existing : healthDataMapper.selectExistingSeqs(keyed)) {
+            seen.add(existing.getDeviceId() + '\u0000' + existing.getSeq());
+        }
+        List<HealthData> fresh = new ArrayList<>(batch.size());
+        for (HealthData data : batch) {
+            if (data.getDeviceId() == null || data.getSeq() == null
+                    || seen.add(data.getDeviceId() + '\u0000' + data.getSeq())) {
+                fresh.add(data);
+            }
+        }
+        return fresh;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        flusher.interrupt();
+        try {
+            flusher.join(shutdownTimeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (flusher.isAlive() || !queue.isEmpty()) {
+            log.warn("健康数据批量写入未能在关闭前完成，剩余 {} 条", queue.size());
+        } else {
+            log.info("健康数据批量写入已关闭，队列已清空");
+        }
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+}
@@ -0,0 +1,241 @@
+package com.example.edog.service;
+
+import com.example.edog.dto.HealthHistoryPage;
+import com.example.edog.entity.HealthData;
+import com.example.edog.mapper.HealthDataMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * 健康数据历史查询与导出
+ * 分页使用 (上传时间, ID) 键集游标而不是 OFFSET，翻到多深都只扫描一页的行；
+ * 导出按块读取，每块在一个短事务内用流式游标逐行写出，内存占用固定，也不会长时间占用数据库连接。
+ * 已归档的时间段从归档段读取，并与库中尚未删除或迟到的行按同一顺序合并，对调用方透明。
+ */
+@Slf4j
+@Service
+public class HealthHistoryService {
+
+    public enum ExportFormat {
+        CSV, NDJSON
+    }
+
+    @Autowired
+    private HealthDataMapper healthDataMapper;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private HealthArchiveService archiveService;
+
+    // 导出时每个短事务读取的行数
+    @Value("${lamp.health.export.chunk-size:5000}")
+    private int exportChunkSize = 5000;
+
+    private static final class ExportPosition {
+        LocalDateTime afterTime;
+        Long afterId;
+        int rows;
+    }
+
+    /**
+     * 查询一页历史数据
+     * @param cursor 上一页返回的 nextCursor，第一页传 null
+     * @throws IllegalArgumentException 游标无效
+     */
+    public HealthHistoryPage page(String deviceId, LocalDateTime from, LocalDateTime to, String cursor, int limit) {
+        LocalDateTime afterTime = null;
+        Long afterId = null;
+        if (cursor != null && !cursor.isEmpty()) {
+            String decoded;
+            try {
+                decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int sep = decoded.lastIndexOf('|');
+                afterTime = LocalDateTime.parse(decoded.substring(0, sep));
+                afterId = Long.parseLong(decoded.substring(sep + 1));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("无效的游标");
+            }
+        }
+
+        List<HealthData> items = mergedPage(deviceId, from, to, afterTime, afterId, limit);
+        String next = null;
+        if (items.size() == limit) {
+            HealthData last = items.get(items.size() - 1);
+            String raw = last.getUploadTime() + "|" + last.getId();
+            next = Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+        return HealthHistoryPage.builder().items(items).nextCursor(next).build();
+    }
+
+    /**
+     * 读取设备在时间范围内的全部数据（包括已归档的部分），按时间升序；用于分析等需要整段数据的场景
+     */
+    public List<HealthData> range(String deviceId, LocalDateTime from, LocalDateTime to) {
+        List<HealthData> all = new ArrayList<>();
+        LocalDateTime afterTime = null;
+        Long afterId = null;
+        while (true) {
+            List<HealthData> rows = mergedPage(deviceId, from, to, afterTime, afterId, exportChunkSize);
+            all.addAll(rows);
+            if (rows.size() < exportChunkSize) return all;
+            afterTime = rows.get(rows.size() - 1).getUploadTime();
+            afterId = rows.get(rows.size() - 1).getId();
+        }
+    }
+
+    /**
+     * 归档段与数据库各取一页，按 (上传时间, ID) 归并；归档后尚未删除的行两边都有，只保留一条
+     */
+    private List<HealthData> mergedPage(String deviceId, LocalDateTime from, LocalDateTime to,
+                                        LocalDateTime afterTime, Long afterId, int limit) {
+        List<HealthData> hot = healthDataMapper.selectPage(deviceId, from, to, afterTime, afterId, limit);
+        LocalDateTime archivedUntil = archiveService.archivedUntil(deviceId);
+        if (archivedUntil == null || !archivedUntil.isAfter(from)) return hot;
+
+        List<HealthData> cold = archiveService.read(deviceId, from, to, afterTime, afterId, limit);
+        if (cold.isEmpty()) return hot;
+        List<HealthData> merged = new ArrayList<>(limit);
+        int i = 0, j = 0;
+        while (merged.size() < limit && (i < cold.size() || j < hot.size())) {
+            int cmp = i == cold.size() ? 1 : j == hot.size() ? -1
+                    : HealthArchiveService.TIME_ORDER.compare(cold.get(i), hot.get(j));
+            if (cmp < 0) {
+                merged.add(cold.get(i++));
+            } else if (cmp > 0) {
+                merged.add(hot.get(j++));
+            } else {
+                merged.add(hot.get(j++));
+                i++;
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * 导出设备在时间范围内的全部数据到输出流
+     * @return 导出行数
+     */
+    public long export(String deviceId, LocalDateTime from, LocalDateTime to, ExportFormat format, OutputStream out) throws IOException {
+        long start = System.currentTimeMillis();
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        if (format == ExportFormat.CSV) writer.write("id,device_id,seq,upload_time,heart_rate,breathing_rate\n");
+
+        long total = 0;
+        LocalDateTime hotFrom = from;
+        LocalDateTime archivedUntil = archiveService.archivedUntil(deviceId);
+        if (archivedUntil != null && archivedUntil.isAfter(from)) {
+            // 已归档的时间段逐页归并读取
+            hotFrom = archivedUntil.isBefore(to) ? archivedUntil : to;
+            LocalDateTime afterTime = null;
+            Long afterId = null;
+            while (true) {
+                List<HealthData> rows = mergedPage(deviceId, from, hotFrom, afterTime, afterId, exportChunkSize);
+                for (HealthData row : rows) writeRow(writer, row, format);
+                writer.flush();
+                total += rows.size();
+                if (rows.size() < exportChunkSize) break;
+                afterTime = rows.get(rows.size() - 1).getUploadTime();
+                afterId = rows.get(rows.size() - 1).getId();
+            }
+        }
+
+        LocalDateTime streamFrom = hotFrom;
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.setReadOnly(true);
+        ExportPosition position = new ExportPosition();
+        try {
+            while (streamFrom.isBefore(to)) {
+                position.rows = 0;
+                // 游标只能在事务（同一连接）内遍历；每块结束即归还连接
+                tx.executeWithoutResult(status -> {
+                    try (Cursor<HealthData> rows = healthDataMapper.streamPage(deviceId, streamFrom, to,
+                            position.afterTime, position.afterId, exportChunkSize)) {
+                        for (HealthData row : rows) {
+                            writeRow(writer, row, format);
+                            position.afterTime = row.getUploadTime();
+                            position.afterId = row.getId();
+                            position.rows++;
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                writer.flush();
+                total += position.rows;
+                if (position.rows < exportChunkSize) break;
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        log.info("健康数据导出完成: device={}, 行数={}, 耗时={}ms", deviceId, total, System.currentTimeMillis() - start);
+        return total;
+    }
+
+    private static void writeRow(Writer w, HealthData d, ExportFormat format) throws IOException {
+        if (format == ExportFormat.CSV) {
+            w.write(String.valueOf(d.getId()));
+            w.write(',');
+            w.write(csv(d.getDeviceId()));
+            w.write(',');
+            w.write(d.getSeq() != null ? d.getSeq().toString() : "");
+            w.write(',');
+            w.write(String.valueOf(d.getUploadTime()));
+            w.write(',');
+            w.write(String.valueOf(d.getHeartRate()));
+            w.write(',');
+            w.write(String.valueOf(d.getBreathingRate()));
+            w.write('\n');
+        } else {
+            w.write("{\"id\":");
+            w.write(String.valueOf(d.getId()));
+            w.write(",\"deviceId\":");
+            w.write(json(d.getDeviceId()));
+            w.write(",\"seq\":");
+            w.write(String.valueOf(d.getSeq()));
+            w.write(",\"uploadTime\":\"");
+            w.write(String.valueOf(d.getUploadTime()));
+            w.write("\",\"heartRate\":");
+            w.write(String.valueOf(d.getHeartRate()));
+            w.write(",\"breathingRate\":");
+            w.write(String.valueOf(d.getBreathingRate()));
+            w.write("}\n");
+        }
+    }
+
+    private static String csv(String value) {
+        if (value == null) return "";
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) return value;
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static String json(String value) {
+        if (value == null) return "null";
+        StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') sb.append('\\').append(c);
+            else if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+            else sb.append(c);
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,462 @@
+package com.example.edog.service;
+
+import com.example.edog.dto.HealthTrendPoint;
+import com.example.edog.entity.HealthData;
+import com.example.edog.entity.HealthRollup;
+import com.example.edog.enums.RollupGranularity;
+import com.example.edog.mapper.HealthDataMapper;
+import com.example.edog.mapper.HealthRollupMapper;
+import com.example.edog.utils.ValueHistogram;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 健康数据汇总服务
+ * 样本写库后在内存中累加到所属设备的 1 分钟、1 小时、1 天时间桶（最小、最大、总和、样本数及分布草图），
+ * 定时把有变化的桶整体写入 health_rollup；趋势查询只读汇总表，不扫描原始数据。
+ * 内存中新建的桶第一次写库前先读出库中已有的值合并（如重启前已写入的部分），因此不会覆盖已有汇总。
+ * 每轮全部写库成功后把已计入汇总的最大主键记到水位文件；进程异常退出时内存中未写库的部分会丢失，
+ * 而这些样本重试时已被去重跳过，所以启动时对水位之后的原始数据所在的时间桶从原始数据重新计算并覆盖。
+ */
+@Slf4j
+@Service
+public class HealthRollupService {
+
+    private static final int HEART_RATE_MAX = 300;
+    private static final int HEART_RATE_BIN_WIDTH = 2;
+    private static final int BREATHING_RATE_MAX = 100;
+    private static final int BREATHING_RATE_BIN_WIDTH = 1;
+    private static final int REBUILD_PAGE_SIZE = 5000;
+    private static final int REBUILD_MAX_ATTEMPTS = 3;
+
+    @Autowired
+    private HealthRollupMapper rollupMapper;
+
+    @Autowired
+    private HealthDataMapper healthDataMapper;
+
+    @Autowired
+    private HealthHistoryService historyService;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Value("${lamp.health.rollup.flush-interval-ms:5000}")
+    private long flushIntervalMs = 5000;
+
+    @Value("${lamp.health.rollup.batch-size:500}")
+    private int batchSize = 500;
+
+    // 时间桶结束后在内存中再保留多久，便于接收稍晚到达的样本
+    @Value("${lamp.health.rollup.retain-closed-ms:120000}")
+    private long retainClosedMs = 120000;
+
+    // 已计入汇总并写库的 health_data 最大主键
+    @Value("${lamp.health.rollup.watermark-file:data/health-rollup.watermark}")
+    private String watermarkFile = "data/health-rollup.watermark";
+
+    private final Map<BucketKey, Bucket> buckets = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flushScheduler = Executors.newSingleThreadScheduledExecutor();
+    private Timer flushTimer;
+
+    // 已交给 record 的样本的最大主键（样本加入时间桶之后才推进）
+    private volatile long recordedMaxId;
+    // 已写入水位文件的值
+    private long savedWatermark;
+    // 启动时的重算没有完成，本次运行不再推进水位，下次启动从原水位重新计算
+    private boolean rebuildPending;
+
+    private record BucketKey(String deviceId, RollupGranularity granularity, LocalDateTime start) {
+    }
+
+    private static final class Bucket {
+        final BucketKey key;
+        int count;
+        int heartRateMin = Integer.MAX_VALUE;
+        int heartRateMax = Integer.MIN_VALUE;
+        long heartRateSum;
+        int breathingRateMin = Integer.MAX_VALUE;
+        int breathingRateMax = Integer.MIN_VALUE;
+        long breathingRateSum;
+        final ValueHistogram heartRates = new ValueHistogram(HEART_RATE_MAX, HEART_RATE_BIN_WIDTH);
+        final ValueHistogram breathingRates = new ValueHistogram(BREATHING_RATE_MAX, BREATHING_RATE_BIN_WIDTH);
+        // 以下标志只在持有该桶的锁时修改
+        volatile boolean dirty;
+        volatile boolean loaded;
+        boolean evicted;
+
+        Bucket(BucketKey key) {
+            this.key = key;
+        }
+
+        void add(int heartRate, int breathingRate) {
+            count++;
+            heartRateMin = Math.min(heartRateMin, heartRate);
+            heartRateMax = Math.max(heartRateMax, heartRate);
+            heartRateSum += heartRate;
+            breathingRateMin = Math.min(breathingRateMin, breathingRate);
+            breathingRateMax = Math.max(breathingRateMax, breathingRate);
+            breathingRateSum += breathingRate;
+            heartRates.add(heartRate);
+            breathingRates.add(breathingRate);
+            dirty = true;
+        }
+
+        /** 合并库中已有的汇总值 */
+        void merge(HealthRollup row) {
+            if (row.getSampleCount() == null || row.getSampleCount() == 0) return;
+            count += row.getSampleCount();
+            heartRateMin = Math.min(heartRateMin, row.getHeartRateMin());
+            heartRateMax = Math.max(heartRateMax, row.getHeartRateMax());
+            heartRateSum += row.getHeartRateSum();
+            breathingRateMin = Math.min(breathingRateMin, row.getBreathingRateMin());
+            breathingRateMax = Math.max(breathingRateMax, row.getBreathingRateMax());
+            breathingRateSum += row.getBreathingRateSum();
+            heartRates.mergeEncoded(row.getHeartRateSketch());
+            breathingRates.mergeEncoded(row.getBreathingRateSketch());
+        }
+
+        HealthRollup toRow() {
+            HealthRollup row = key();
+            row.setSampleCount(count);
+            row.setHeartRateMin(heartRateMin);
+            row.setHeartRateMax(heartRateMax);
+            row.setHeartRateSum(heartRateSum);
+            row.setBreathingRateMin(breathingRateMin);
+            row.setBreathingRateMax(breathingRateMax);
+            row.setBreathingRateSum(breathingRateSum);
+            row.setHeartRateSketch(heartRates.encode());
+            row.setBreathingRateSketch(breathingRates.encode());
+            return row;
+        }
+
+        HealthRollup key() {
+            HealthRollup row = new HealthRollup();
+            row.setDeviceId(key.deviceId());
+            row.setGranularity(key.granularity().getCode());
+            row.setBucketStart(key.start());
+            return row;
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        // 写库线程依赖本服务，此时尚未开始写入，重算不会与 record 并发
+        rebuildAfterCrash();
+        if (meterRegistry != null) {
+            flushTimer = Timer.builder("lamp.health.rollup.flush.latency")
+                    .description("一轮汇总写库的耗时")
+                    .register(meterRegistry);
+            Gauge.builder("lamp.health.rollup.buckets", buckets, Map::size)
+                    .description("内存中的汇总时间桶数")
+                    .register(meterRegistry);
+        }
+        flushScheduler.scheduleWithFixedDelay(this::flushSafely, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 累加一批已写库的样本；没有设备ID的旧数据无法归属，跳过
+     * @param maxId 写入这批样本后 health_data 的最大主键，0 表示未知
+     */
+    public void record(List<HealthData> samples, long maxId) {
+        for (HealthData data : samples) {
+            if (!rollable(data)) continue;
+            for (RollupGranularity granularity : RollupGranularity.values()) {
+                BucketKey key = new BucketKey(data.getDeviceId(), granularity, granularity.bucketStart(data.getUploadTime()));
+                while (true) {
+                    Bucket bucket = buckets.computeIfAbsent(key, Bucket::new);
+                    synchronized (bucket) {
+                        // 恰好被淘汰，换一个新桶（写库前会重新读取库中已有值）
+                        if (bucket.evicted) continue;
+                        bucket.add(data.getHeartRate(), data.getBreathingRate());
+                        break;
+                    }
+                }
+            }
+        }
+        if (maxId > recordedMaxId) recordedMaxId = maxId;
+    }
+
+    private static boolean rollable(HealthData data) {
+        return data.getDeviceId() != null && data.getUploadTime() != null
+                && data.getHeartRate() != null && data.getBreathingRate() != null;
+    }
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("健康数据汇总写库失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 把有变化的时间桶写库，并淘汰已结束且已写库的桶
+     */
+    public synchronized void flush() {
+        long start = System.nanoTime();
+        // 先取水位再收集脏桶：水位以内的样本此时都已在某个脏桶或已写库的桶中
+        long covered = recordedMaxId;
+        boolean complete = true;
+        List<Bucket> dirty = new ArrayList<>();
+        for (Bucket bucket : buckets.values()) {
+            if (bucket.dirty) dirty.add(bucket);
+        }
+
+        for (int from = 0; from < dirty.size(); from += batchSize) {
+            List<Bucket> chunk = dirty.subList(from, Math.min(dirty.size(), from + batchSize));
+            loadExisting(chunk);
+
+            List<Bucket> written = new ArrayList<>(chunk.size());
+            List<HealthRollup> rows = new ArrayList<>(chunk.size());
+            for (Bucket bucket : chunk) {
+                synchronized (bucket) {
+                    // 库中已有值读取失败的桶留到下一轮，避免用部分数据覆盖
+                    if (!bucket.loaded) {
+                        complete = false;
+                        continue;
+                    }
+                    bucket.dirty = false;
+                    rows.add(bucket.toRow());
+                    written.add(bucket);
+                }
+            }
+            if (rows.isEmpty()) continue;
+            try {
+                rollupMapper.upsertBatch(rows);
+            } catch (Exception e) {
+                for (Bucket bucket : written) {
+                    synchronized (bucket) {
+                        bucket.dirty = true;
+                    }
+                }
+                complete = false;
+                log.warn("汇总写库失败，下一轮重试: {} 个时间桶, error={}", rows.size(), e.getMessage());
+            }
+        }
+
+        if (complete && !rebuildPending && covered > savedWatermark) saveWatermark(covered);
+        evictClosed();
+        if (flushTimer != null && !dirty.isEmpty()) flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private void loadExisting(List<Bucket> chunk) {
+        List<HealthRollup> keys = new ArrayList<>();
+        for (Bucket bucket : chunk) {
+            if (!bucket.loaded) keys.add(bucket.key());
+        }
+        if (keys.isEmpty()) return;
+
+        List<HealthRollup> existing;
+        try {
+            existing = rollupMapper.selectByKeys(keys);
+        } catch (Exception e) {
+            log.warn("读取已有汇总失败: {}", e.getMessage());
+            return;
+        }
+        Map<BucketKey, HealthRollup> byKey = new HashMap<>();
+        for (HealthRollup row : existing) {
+            RollupGranularity granularity = RollupGranularity.fromCode(row.getGranularity());
+            if (granularity != null) byKey.put(new BucketKey(row.getDeviceId(), granularity, row.getBucketStart()), row);
+        }
+        for (Bucket bucket : chunk) {
+            synchronized (bucket) {
+                if (bucket.loaded) continue;
+                HealthRollup row = byKey.get(bucket.key);
+                if (row != null) bucket.merge(row);
+                bucket.loaded = true;
+            }
+        }
+    }
+
+    private void evictClosed() {
+        LocalDateTime threshold = LocalDateTime.now().minusNanos(retainClosedMs * 1_000_000);
+        for (Bucket bucket : buckets.values()) {
+            if (bucket.dirty) continue;
+            LocalDateTime end = bucket.key.granularity().bucketEnd(bucket.key.start());
+            if (!end.isBefore(threshold)) continue;
+            synchronized (bucket) {
+                if (bucket.dirty) continue;
+                bucket.evicted = true;
+                buckets.remove(bucket.key, bucket);
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------- 异常退出后重算
+
+    /**
+     * 重算水位之后写入的原始数据所在的时间桶；数据库暂不可用时重试几次，仍失败则保留原水位留待下次启动
+     */
+    private void rebuildAfterCrash() {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                Long watermark = readWatermark();
+                if (watermark == null) {
+                    // 首次启动：已有数据视为已汇总
+                    Long maxId = healthDataMapper.selectMaxId();
+                    savedWatermark = recordedMaxId = maxId != null ? maxId : 0;
+                    saveWatermark(savedWatermark);
+                } else {
+                    savedWatermark = recordedMaxId = rebuildAfter(watermark);
+                    if (savedWatermark > watermark) saveWatermark(savedWatermark);
+                }
+                return;
+            } catch (Exception e) {
+                if (attempt >= REBUILD_MAX_ATTEMPTS) {
+                    rebuildPending = true;
+                    log.error("健康数据汇总重算失败，下次启动重试: {}", e.getMessage());
+                    return;
+                }
+                log.warn("健康数据汇总重算失败，第 {} 次重试: {}", attempt, e.getMessage());
+                try {
+                    Thread.sleep(1000L * attempt);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    rebuildPending = true;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return 重算覆盖到的最大主键
+     */
+    private long rebuildAfter(long watermark) {
+        // 受影响的时间桶，按设备与天分组（分钟、小时桶都落在所属的天内）
+        Map<BucketKey, Set<BucketKey>> affectedByDay = new LinkedHashMap<>();
+        long maxId = watermark;
+        while (true) {
+            List<HealthData> rows = healthDataMapper.selectKeysAfterId(maxId, REBUILD_PAGE_SIZE);
+            for (HealthData row : rows) {
+                if (row.getDeviceId() == null || row.getUploadTime() == null) continue;
+                BucketKey day = new BucketKey(row.getDeviceId(), RollupGranularity.DAY,
+                        RollupGranularity.DAY.bucketStart(row.getUploadTime()));
+                Set<BucketKey> keys = affectedByDay.computeIfAbsent(day, k -> new HashSet<>());
+                for (RollupGranularity granularity : RollupGranularity.values()) {
+                    keys.add(new BucketKey(row.getDeviceId(), granularity, granularity.bucketStart(row.getUploadTime())));
+                }
+            }
+            if (!rows.isEmpty()) maxId = rows.get(rows.size() - 1).getId();
+            if (rows.size() < REBUILD_PAGE_SIZE) break;
+        }
+        if (affectedByDay.isEmpty()) return maxId;
+
+        int rebuilt = 0;
+        for (Map.Entry<BucketKey, Set<BucketKey>> entry : affectedByDay.entrySet()) {
+            BucketKey day = entry.getKey();
+            Set<BucketKey> keys = entry.getValue();
+            Map<BucketKey, Bucket> fresh = new HashMap<>();
+            // 从原始数据（含已归档部分）完整重算，覆盖库中的值，与崩溃前写入了多少无关
+            for (HealthData data : historyService.range(day.deviceId(), day.start(), RollupGranularity.DAY.bucketEnd(day.start()))) {
+                if (!rollable(data)) continue;
+                for (RollupGranularity granularity : RollupGranularity.values()) {
+                    BucketKey key = new BucketKey(data.getDeviceId(), granularity, granularity.bucketStart(data.getUploadTime()));
+                    if (keys.contains(key)) fresh.computeIfAbsent(key, Bucket::new).add(data.getHeartRate(), data.getBreathingRate());
+                }
+            }
+            List<HealthRollup> rows = new ArrayList<>(fresh.size());
+            for (Bucket bucket : fresh.values()) rows.add(bucket.toRow());
+            for (int from = 0; from < rows.size(); from += batchSize) {
+                rollupMapper.upsertBatch(rows.subList(from, Math.min(rows.size(), from + batchSize)));
+            }
+            rebuilt += rows.size();
+        }
+        log.info("健康数据汇总已按原始数据重算: 水位 {} -> {}, {} 个时间桶", watermark, maxId, rebuilt);
+        return maxId;
+    }
+
+    private Long readWatermark() throws IOException {
+        Path file = Paths.get(watermarkFile);
+        if (!Files.exists(file)) return null;
+        String text = Files.readString(file, StandardCharsets.UTF_8).trim();
+        return text.isEmpty() ? null : Long.parseLong(text);
+    }
+
+    private void saveWatermark(long watermark) {
+        try {
+            Path file = Paths.get(watermarkFile);
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) Files.createDirectories(parent);
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.writeString(tmp, Long.toString(watermark), StandardCharsets.UTF_8);
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            savedWatermark = watermark;
+        } catch (IOException e) {
+            log.warn("保存汇总水位失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 设备在时间范围内的趋势，只读汇总表
+     * @param from 起始时间（含），按粒度向下对齐
+     * @param to 结束时间（不含）
+     */
+    public List<HealthTrendPoint> trend(String deviceId, RollupGranularity granularity, LocalDateTime from, LocalDateTime to) {
+        List<HealthRollup> rows = rollupMapper.selectRange(deviceId, granularity.getCode(), granularity.bucketStart(from), to);
+        List<HealthTrendPoint> points = new ArrayList<>(rows.size());
+        ValueHistogram heartRates = new ValueHistogram(HEART_RATE_MAX, HEART_RATE_BIN_WIDTH);
+        ValueHistogram breathingRates = new ValueHistogram(BREATHING_RATE_MAX, BREATHING_RATE_BIN_WIDTH);
+        for (HealthRollup row : rows) {
+            int count = row.getSampleCount() != null ? row.getSampleCount() : 0;
+            if (count == 0) continue;
+            heartRates.clear();
+            heartRates.mergeEncoded(row.getHeartRateSketch());
+            breathingRates.clear();
+            breathingRates.mergeEncoded(row.getBreathingRateSketch());
+            points.add(HealthTrendPoint.builder()
+                    .bucketStart(row.getBucketStart())
+                    .sampleCount(count)
+                    .heartRateMin(row.getHeartRateMin())
+                    .heartRateMax(row.getHeartRateMax())
+                    .heartRateAvg((double) row.getHeartRateSum() / count)
+                    .heartRateP50(heartRates.quantile(0.5))
+                    .heartRateP95(heartRates.quantile(0.95))
+                    .breathingRateMin(row.getBreathingRateMin())
+                    .breathingRateMax(row.getBreathingRateMax())
+                    .breathingRateAvg((double) row.getBreathingRateSum() / count)
+                    .breathingRateP50(breathingRates.quantile(0.5))
+                    .breathingRateP95(breathingRates.quantile(0.95))
+                    .build());
+        }
+        return points;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flushScheduler.shutdown();
+        try {
+            flushScheduler.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushSafely();
+    }
+}
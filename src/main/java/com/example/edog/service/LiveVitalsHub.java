@@ -0,0 +1,254 @@
+package com.example.edog.service;
+
+import com.example.edog.dto.LiveVitalsFrame;
+import com.example.edog.dto.VitalsSample;
+import com.example.edog.entity.HealthData;
+import com.example.edog.utils.ConflatingEmitter;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 实时健康数据推送（SSE）
+ * App 订阅单台设备并指定推送间隔，样本写入时（HTTP 批量上传或设备 WebSocket）累加到每个订阅的当前帧，
+ * 每个间隔最多推送一帧（最新样本加上本帧样本的平均值）：间隔已到立即推送，否则在间隔结束时补发一次。
+ * 写入线程只做加法和投递，发送在推送线程池中进行；慢客户端的未发送帧按设备合并，内存占用固定。
+ * 定时线程只负责补发与心跳的投递，从不写连接；单次发送阻塞过久的订阅者被断开。
+ */
+@Slf4j
+@Service
+public class LiveVitalsHub {
+
+    public static final String EVENT_VITALS = "vitals";
+
+    @Autowired
+    private RecentVitalsStore recentVitalsStore;
+
+    @Value("${lamp.health.live.max-subscribers:1000}")
+    private int maxSubscribers = 1000;
+
+    // 允许的推送间隔范围与默认值
+    @Value("${lamp.health.live.min-interval-ms:1000}")
+    private long minIntervalMs = 1000;
+
+    @Value("${lamp.health.live.max-interval-ms:60000}")
+    private long maxIntervalMs = 60000;
+
+    @Value("${lamp.health.live.default-interval-ms:5000}")
+    private long defaultIntervalMs = 5000;
+
+    @Value("${lamp.sse.timeout-ms:1800000}")
+    private long timeoutMs = 1800000;
+
+    @Value("${lamp.sse.heartbeat-ms:25000}")
+    private long heartbeatMs = 25000;
+
+    @Value("${lamp.health.live.push-threads:2}")
+    private int pushThreads = 2;
+
+    // 单次发送阻塞超过该时长的订阅者被断开
+    @Value("${lamp.sse.max-send-block-ms:10000}")
+    private long maxSendBlockMs = 10000;
+
+    private ExecutorService pushExecutor;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    private final Map<String, Set<Subscription>> byDevice = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+
+    private final class Subscription {
+        final String deviceId;
+        final long intervalMs;
+        final ConflatingEmitter out;
+        final AtomicBoolean removed = new AtomicBoolean(false);
+
+        // 当前帧，只在持有 this 锁时读写
+        int count;
+        long heartRateSum;
+        long breathingRateSum;
+        long latestTime = Long.MIN_VALUE;
+        int latestHeartRate;
+        int latestBreathingRate;
+        long lastSentAt;
+        boolean flushScheduled;
+
+        Subscription(String deviceId, long intervalMs, ConflatingEmitter out) {
+            this.deviceId = deviceId;
+            this.intervalMs = intervalMs;
+            this.out = out;
+        }
+
+        synchronized void add(long time, int heartRate, int breathingRate) {
+            count++;
+            heartRateSum += heartRate;
+            breathingRateSum += breathingRate;
+            // 离线补传的旧样本只计入平均值，不覆盖最新值
+            if (time >= latestTime) {
+                latestTime = time;
+                latestHeartRate = heartRate;
+                latestBreathingRate = breathingRate;
+            }
+        }
+
+        /**
+         * 间隔已到则立即投递，否则确保间隔结束时补发一次
+         */
+        void maybeFlush() {
+            long delay;
+            synchronized (this) {
+                if (flushScheduled) return;
+                long now = System.currentTimeMillis();
+                delay = lastSentAt + intervalMs - now;
+                if (delay <= 0) {
+                    lastSentAt = now;
+                } else {
+                    flushScheduled = true;
+                }
+            }
+            if (delay <= 0) {
+                out.offer(deviceId, EVENT_VITALS, this::takeFrame);
+            } else {
+                scheduler.schedule(() -> {
+                    synchronized (this) {
+                        flushScheduled = false;
+                        lastSentAt = System.currentTimeMillis();
+                    }
+                    out.offer(deviceId, EVENT_VITALS, this::takeFrame);
+                }, delay, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        /**
+         * 发送时取出当前帧并清零；客户端较慢时一帧会合并更多样本
+         */
+        synchronized LiveVitalsFrame takeFrame() {
+            if (count == 0) return null;
+            LiveVitalsFrame frame = LiveVitalsFrame.builder()
+                    .deviceId(deviceId)
+                    .timestamp(latestTime)
+                    .heartRate(latestHeartRate)
+                    .breathingRate(latestBreathingRate)
+                    .samples(count)
+                    .avgHeartRate((double) heartRateSum / count)
+                    .avgBreathingRate((double) breathingRateSum / count)
+                    .build();
+            count = 0;
+            heartRateSum = 0;
+            breathingRateSum = 0;
+            return frame;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        pushExecutor = Executors.newFixedThreadPool(Math.max(1, pushThreads));
+        scheduler.scheduleAtFixedRate(this::heartbeat, heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 心跳只投递到各订阅的推送队列，与补发任务共用的定时线程不会被慢客户端卡住
+     */
+    private void heartbeat() {
+        for (Set<Subscription> subs : byDevice.values()) {
+            for (Subscription subscription : subs) {
+                if (subscription.out.dropIfStalled(maxSendBlockMs)) {
+                    log.info("实时健康数据订阅发送阻塞超过 {}ms，断开: device={}", maxSendBlockMs, subscription.deviceId);
+                    unsubscribe(subscription);
+                } else {
+                    subscription.out.heartbeat();
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        pushExecutor.shutdownNow();
+    }
+
+    /**
+     * 把推送间隔限制在允许范围内；未指定时使用默认值
+     */
+    public long normalizeInterval(Long intervalMs) {
+        if (intervalMs == null) return defaultIntervalMs;
+        return Math.max(minIntervalMs, Math.min(maxIntervalMs, intervalMs));
+    }
+
+    /**
+     * 订阅设备的实时健康数据，连接建立后先推送一次最近的样本
+     * @return 订阅数已达上限时返回 null
+     */
+    public SseEmitter subscribe(String deviceId, long intervalMs) {
+        if (subscriberCount.incrementAndGet() > maxSubscribers) {
+            subscriberCount.decrementAndGet();
+            return null;
+        }
+
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        Subscription subscription = new Subscription(deviceId, intervalMs, new ConflatingEmitter(emitter, pushExecutor));
+        emitter.onCompletion(() -> unsubscribe(subscription));
+        emitter.onTimeout(() -> unsubscribe(subscription));
+        emitter.onError(e -> unsubscribe(subscription));
+        byDevice.computeIfAbsent(deviceId, k -> ConcurrentHashMap.newKeySet()).add(subscription);
+
+        VitalsSample latest = recentVitalsStore.latest(deviceId);
+        if (latest != null) {
+            subscription.add(latest.getTimestamp(), latest.getHeartRate(), latest.getBreathingRate());
+            subscription.maybeFlush();
+        }
+        log.info("实时健康数据订阅建立: device={}, interval={}ms, 当前订阅数={}", deviceId, intervalMs, subscriberCount.get());
+        return emitter;
+    }
+
+    private void unsubscribe(Subscription subscription) {
+        if (!subscription.removed.compareAndSet(false, true)) return;
+        subscription.out.close();
+        byDevice.computeIfPresent(subscription.deviceId, (k, set) -> {
+            set.remove(subscription);
+            return set.isEmpty() ? null : set;
+        });
+        subscriberCount.decrementAndGet();
+    }
+
+    /**
+     * 样本写入后调用，不阻塞调用线程
+     * @param samples 同一设备的样本
+     */
+    public void publish(List<HealthData> samples) {
+        if (samples.isEmpty()) return;
+        Set<Subscription> subs = byDevice.get(samples.get(0).getDeviceId());
+        if (subs == null) return;
+        for (Subscription subscription : subs) {
+            if (subscription.out.isClosed()) {
+                unsubscribe(subscription);
+                continue;
+            }
+            for (HealthData data : samples) {
+                long time = data.getUploadTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+                subscription.add(time, data.getHeartRate(), data.getBreathingRate());
+            }
+            subscription.maybeFlush();
+        }
+    }
+
+    public int getSubscriberCount() {
+        return subscriberCount.get();
+    }
+}
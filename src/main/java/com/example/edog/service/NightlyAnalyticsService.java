@@ -0,0 +1,274 @@
+package com.example.edog.service;
+
+import com.example.edog.entity.HealthDailySummary;
+import com.example.edog.entity.HealthData;
+import com.example.edog.mapper.HealthDailySummaryMapper;
+import com.example.edog.mapper.HealthDataMapper;
+import com.example.edog.utils.NightVitalsAnalyzer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 夜间睡眠与生命体征分析
+ * 每天早晨对前一晚（night-start-hour 到 night-end-hour）有数据的设备逐台分析，结果写入 health_daily_summary。
+ * 设备列表在专用 ForkJoinPool 中二分拆成每份不超过 leaf-size 台的子任务并行处理，样本通过历史查询读取，
+ * 已归档的夜晚同样可以计算。整次任务有时间预算，超时后尚未开始的设备跳过并计数，已完成的结果照常写入。
+ * 任务与在线业务共用连接池，并行度限制在连接池大小的三分之一以内，同时读库的子任务数另由信号量限制
+ * （ForkJoinPool 在 join 阻塞时可能补充线程）。
+ */
+@Slf4j
+@Service
+public class NightlyAnalyticsService {
+
+    @Autowired
+    private HealthDataMapper healthDataMapper;
+
+    @Autowired
+    private HealthDailySummaryMapper summaryMapper;
+
+    @Autowired
+    private HealthHistoryService historyService;
+
+    @Autowired
+    private HealthArchiveService archiveService;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Value("${lamp.health.analytics.enabled:true}")
+    private boolean enabled = true;
+
+    // 每天执行的时间（本地时间）
+    @Value("${lamp.health.analytics.run-at:10:30}")
+    private String runAt = "10:30";
+
+    @Value("${lamp.health.analytics.night-start-hour:20}")
+    private int nightStartHour = 20;
+
+    @Value("${lamp.health.analytics.night-end-hour:10}")
+    private int nightEndHour = 10;
+
+    @Value("${lamp.health.analytics.parallelism:3}")
+    private int parallelism = 3;
+
+    @Value("${spring.datasource.hikari.maximum-pool-size:10}")
+    private int dbPoolSize = 10;
+
+    // 子任务不再拆分的设备数
+    @Value("${lamp.health.analytics.leaf-size:16}")
+    private int leafSize = 16;
+
+    @Value("${lamp.health.analytics.time-budget-ms:900000}")
+    private long timeBudgetMs = 900000;
+
+    @Value("${lamp.health.analytics.write-batch-size:500}")
+    private int writeBatchSize = 500;
+
+    private final NightVitalsAnalyzer.Config analyzerConfig = new NightVitalsAnalyzer.Config();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private ForkJoinPool pool;
+    private Semaphore dbPermits;
+
+    private volatile double lastThroughput;
+    private Timer runTimer;
+    private Counter analyzedCounter;
+    private Counter skippedCounter;
+    private Counter failedCounter;
+
+    /**
+     * 一次分析任务的结果
+     */
+    public record Run(LocalDate date, int devices, int analyzed, int skipped, int failed, long elapsedMs) {
+        public double devicesPerSecond() {
+            return elapsedMs > 0 ? analyzed * 1000.0 / elapsedMs : analyzed;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        // 分析任务大部分时间在等数据库，线程数可以超过 CPU 核数，但不能占用在线业务需要的连接
+        int cap = Math.max(1, dbPoolSize / 3);
+        if (parallelism > cap) {
+            log.warn("夜间分析并行度 {} 超过连接池大小 {} 的三分之一，限制为 {}", parallelism, dbPoolSize, cap);
+            parallelism = cap;
+        }
+        parallelism = Math.max(1, parallelism);
+        pool = new ForkJoinPool(parallelism);
+        dbPermits = new Semaphore(parallelism);
+        if (meterRegistry != null) {
+            runTimer = Timer.builder("lamp.health.analytics.run")
+                    .description("一次夜间分析任务的耗时")
+                    .register(meterRegistry);
+            Gauge.builder("lamp.health.analytics.throughput", this, s -> s.lastThroughput)
+                    .description("最近一次分析任务每秒处理的设备数")
+                    .register(meterRegistry);
+            analyzedCounter = Counter.builder("lamp.health.analytics.devices")
+                    .description("完成分析的设备数")
+                    .register(meterRegistry);
+            skippedCounter = Counter.builder("lamp.health.analytics.skipped")
+                    .description("超出时间预算而跳过的设备数")
+                    .register(meterRegistry);
+            failedCounter = Counter.builder("lamp.health.analytics.failed")
+                    .description("分析失败的设备数")
+                    .register(meterRegistry);
+        }
+        if (!enabled) return;
+
+        LocalTime at = LocalTime.parse(runAt);
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime next = now.toLocalDate().atTime(at);
+        if (!next.isAfter(now)) next = next.plusDays(1);
+        scheduler.scheduleAtFixedRate(this::runSafely, Duration.between(now, next).toMillis(),
+                TimeUnit.DAYS.toMillis(1), TimeUnit.MILLISECONDS);
+        log.info("夜间分析已启动: 首次执行={}, parallelism={}, 时间预算={}ms", next, parallelism, timeBudgetMs);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        pool.shutdownNow();
+    }
+
+    private void runSafely() {
+        try {
+            run(LocalDate.now());
+        } catch (Exception e) {
+            log.error("夜间分析失败: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 分析结束于 date 早晨的那一晚，可重复执行，结果覆盖
+     */
+    public synchronized Run run(LocalDate date) {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeBudgetMs);
+        LocalDateTime from = date.minusDays(1).atTime(nightStartHour, 0);
+        LocalDateTime to = date.atTime(nightEndHour, 0);
+
+        Set<String> deviceSet = new TreeSet<>(healthDataMapper.selectDevicesInRange(from, to));
+        deviceSet.addAll(archiveService.archivedDevices(from.toLocalDate()));
+        deviceSet.addAll(archiveService.archivedDevices(to.toLocalDate()));
+        List<String> devices = new ArrayList<>(deviceSet);
+
+        Progress progress = new Progress();
+        List<HealthDailySummary> summaries = pool.invoke(
+                new Partition(devices, 0, devices.size(), date, from, to, deadline, progress));
+        LocalDateTime computedAt = LocalDateTime.now();
+        for (int i = 0; i < summaries.size(); i += writeBatchSize) {
+            List<HealthDailySummary> batch = summaries.subList(i, Math.min(summaries.size(), i + writeBatchSize));
+            batch.forEach(s -> s.setComputedAt(computedAt));
+            summaryMapper.upsertBatch(batch);
+        }
+
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        Run run = new Run(date, devices.size(), progress.analyzed.get(), progress.skipped.get(), progress.failed.get(), elapsedMs);
+        lastThroughput = run.devicesPerSecond();
+        if (runTimer != null) runTimer.record(elapsedMs, TimeUnit.MILLISECONDS);
+        if (analyzedCounter != null) analyzedCounter.increment(run.analyzed());
+        if (skippedCounter != null) skippedCounter.increment(run.skipped());
+        if (failedCounter != null) failedCounter.increment(run.failed());
+        log.info("夜间分析完成: date={}, 设备={}, 完成={}, 跳过={}, 失败={}, 耗时={}ms, {} 台/秒",
+                date, run.devices(), run.analyzed(), run.skipped(), run.failed(), elapsedMs,
+                String.format("%.1f", run.devicesPerSecond()));
+        return run;
+    }
+
+    private static final class Progress {
+        final AtomicInteger analyzed = new AtomicInteger();
+        final AtomicInteger skipped = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+    }
+
+    /**
+     * 设备列表 [lo, hi) 的分析任务，超过 leaf-size 台时二分
+     */
+    private final class Partition extends RecursiveTask<List<HealthDailySummary>> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<String> devices;
+        private final int lo;
+        private final int hi;
+        private final LocalDate date;
+        private final LocalDateTime from;
+        private final LocalDateTime to;
+        private final long deadline;
+        private final Progress progress;
+
+        Partition(List<String> devices, int lo, int hi, LocalDate date, LocalDateTime from, LocalDateTime to,
+                  long deadline, Progress progress) {
+            this.devices = devices;
+            this.lo = lo;
+            this.hi = hi;
+            this.date = date;
+            this.from = from;
+            this.to = to;
+            this.deadline = deadline;
+            this.progress = progress;
+        }
+
+        @Override
+        protected List<HealthDailySummary> compute() {
+            if (hi - lo > Math.max(1, leafSize)) {
+                int mid = (lo + hi) >>> 1;
+                Partition left = new Partition(devices, lo, mid, date, from, to, deadline, progress);
+                left.fork();
+                List<HealthDailySummary> result = new Partition(devices, mid, hi, date, from, to, deadline, progress).compute();
+                result.addAll(left.join());
+                return result;
+            }
+
+            List<HealthDailySummary> result = new ArrayList<>(hi - lo);
+            for (int i = lo; i < hi; i++) {
+                if (System.nanoTime() > deadline) {
+                    progress.skipped.addAndGet(hi - i);
+                    break;
+                }
+                String deviceId = devices.get(i);
+                try {
+                    List<HealthData> samples;
+                    dbPermits.acquireUninterruptibly();
+                    try {
+                        samples = historyService.range(deviceId, from, to);
+                    } finally {
+                        dbPermits.release();
+                    }
+                    HealthDailySummary summary = NightVitalsAnalyzer.analyze(samples, analyzerConfig);
+                    progress.analyzed.incrementAndGet();
+                    if (summary == null) continue;
+                    summary.setDeviceId(deviceId);
+                    summary.setSummaryDate(date);
+                    result.add(summary);
+                } catch (Exception e) {
+                    progress.failed.incrementAndGet();
+                    log.warn("夜间分析失败: device={}, date={}: {}", deviceId, date, e.getMessage());
+                }
+            }
+            return result;
+        }
+    }
+}
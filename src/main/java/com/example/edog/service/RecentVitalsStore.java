@@ -0,0 +1,275 @@
+package com.example.edog.service;
+
+import com.example.edog.dto.VitalsSample;
+import com.example.edog.dto.VitalsStats;
+import com.example.edog.entity.HealthData;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * 最近健康数据的内存缓存
+ * 每台设备一个定长环形缓冲区，时间戳、心率、呼吸频率分别存放在 long[] / short[] 中，按时间升序；
+ * "当前心率"、最近 N 条和短窗口统计直接从内存返回，不查数据库。
+ * 每台设备最多保留 capacity-per-device 条，设备数超过 max-devices 时按 CLOCK（近似 LRU）淘汰：
+ * 设备按建立顺序排队，淘汰时取队首，上一轮之后有过新数据的放回队尾，否则移除；每次淘汰均摊 O(1)，不扫描全部设备。
+ */
+@Slf4j
+@Service
+public class RecentVitalsStore {
+
+    @Value("${lamp.health.recent.capacity-per-device:480}")
+    private int capacityPerDevice = 480;
+
+    @Value("${lamp.health.recent.max-devices:100000}")
+    private int maxDevices = 100000;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private final Map<String, Ring> rings = new ConcurrentHashMap<>();
+    // 淘汰队列（CLOCK），与 rings 中的设备一一对应
+    private final Queue<String> clock = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 单台设备的环形缓冲区，所有方法在自身锁内执行
+     */
+    private static final class Ring {
+        final long[] timestamps;
+        final short[] heartRates;
+        final short[] breathingRates;
+        // 最老一条的位置与当前条数
+        int head;
+        int size;
+        // 上次被淘汰检查之后是否有新数据（CLOCK 的引用位）；新建的设备视为有
+        volatile boolean referenced = true;
+
+        Ring(int capacity) {
+            timestamps = new long[capacity];
+            heartRates = new short[capacity];
+            breathingRates = new short[capacity];
+        }
+
+        int capacity() {
+            return timestamps.length;
+        }
+
+        /** 第 i 条（0 为最老）在数组中的位置 */
+        int slot(int i) {
+            int s = head + i;
+            return s >= timestamps.length ? s - timestamps.length : s;
+        }
+
+        long latestTimestamp() {
+            return size == 0 ? Long.MIN_VALUE : timestamps[slot(size - 1)];
+        }
+
+        /**
+         * 按时间顺序插入；时间戳已存在（重复提交）时忽略
+         */
+        synchronized void add(long timestamp, int heartRate, int breathingRate) {
+            if (!referenced) referenced = true;
+            if (size == 0 || timestamp > latestTimestamp()) {
+                int s;
+                if (size < capacity()) {
+                    s = slot(size++);
+                } else {
+                    s = head;
+                    head = slot(1);
+                }
+                set(s, timestamp, heartRate, breathingRate);
+                return;
+            }
+
+            // 补传的较早样本：找到插入位置后把更新的样本后移
+            int pos = search(timestamp);
+            if (pos >= 0) return;
+            int insertAt = -pos - 1;
+            if (size == capacity()) {
+                // 已满且比最老的还早，不保留
+                if (insertAt == 0) return;
+                head = slot(1);
+                size--;
+                insertAt--;
+            }
+            for (int i = size; i > insertAt; i--) {
+                int to = slot(i), from = slot(i - 1);
+                set(to, timestamps[from], heartRates[from], breathingRates[from]);
+            }
+            set(slot(insertAt), timestamp, heartRate, breathingRate);
+            size++;
+        }
+
+        private void set(int s, long timestamp, int heartRate, int breathingRate) {
+            timestamps[s] = timestamp;
+            heartRates[s] = (short) heartRate;
+            breathingRates[s] = (short) breathingRate;
+        }
+
+        /** 二分查找，语义同 {@link java.util.Arrays#binarySearch(long[], long)}，下标为逻辑位置 */
+        private int search(long timestamp) {
+            int low = 0, high = size - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                long t = timestamps[slot(mid)];
+                if (t < timestamp) low = mid + 1;
+                else if (t > timestamp) high = mid - 1;
+                else return mid;
+            }
+            return -(low + 1);
+        }
+
+        synchronized VitalsSample latest() {
+            return size == 0 ? null : sample(slot(size - 1));
+        }
+
+        synchronized List<VitalsSample> last(int n) {
+            int count = Math.min(n, size);
+            List<VitalsSample> list = new ArrayList<>(count);
+            for (int i = size - count; i < size; i++) list.add(sample(slot(i)));
+            return list;
+        }
+
+        synchronized VitalsStats stats(long from, long to) {
+            int count = 0;
+            int hrMin = Integer.MAX_VALUE, hrMax = Integer.MIN_VALUE;
+            int brMin = Integer.MAX_VALUE, brMax = Integer.MIN_VALUE;
+            long hrSum = 0, brSum = 0, hrSq = 0, brSq = 0;
+            for (int i = size - 1; i >= 0; i--) {
+                int s = slot(i);
+                long t = timestamps[s];
+                if (t < from) break;
+                if (t > to) continue;
+                int hr = heartRates[s], br = breathingRates[s];
+                count++;
+                hrMin = Math.min(hrMin, hr);
+                hrMax = Math.max(hrMax, hr);
+                hrSum += hr;
+                hrSq += (long) hr * hr;
+                brMin = Math.min(brMin, br);
+                brMax = Math.max(brMax, br);
+                brSum += br;
+                brSq += (long) br * br;
+            }
+
+            VitalsStats.VitalsStatsBuilder builder = VitalsStats.builder().from(from).to(to).count(count);
+            if (count == 0) return builder.build();
+            double hrMean = (double) hrSum / count, brMean = (double) brSum / count;
+            return builder
+                    .heartRateMin(hrMin).heartRateMax(hrMax).heartRateMean(hrMean)
+                    .heartRateStddev(Math.sqrt(Math.max(0, (double) hrSq / count - hrMean * hrMean)))
+                    .breathingRateMin(brMin).breathingRateMax(brMax).breathingRateMean(brMean)
+                    .breathingRateStddev(Math.sqrt(Math.max(0, (double) brSq / count - brMean * brMean)))
+                    .build();
+        }
+
+        private VitalsSample sample(int s) {
+            return new VitalsSample(timestamps[s], (int) heartRates[s], (int) breathingRates[s]);
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        if (meterRegistry != null) {
+            Gauge.builder("lamp.health.recent.devices", rings, Map::size)
+                    .description("内存中缓存最近健康数据的设备数")
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * 记录一批样本；没有设备ID的旧数据跳过
+     */
+    public void record(List<HealthData> samples) {
+        ZoneId zone = ZoneId.systemDefault();
+        for (HealthData data : samples) {
+            if (data.getDeviceId() == null || data.getUploadTime() == null
+                    || data.getHeartRate() == null || data.getBreathingRate() == null) continue;
+            long timestamp = data.getUploadTime().atZone(zone).toInstant().toEpochMilli();
+            ring(data.getDeviceId()).add(timestamp, data.getHeartRate(), data.getBreathingRate());
+        }
+    }
+
+    private Ring ring(String deviceId) {
+        Ring ring = rings.get(deviceId);
+        if (ring != null) return ring;
+        boolean[] created = new boolean[1];
+        ring = rings.computeIfAbsent(deviceId, k -> {
+            created[0] = true;
+            return new Ring(Math.max(1, capacityPerDevice));
+        });
+        if (created[0]) {
+            clock.offer(deviceId);
+            while (rings.size() > maxDevices) {
+                if (!evictOne()) break;
+            }
+        }
+        return ring;
+    }
+
+    /**
+     * 淘汰一台设备：队首设备在上一轮之后有过新数据则清除引用位放回队尾，否则移除
+     * @return 是否移除了设备
+     */
+    private boolean evictOne() {
+        // 最坏情况下每台设备放回一次后一定能找到引用位已清除的设备
+        for (int i = 0, limit = rings.size() + 1; i <= limit; i++) {
+            String candidate = clock.poll();
+            if (candidate == null) return false;
+            Ring ring = rings.get(candidate);
+            if (ring == null) continue;
+            if (ring.referenced) {
+                ring.referenced = false;
+                clock.offer(candidate);
+                continue;
+            }
+            rings.remove(candidate, ring);
+            log.debug("最近健康数据缓存已满，淘汰设备: {}", candidate);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return 设备没有缓存数据时返回 null
+     */
+    public VitalsSample latest(String deviceId) {
+        Ring ring = rings.get(deviceId);
+        return ring != null ? ring.latest() : null;
+    }
+
+    /**
+     * 最近 n 条，按时间升序
+     */
+    public List<VitalsSample> last(String deviceId, int n) {
+        Ring ring = rings.get(deviceId);
+        return ring != null && n > 0 ? ring.last(n) : Collections.emptyList();
+    }
+
+    /**
+     * 最近 windowMs 毫秒内的统计
+     */
+    public VitalsStats stats(String deviceId, long windowMs) {
+        long to = System.currentTimeMillis();
+        long from = to - windowMs;
+        Ring ring = rings.get(deviceId);
+        return ring != null ? ring.stats(from, to) : VitalsStats.builder().from(from).to(to).count(0).build();
+    }
+
+    public int getCapacityPerDevice() {
+        return capacityPerDevice;
+    }
+}
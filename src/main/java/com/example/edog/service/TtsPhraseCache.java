@@ -0,0 +1,91 @@
+package com.example.edog.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 常用短语的 TTS 缓存
+ * 缓存已合成好的 Opus 帧序列，唤醒响应、控制确认、降级回复等固定短语无需每次调用阿里云合成
+ */
+@Slf4j
+@Service
+public class TtsPhraseCache {
+
+    @Autowired
+    private AliyunTTSService ttsService;
+
+    @Value("${lamp.tts.phrase-cache.max-entries:256}")
+    private int maxEntries = 256;
+
+    @Value("${lamp.tts.phrase-cache.max-text-length:24}")
+    private int maxTextLength = 24;
+
+    private final Map<String, List<byte[]>> cache = Collections.synchronizedMap(
+            new LinkedHashMap<>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, List<byte[]>> eldest) {
+                    return size() > maxEntries;
+                }
+            });
+
+    /**
+     * 获取缓存的 Opus 帧
+     * @return 帧列表；未缓存时返回 null
+     */
+    public List<byte[]> get(String text) {
+        if (text == null) return null;
+        return cache.get(text);
+    }
+
+    /**
+     * 文本是否适合缓存（只缓存短句，长回复通常不会重复）
+     */
+    public boolean isCacheable(String text) {
+        return text != null && !text.isEmpty() && text.length() <= maxTextLength;
+    }
+
+    /**
+     * 写入缓存（由实时合成路径在合成成功后回填），frames 必须是完整合成的结果
+     */
+    public void put(String text, List<byte[]> frames) {
+        if (!isCacheable(text) || frames == null || frames.isEmpty()) return;
+        cache.put(text, Collections.unmodifiableList(new ArrayList<>(frames)));
+    }
+
+    /**
+     * 异步预合成一批短语
+     */
+    public void preload(Collection<String> phrases) {
+        CompletableFuture.runAsync(() -> {
+            for (String phrase : phrases) {
+                if (!isCacheable(phrase) || cache.containsKey(phrase)) continue;
+                try {
+                    List<byte[]> frames = new ArrayList<>();
+                    // 合成失败时已收到的帧是截断的，不能缓存
+                    if (!ttsService.synthesizeStream(phrase, frames::add, null)) {
+                        log.warn("短语预合成失败: {}", phrase);
+                        continue;
+                    }
+                    put(phrase, frames);
+                    log.info("短语预合成完成: {} ({} 帧)", phrase, frames.size());
+                } catch (Exception e) {
+                    log.warn("短语预合成失败: {}, error={}", phrase, e.getMessage());
+                }
+            }
+        });
+    }
+
+    public int size() {
+        return cache.size();
+    }
+}
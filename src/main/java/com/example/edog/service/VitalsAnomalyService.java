@@ -0,0 +1,168 @@
+package com.example.edog.service;
+
+import com.example.edog.entity.HealthData;
+import com.example.edog.event.VitalsAlertEvent;
+import com.example.edog.utils.VitalsAnomalyDetector;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 健康数据异常检测服务
+ * 样本入队时按设备逐条送入 {@link VitalsAnomalyDetector}，发现异常时发布 {@link VitalsAlertEvent}：
+ * 设备在线时台灯语音播报，订阅了该设备的 App 通过 SSE 收到告警。
+ * 采样时间早于 max-alert-age-ms 的补传数据只更新基线、不告警。
+ */
+@Slf4j
+@Service
+public class VitalsAnomalyService {
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Value("${lamp.health.anomaly.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${lamp.health.anomaly.max-alert-age-ms:120000}")
+    private long maxAlertAgeMs = 120000;
+
+    @Value("${lamp.health.anomaly.alpha:0.05}")
+    private double alpha = 0.05;
+
+    @Value("${lamp.health.anomaly.z-threshold:4.0}")
+    private double zThreshold = 4.0;
+
+    @Value("${lamp.health.anomaly.warmup-samples:20}")
+    private int warmupSamples = 20;
+
+    @Value("${lamp.health.anomaly.heart-rate-high:120}")
+    private int heartRateHigh = 120;
+
+    @Value("${lamp.health.anomaly.heart-rate-low:40}")
+    private int heartRateLow = 40;
+
+    @Value("${lamp.health.anomaly.breathing-rate-high:30}")
+    private int breathingRateHigh = 30;
+
+    @Value("${lamp.health.anomaly.breathing-rate-low:6}")
+    private int breathingRateLow = 6;
+
+    @Value("${lamp.health.anomaly.sustained-samples:3}")
+    private int sustainedSamples = 3;
+
+    @Value("${lamp.health.anomaly.cooldown-ms:600000}")
+    private long cooldownMs = 600000;
+
+    private final VitalsAnomalyDetector.Config config = new VitalsAnomalyDetector.Config();
+    private final Map<String, VitalsAnomalyDetector> detectors = new ConcurrentHashMap<>();
+
+    private Timer detectTimer;
+    private Timer alertDelayTimer;
+    private Counter sampleCounter;
+
+    @PostConstruct
+    public void init() {
+        config.alpha = alpha;
+        config.zThreshold = zThreshold;
+        config.warmupSamples = warmupSamples;
+        config.heartRateHigh = heartRateHigh;
+        config.heartRateLow = heartRateLow;
+        config.breathingRateHigh = breathingRateHigh;
+        config.breathingRateLow = breathingRateLow;
+        config.sustainedSamples = sustainedSamples;
+        config.cooldownMs = cooldownMs;
+
+        if (meterRegistry != null) {
+            detectTimer = Timer.builder("lamp.health.anomaly.detect")
+                    .description("一批样本异常检测的耗时，除以 lamp.health.anomaly.samples 得到每条样本的开销")
+                    .register(meterRegistry);
+            sampleCounter = Counter.builder("lamp.health.anomaly.samples").register(meterRegistry);
+            alertDelayTimer = Timer.builder("lamp.health.anomaly.alert.delay")
+                    .description("从采样到发出告警的延迟")
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * 检测一批样本（同一设备的样本应按时间顺序）
+     */
+    public void inspect(List<HealthData> samples) {
+        if (!enabled || samples.isEmpty()) return;
+        long start = System.nanoTime();
+        long now = System.currentTimeMillis();
+        ZoneId zone = ZoneId.systemDefault();
+        int inspected = 0;
+
+        for (HealthData data : samples) {
+            if (data.getDeviceId() == null || data.getUploadTime() == null
+                    || data.getHeartRate() == null || data.getBreathingRate() == null) continue;
+            long timestamp = data.getUploadTime().atZone(zone).toInstant().toEpochMilli();
+            VitalsAnomalyDetector detector = detectors.computeIfAbsent(data.getDeviceId(), k -> new VitalsAnomalyDetector(config));
+
+            int fired;
+            double heartBaseline, breathingBaseline;
+            synchronized (detector) {
+                heartBaseline = detector.getBaseline(VitalsAnomalyDetector.Metric.HEART_RATE);
+                breathingBaseline = detector.getBaseline(VitalsAnomalyDetector.Metric.BREATHING_RATE);
+                fired = detector.update(timestamp, data.getHeartRate(), data.getBreathingRate());
+            }
+            inspected++;
+            if (fired == 0 || now - timestamp > maxAlertAgeMs) continue;
+
+            for (int bits = fired; bits != 0; bits &= bits - 1) {
+                int index = Integer.numberOfTrailingZeros(bits);
+                VitalsAnomalyDetector.Metric metric = VitalsAnomalyDetector.metricOf(index);
+                VitalsAnomalyDetector.Rule rule = VitalsAnomalyDetector.ruleOf(index);
+                boolean heart = metric == VitalsAnomalyDetector.Metric.HEART_RATE;
+                int value = heart ? data.getHeartRate() : data.getBreathingRate();
+                double baseline = heart ? heartBaseline : breathingBaseline;
+                publish(new VitalsAlertEvent(data.getDeviceId(), metric.name(), rule.name(), value, baseline,
+                        timestamp, message(metric, rule, value)), now);
+            }
+        }
+
+        if (detectTimer != null) {
+            detectTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            sampleCounter.increment(inspected);
+        }
+    }
+
+    private void publish(VitalsAlertEvent event, long now) {
+        log.warn("健康数据异常: device={}, metric={}, rule={}, value={}, baseline={}",
+                event.deviceId(), event.metric(), event.rule(), event.value(), String.format("%.1f", event.baseline()));
+        if (meterRegistry != null) {
+            meterRegistry.counter("lamp.health.anomaly.alerts", "metric", event.metric(), "rule", event.rule()).increment();
+            alertDelayTimer.record(Math.max(0, now - event.timestamp()), TimeUnit.MILLISECONDS);
+        }
+        try {
+            eventPublisher.publishEvent(event);
+        } catch (Exception e) {
+            log.error("健康告警分发失败: {}", e.getMessage());
+        }
+    }
+
+    private static String message(VitalsAnomalyDetector.Metric metric, VitalsAnomalyDetector.Rule rule, int value) {
+        boolean heart = metric == VitalsAnomalyDetector.Metric.HEART_RATE;
+        String name = heart ? "心率" : "呼吸频率";
+        return switch (rule) {
+            case SUSTAINED_HIGH -> "注意，" + name + "持续偏高，当前每分钟" + value + "次";
+            case SUSTAINED_LOW -> "注意，" + name + "持续偏低，当前每分钟" + value + "次";
+            case Z_SCORE -> "注意，" + name + "突然变化，当前每分钟" + value + "次";
+        };
+    }
+}
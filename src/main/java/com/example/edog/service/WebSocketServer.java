@@ -1,26 +1,48 @@
 package com.example.edog.service;
 
+import com.example.edog.configurer.DeviceHandshakeInterceptor;
 import com.example.edog.enums.ControlCommandEnum;
+import com.example.edog.event.AlarmFiredEvent;
+import com.example.edog.event.VitalsAlertEvent;
+import com.example.edog.utils.AlarmTimeParser;
 import com.example.edog.utils.AliyunCredentials;
+import com.example.edog.utils.CommandCoalescer;
 import com.example.edog.utils.CozeAPI;
+import com.example.edog.utils.DeviceBinaryProtocol;
 import com.example.edog.utils.DeviceProtocolParser;
+import com.example.edog.utils.DeviceTelemetry;
+import com.example.edog.utils.HealthSampleCodec;
+import com.example.edog.utils.IntentEngine;
+import com.example.edog.utils.PinyinTable;
+import com.example.edog.utils.WakeWordMatcher;
 import com.example.edog.utils.WakeWordUtils;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 import org.springframework.web.socket.*;
 import org.springframework.web.socket.handler.AbstractWebSocketHandler;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
 
 import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Service
 public class WebSocketServer extends AbstractWebSocketHandler {
@@ -36,6 +58,70 @@ public class WebSocketServer extends AbstractWebSocketHandler {
     @Autowired
     private AliyunTTSService ttsService;
 
+    @Autowired
+    private TtsPhraseCache phraseCache;
+
+    @Autowired
+    private CozeAPI cozeAPI;
+
+    @Autowired
+    private UserAlarmsService userAlarmsService;
+
+    @Autowired
+    private DeviceRegistry deviceRegistry;
+
+    @Autowired
+    private HealthDataService healthDataService;
+
+    // 单条健康数据消息的样本数上限，与批量上传接口一致
+    @Value("${lamp.health.bulk.max-samples:5000}")
+    private int maxVitalsSamples = 5000;
+
+    // 设备握手未携带 userId 时，语音闹钟归属的默认用户（为空则提示先绑定）
+    @Value("${lamp.voice-alarm.default-user-id:}")
+    private String defaultAlarmUserId;
+
+    // 一次语音问答（从收到识别结果到智能体回复）的总时间预算
+    @Value("${lamp.voice.deadline-ms:10000}")
+    private long voiceDeadlineMs = 10000;
+
+    // 二进制协议设备每条音频消息打包的 Opus 帧数
+    @Value("${lamp.protocol.audio-frames-per-message:3}")
+    private int audioFramesPerMessage = 3;
+
+    // 每个连接的发送队列：单次发送超时与积压上限，超过后关闭该连接
+    @Value("${lamp.routing.send-time-limit-ms:10000}")
+    private int sendTimeLimitMs = 10000;
+
+    @Value("${lamp.routing.send-buffer-size-limit:524288}")
+    private int sendBufferSizeLimit = 524288;
+
+    // 广播时并行投递的线程数及等待上限
+    @Value("${lamp.routing.broadcast-parallelism:4}")
+    private int broadcastParallelism = 4;
+
+    @Value("${lamp.routing.broadcast-timeout-ms:5000}")
+    private long broadcastTimeoutMs = 5000;
+
+    // 同一目标的控制指令合并窗口，0 表示不合并
+    @Value("${lamp.routing.coalesce-window-ms:40}")
+    private long coalesceWindowMs = 40;
+
+    // 携带 deviceId 的设备断线后保留会话（状态与 ASR）的时间，窗口内重连直接恢复；0 表示不保留
+    @Value("${lamp.session.resume-window-ms:15000}")
+    private long resumeWindowMs = 15000;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private ExecutorService broadcastExecutor;
+    private ScheduledExecutorService coalesceExecutor;
+    private CommandCoalescer<DeliveryReport> commandCoalescer;
+
+    private static final String TARGET_DEVICE = "device:";
+    private static final String TARGET_USER = "user:";
+    private static final String TARGET_ALL = "all";
+
     private final Map<String, AliyunRealtimeASR> asrServices = new ConcurrentHashMap<>();
     
     // 使用全局调度池处理定时任务（心跳、ASR检查）
@@ -49,12 +135,32 @@ public class WebSocketServer extends AbstractWebSocketHandler {
     // 设备标识映射，用于检测同一设备重连（通过远程地址或设备ID）
     private final Map<String, String> deviceToSessionMap = new ConcurrentHashMap<>();
 
+    // 断线后等待恢复的会话，按设备ID索引
+    private final Map<String, ParkedSession> parkedSessions = new ConcurrentHashMap<>();
+    private final AtomicLong resumedCount = new AtomicLong();
+
+    private record ParkedSession(SessionState state, AliyunRealtimeASR asr, List<ScheduledFuture<?>> tasks) {
+    }
+
+    private static final int ANNOUNCE_MAX_RETRIES = 15;
+
     private static final long TTS_SILENCE_PERIOD_MS = 1500; // TTS结束后1.5秒内忽略ASR结果
 
     // 唤醒词机制相关
     private static final long AWAKE_TIMEOUT_MS = 30000; // 唤醒后30秒无响应则自动休眠
     private static final String WAKE_RESPONSE = "我在呢"; // 唤醒词响应
 
+    // 语音闹钟固定回复
+    private static final String ALARM_EXISTS_REPLY = "这个闹钟已经设置过了";
+    private static final String ALARM_FAILED_REPLY = "闹钟设置失败了，请稍后再试";
+    private static final String ALARM_UNBOUND_REPLY = "请先在App里绑定台灯，再设置闹钟";
+
+    private static final String VITALS_TYPE = "\"vitals\"";
+    private static final ObjectMapper VITALS_MAPPER = new ObjectMapper();
+
+    private static final String TTS_START_MESSAGE = "{\"type\":\"tts\",\"state\":\"start\"}";
+    private static final String TTS_END_MESSAGE = "{\"type\":\"tts\",\"state\":\"end\"}";
+
     private static final class SessionState {
         private final AtomicBoolean busy = new AtomicBoolean(false);
         private final AtomicBoolean resettingAsr = new AtomicBoolean(false);
@@ -73,6 +179,25 @@ public class WebSocketServer extends AbstractWebSocketHandler {
         private volatile String voiceId;
         private volatile Double speedRatio;
         private volatile int volume;
+
+        // 唤醒词匹配器（默认唤醒词 + 设备自定义名称）
+        private volatile WakeWordMatcher wakeWordMatcher = WakeWordUtils.defaultMatcher();
+
+        // 文本上报的解析结果，同一连接的消息按顺序处理，可复用
+        private final DeviceTelemetry telemetry = new DeviceTelemetry();
+
+        // 设备注册表中的设备ID
+        private volatile String deviceId;
+
+        // 当前绑定的连接；会话恢复后指向新连接，断线等待恢复期间为 null
+        private volatile WebSocketSession session;
+        private volatile String sessionId;
+
+        // 握手时协商的二进制协议及其消息序号
+        private volatile boolean binaryProtocol;
+        private final AtomicInteger downlinkSeq = new AtomicInteger();
+        private volatile long lastUplinkSeq = -1;
+        private volatile long uplinkSeqGaps;
         
         public SessionState(String defaultVoiceId, Double defaultSpeed, int defaultVolume) {
             this.voiceId = defaultVoiceId;
@@ -83,8 +208,6 @@ public class WebSocketServer extends AbstractWebSocketHandler {
 
     private final Map<String, SessionState> sessionStates = new ConcurrentHashMap<>();
 
-    private final CozeAPI cozeAPI = new CozeAPI();
-
     // 默认语音配置（用于新连接的会话）
     private volatile String defaultVoiceId = "7568423452617523254";
     private volatile Double defaultSpeedRatio = 1.0;
@@ -93,8 +216,52 @@ public class WebSocketServer extends AbstractWebSocketHandler {
     // Opus 静音帧
     private static final byte[] OPUS_SILENCE_FRAME = new byte[]{(byte) 0xF8, (byte) 0xFF, (byte) 0xFE};
 
-    private final AtomicReference<String> latestLt = new AtomicReference<>("(0,0)");
-    private final AtomicInteger latestVolume = new AtomicInteger(0);
+    /**
+     * 创建广播线程池与控制指令合并器，并注册下发相关指标
+     */
+    @PostConstruct
+    public void initRouting() {
+        broadcastExecutor = Executors.newFixedThreadPool(Math.max(1, broadcastParallelism));
+        // 合并窗口到期后在独立线程下发，避免占用心跳调度线程
+        coalesceExecutor = Executors.newScheduledThreadPool(2);
+        commandCoalescer = new CommandCoalescer<>(coalesceWindowMs, coalesceExecutor, this::sendCoalesced);
+
+        if (meterRegistry != null) {
+            FunctionCounter.builder("lamp.commands.submitted", commandCoalescer, CommandCoalescer::getSubmittedCount)
+                    .register(meterRegistry);
+            FunctionCounter.builder("lamp.commands.coalesced", commandCoalescer, CommandCoalescer::getCoalescedCount)
+                    .description("合并窗口内被合并掉、未单独下发的控制指令数")
+                    .register(meterRegistry);
+            FunctionCounter.builder("lamp.sessions.resumed", resumedCount, AtomicLong::get)
+                    .description("断线后在恢复窗口内重连、直接恢复的会话数")
+                    .register(meterRegistry);
+        }
+    }
+
+    @PreDestroy
+    public void shutdownRouting() {
+        coalesceExecutor.shutdownNow();
+        broadcastExecutor.shutdownNow();
+    }
+
+    /**
+     * 启动预热：构建拼音查找表，预合成固定短语（唤醒响应、控制确认语、智能体降级回复）
+     */
+    @PostConstruct
+    public void warmUp() {
+        PinyinTable.preload();
+
+        LinkedHashSet<String> phrases = new LinkedHashSet<>();
+        phrases.add(WAKE_RESPONSE);
+        phrases.add(CozeAPI.FALLBACK_REPLY);
+        phrases.add(ALARM_EXISTS_REPLY);
+        phrases.add(ALARM_FAILED_REPLY);
+        phrases.add(ALARM_UNBOUND_REPLY);
+        for (ControlCommandEnum command : ControlCommandEnum.values()) {
+            if (command.getConfirmText() != null) phrases.add(command.getConfirmText());
+        }
+        phraseCache.preload(phrases);
+    }
 
     /**
      * 设置语音参数
@@ -134,6 +301,17 @@ public class WebSocketServer extends AbstractWebSocketHandler {
         state.awakeTime = 0;
         state.lastAsrResultTime = now;
         state.audioFrameCount = 0;
+        Object wakeWord = session.getAttributes().get(DeviceHandshakeInterceptor.ATTR_WAKE_WORD);
+        if (wakeWord != null) {
+            state.wakeWordMatcher = WakeWordUtils.newMatcher(wakeWord.toString().split("[,，]"));
+        }
+        state.binaryProtocol = DeviceHandshakeInterceptor.isBinaryProtocol(session.getAttributes());
+        state.deviceId = getDeviceKey(session);
+        state.session = session;
+        state.sessionId = sessionId;
+        if (state.binaryProtocol) {
+            log.info("设备使用二进制协议: {}", sessionId);
+        }
         sessionStates.put(sessionId, state);
     }
 
@@ -211,19 +389,32 @@ public class WebSocketServer extends AbstractWebSocketHandler {
     }
 
     @Override
-    public void afterConnectionEstablished(@NotNull WebSocketSession session) throws Exception {
-        String id = session.getId();
+    public void afterConnectionEstablished(@NotNull WebSocketSession rawSession) throws Exception {
+        String id = rawSession.getId();
+        // 所有发送都经过该装饰器：并发发送时排队，由当前持有发送权的线程依次写出
+        WebSocketSession session = new ConcurrentWebSocketSessionDecorator(rawSession, sendTimeLimitMs, sendBufferSizeLimit);
         log.info("ESP32 Connected: {}", id);
 
         String deviceKey = getDeviceKey(session);
+        if (session.getAttributes().get(DeviceHandshakeInterceptor.ATTR_DEVICE_ID) == null) {
+            // 远程地址含临时端口，每次重连都不同，无法识别为同一设备
+            log.info("设备未携带 deviceId，断线后无法恢复会话: {}", deviceKey);
+        }
         String oldSessionId = deviceToSessionMap.get(deviceKey);
         if (oldSessionId != null && !oldSessionId.equals(id)) {
-            log.warn("检测到设备重连，清理旧会话: oldSession={}, newSession={}, device={}", oldSessionId, id, deviceKey);
-            cleanupSession(oldSessionId, "设备重连");
+            // 旧连接的关闭事件可能晚于新连接到达：能保留则交给下面恢复，否则完整清理
+            WebSocketSession oldSession = activeSessions.get(oldSessionId);
+            if (oldSession == null || !parkSession(oldSession, oldSessionId)) {
+                log.warn("检测到设备重连，清理旧会话: oldSession={}, newSession={}, device={}", oldSessionId, id, deviceKey);
+                cleanupSession(oldSessionId, "设备重连");
+            }
         }
 
+        if (resumeSession(session, id, deviceKey)) return;
+
         deviceToSessionMap.put(deviceKey, id);
         registerSession(session, id);
+        markConnected(session, id, deviceKey);
 
         try {
             AliyunRealtimeASR asr = startAsrForSession(session, id);
@@ -238,8 +429,9 @@ public class WebSocketServer extends AbstractWebSocketHandler {
     }
 
     @Override
-    protected void handleBinaryMessage(@NotNull WebSocketSession session, @NotNull BinaryMessage message) {
-        String id = session.getId();
+    protected void handleBinaryMessage(@NotNull WebSocketSession rawSession, @NotNull BinaryMessage message) {
+        String id = rawSession.getId();
+        WebSocketSession session = activeSessions.getOrDefault(id, rawSession);
         SessionState state = sessionStates.get(id);
         if (state == null) return;
 
@@ -257,19 +449,10 @@ public class WebSocketServer extends AbstractWebSocketHandler {
 
             if (opusData.length == 0) return;
 
-            state.lastAsrSendTime = System.currentTimeMillis();
-            state.audioFrameCount++;
-
-            AliyunRealtimeASR asr = asrServices.get(id);
-            if (asr == null || !asr.isRunning()) {
-                ensureAsrReady(session, id);
-                return;
-            }
-
-            if (isSessionBusy(id)) {
-                asr.sendOpusStream(OPUS_SILENCE_FRAME);
+            if (state.binaryProtocol) {
+                handleBinaryFrame(session, id, state, opusData);
             } else {
-                asr.sendOpusStream(opusData);
+                feedAudio(session, id, state, opusData);
             }
         } catch (Exception e) {
             log.debug("处理音频数据时出现异常（连接保持）: {}", e.getMessage());
@@ -277,39 +460,221 @@ public class WebSocketServer extends AbstractWebSocketHandler {
         }
     }
 
+    /**
+     * 二进制协议消息：opcode + seq + 负载
+     */
+    private void handleBinaryFrame(WebSocketSession session, String id, SessionState state, byte[] data) throws Exception {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        int opcode = DeviceBinaryProtocol.readOpcode(buffer);
+        long seq = DeviceBinaryProtocol.readVarint(buffer);
+        if (opcode < 0 || seq < 0) return;
+
+        long last = state.lastUplinkSeq;
+        if (last >= 0 && seq != ((last + 1) & 0xFFFFFFFFL)) {
+            state.uplinkSeqGaps++;
+            log.debug("上行消息序号不连续: session={}, last={}, seq={}, gaps={}", id, last, seq, state.uplinkSeqGaps);
+        }
+        state.lastUplinkSeq = seq;
+
+        switch (opcode) {
+            case DeviceBinaryProtocol.OP_AUDIO -> {
+                byte[] frame;
+                while ((frame = DeviceBinaryProtocol.nextAudioFrame(buffer)) != null) {
+                    if (!feedAudio(session, id, state, frame)) break;
+                }
+            }
+            case DeviceBinaryProtocol.OP_TELEMETRY -> {
+                if (DeviceBinaryProtocol.decodeTelemetry(buffer, state.telemetry)) {
+                    applyTelemetry(state.deviceId, state.telemetry);
+                }
+            }
+            case DeviceBinaryProtocol.OP_VITALS -> handleVitalsBinary(session, state, buffer);
+            default -> log.debug("未知的二进制消息: session={}, opcode={}", id, opcode);
+        }
+    }
+
+    /**
+     * 把一帧上行 Opus 送入 ASR
+     * @return ASR 未就绪时返回 false（同一消息中的后续帧不再送入）
+     */
+    private boolean feedAudio(WebSocketSession session, String id, SessionState state, byte[] opusData) throws Exception {
+        state.lastAsrSendTime = System.currentTimeMillis();
+        state.audioFrameCount++;
+
+        AliyunRealtimeASR asr = asrServices.get(id);
+        if (asr == null || !asr.isRunning()) {
+            ensureAsrReady(session, id);
+            return false;
+        }
+
+        if (isSessionBusy(id)) {
+            asr.sendOpusStream(OPUS_SILENCE_FRAME);
+        } else {
+            asr.sendOpusStream(opusData);
+        }
+        return true;
+    }
+
     @Override
     protected void handleTextMessage(@NotNull WebSocketSession session, @NotNull TextMessage message) {
+        SessionState state = sessionStates.get(session.getId());
         String payload = message.getPayload();
-        if (payload == null) return;
-        String text = payload.trim();
+        if (payload.contains(VITALS_TYPE) && handleVitalsText(activeSessions.getOrDefault(session.getId(), session), payload)) return;
+
+        DeviceTelemetry telemetry = state != null ? state.telemetry : new DeviceTelemetry();
 
         // 使用 DeviceProtocolParser 解析协议
-        Integer volume = DeviceProtocolParser.parseVolume(text);
-        if (volume != null) {
-            latestVolume.set(volume);
-            return;
+        if (!DeviceProtocolParser.parse(payload, telemetry)) return;
+        applyTelemetry(state != null ? state.deviceId : getDeviceKey(session), telemetry);
+    }
+
+    // ---------------------------------------------------------------- 健康数据上报
+
+    /**
+     * 文本健康数据上报：{"type":"vitals","seq":1,"ts":毫秒时间戳,"heartRate":72,"breathingRate":16}
+     * 或 {"type":"vitals","samples":[{...}, ...]}；ts 省略时取服务器时间。回复 vitals_ack。
+     * @return 是否为健康数据消息
+     */
+    private boolean handleVitalsText(WebSocketSession session, String payload) {
+        JsonNode root;
+        try {
+            root = VITALS_MAPPER.readTree(payload);
+        } catch (Exception e) {
+            return false;
+        }
+        if (root == null || !"vitals".equals(root.path("type").asText())) return false;
+
+        String deviceId = vitalsDeviceId(session);
+        JsonNode samples = root.get("samples");
+        int received = samples != null && samples.isArray() ? samples.size() : 1;
+        if (deviceId == null || received > maxVitalsSamples) {
+            sendVitalsAckText(session, -1, 0, received, false, deviceId == null ? "no_device_id" : "too_many_samples");
+            return true;
         }
 
-        String lightStatus = DeviceProtocolParser.parseLightStatus(text);
-        if (lightStatus != null) {
-            latestLt.set(lightStatus);
+        long now = System.currentTimeMillis();
+        HealthDataService.BulkBatch batch = healthDataService.newBulkBatch(deviceId, received);
+        if (samples != null && samples.isArray()) {
+            for (int i = 0; i < received; i++) addVitals(batch, i, samples.get(i), now);
+        } else {
+            addVitals(batch, 0, root, now);
+        }
+
+        int accepted = healthDataService.saveBulk(batch);
+        sendVitalsAckText(session, batch.lastSeq(accepted), accepted, batch.getInvalidCount(),
+                accepted < batch.getValidCount(), null);
+        return true;
+    }
+
+    private static void addVitals(HealthDataService.BulkBatch batch, int index, JsonNode node, long now) {
+        JsonNode seq = node.get("seq");
+        JsonNode ts = node.get("ts");
+        JsonNode heartRate = node.get("heartRate");
+        JsonNode breathingRate = node.get("breathingRate");
+        batch.add(index,
+                seq != null && seq.canConvertToLong() ? seq.asLong() : null,
+                ts != null && ts.canConvertToLong() ? ts.asLong() : now,
+                heartRate != null && heartRate.canConvertToInt() ? heartRate.asInt() : null,
+                breathingRate != null && breathingRate.canConvertToInt() ? breathingRate.asInt() : null);
+    }
+
+    /**
+     * 二进制健康数据上报，负载格式同批量上传接口，回复 VITALS_ACK
+     */
+    private void handleVitalsBinary(WebSocketSession session, SessionState state, ByteBuffer buffer) throws Exception {
+        String deviceId = vitalsDeviceId(session);
+        HealthDataService.BulkBatch batch = deviceId != null ? healthDataService.newBulkBatch(deviceId, 8) : null;
+        int received;
+        try {
+            received = HealthSampleCodec.decode(buffer, maxVitalsSamples, (index, seq, epochSecond, heartRate, breathingRate) -> {
+                if (batch != null) batch.add(index, seq, epochSecond * 1000, heartRate, breathingRate);
+            });
+        } catch (IllegalArgumentException e) {
+            log.debug("健康数据解析失败: device={}, error={}", deviceId, e.getMessage());
+            received = 0;
+        }
+
+        int accepted = 0;
+        boolean retry = false;
+        if (batch != null && batch.getValidCount() > 0) {
+            accepted = healthDataService.saveBulk(batch);
+            retry = accepted < batch.getValidCount();
+        }
+        int invalid = batch != null ? batch.getInvalidCount() : received;
+        long lastSeq = batch != null ? batch.lastSeq(accepted) : -1;
+        session.sendMessage(new BinaryMessage(DeviceBinaryProtocol.encodeVitalsAck(
+                state.downlinkSeq.getAndIncrement(), lastSeq, accepted, invalid, retry)));
+    }
+
+    /**
+     * 健康数据只接受握手时声明了 deviceId 的设备，保证数据归属与按序号去重
+     */
+    private static String vitalsDeviceId(WebSocketSession session) {
+        Object deviceId = session.getAttributes().get(DeviceHandshakeInterceptor.ATTR_DEVICE_ID);
+        if (deviceId == null) return null;
+        String value = deviceId.toString();
+        return value.length() <= 64 ? value : null;
+    }
+
+    private void sendVitalsAckText(WebSocketSession session, long lastSeq, int accepted, int invalid, boolean retry, String error) {
+        StringBuilder sb = new StringBuilder(96).append("{\"type\":\"vitals_ack\"");
+        if (lastSeq >= 0) sb.append(",\"seq\":").append(lastSeq);
+        sb.append(",\"accepted\":").append(accepted)
+                .append(",\"invalid\":").append(invalid)
+                .append(",\"retry\":").append(retry);
+        if (error != null) sb.append(",\"error\":\"").append(error).append('"');
+        sb.append('}');
+        try {
+            session.sendMessage(new TextMessage(sb.toString()));
+        } catch (Exception e) {
+            log.debug("健康数据确认发送失败: {}", e.getMessage());
+        }
+    }
+
+    private void applyTelemetry(String deviceId, DeviceTelemetry telemetry) {
+        if (telemetry.has(DeviceTelemetry.VOLUME)) {
+            deviceRegistry.updateVolume(deviceId, telemetry.getVolume());
+        }
+        if (telemetry.has(DeviceTelemetry.BRIGHTNESS | DeviceTelemetry.TEMPERATURE)) {
+            deviceRegistry.updateLight(deviceId, telemetry.getBrightness(), telemetry.getTemperature());
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("设备上报 {}: {}", deviceId, telemetry);
         }
     }
 
     private void sendTtsStream(WebSocketSession session, String text) throws Exception {
         if (text == null || text.isEmpty()) return;
         String id = session.getId();
+
+        SessionState state = sessionStates.get(id);
+        int batch = state != null && state.binaryProtocol ? Math.max(1, audioFramesPerMessage) : 1;
+
+        List<byte[]> cached = phraseCache.get(text);
+        if (cached != null) {
+            log.info("命中短语缓存，直接播放: {}", text);
+            for (int i = 0; i < cached.size() && session.isOpen(); i += batch) {
+                sendTtsFrames(session, state, cached.subList(i, Math.min(cached.size(), i + batch)));
+            }
+            return;
+        }
+
         log.info("开始阿里云 TTS 合成: {}", text);
+        List<byte[]> sentFrames = phraseCache.isCacheable(text) ? new ArrayList<>() : null;
 
         BlockingQueue<byte[]> frameQueue = new LinkedBlockingQueue<>();
         AtomicBoolean isComplete = new AtomicBoolean(false);
+        AtomicBoolean succeeded = new AtomicBoolean(false);
         AtomicBoolean hasStarted = new AtomicBoolean(false);
 
         CompletableFuture.runAsync(() -> {
             ttsService.synthesizeStream(text, frame -> {
                 hasStarted.set(true);
                 frameQueue.offer(frame);
-            }, () -> isComplete.set(true));
+            }, ok -> {
+                succeeded.set(ok);
+                isComplete.set(true);
+            });
         });
 
         int waitCount = 0;
@@ -321,33 +686,147 @@ public class WebSocketServer extends AbstractWebSocketHandler {
         int preBufferMs = text.length() <= 5 ? 50 : 100;
         Thread.sleep(preBufferMs);
 
+        List<byte[]> pending = new ArrayList<>(batch);
         while (!isComplete.get() || !frameQueue.isEmpty()) {
             byte[] frame = frameQueue.poll(50, TimeUnit.MILLISECONDS);
             if (frame != null) {
                 if (session.isOpen()) {
-                    session.sendMessage(new BinaryMessage(frame));
-                    SessionState state = sessionStates.get(id);
-                    if (state != null) state.lastAsrSendTime = System.currentTimeMillis();
-                    Thread.sleep(45);
+                    pending.add(frame);
+                    if (batch > 1) frameQueue.drainTo(pending, batch - 1);
+                    sendTtsFrames(session, state, pending);
+                    if (sentFrames != null) sentFrames.addAll(pending);
+                    pending.clear();
                 } else {
-                    break;
+                    return;
                 }
             }
         }
+
+        // 合成失败时只播放了已收到的部分，不能当成完整短语缓存
+        if (sentFrames != null && succeeded.get()) phraseCache.put(text, sentFrames);
+    }
+
+    /**
+     * 发送一批 TTS 帧并按帧数控制节奏：二进制协议打包为一条消息，文本协议逐帧发送
+     */
+    private void sendTtsFrames(WebSocketSession session, SessionState state, List<byte[]> frames) throws Exception {
+        if (state != null && state.binaryProtocol) {
+            int seq = state.downlinkSeq.getAndIncrement();
+            session.sendMessage(new BinaryMessage(DeviceBinaryProtocol.encodeAudio(seq, frames, 0, frames.size())));
+            state.lastAsrSendTime = System.currentTimeMillis();
+            Thread.sleep(45L * frames.size());
+            return;
+        }
+        for (byte[] frame : frames) {
+            if (!session.isOpen()) return;
+            session.sendMessage(new BinaryMessage(frame));
+            if (state != null) state.lastAsrSendTime = System.currentTimeMillis();
+            Thread.sleep(45);
+        }
+    }
+
+    private void sendTtsSignal(WebSocketSession session, boolean start) throws Exception {
+        SessionState state = sessionStates.get(session.getId());
+        if (state != null && state.binaryProtocol) {
+            int opcode = start ? DeviceBinaryProtocol.OP_TTS_START : DeviceBinaryProtocol.OP_TTS_END;
+            session.sendMessage(new BinaryMessage(DeviceBinaryProtocol.encodeSignal(opcode, state.downlinkSeq.getAndIncrement())));
+        } else {
+            session.sendMessage(new TextMessage(start ? TTS_START_MESSAGE : TTS_END_MESSAGE));
+        }
+    }
+
+    /**
+     * 向设备发送控制指令 "(name,value)"；二进制协议设备编码为 CONTROL 消息，无法编码的指令仍以文本发送
+     */
+    private void sendControl(WebSocketSession session, String command) throws Exception {
+        sendControl(session, command, null);
+    }
+
+    /**
+     * @param text 预先构造的文本消息（广播时共享），为 null 时按需构造
+     */
+    private void sendControl(WebSocketSession session, String command, TextMessage text) throws Exception {
+        SessionState state = sessionStates.get(session.getId());
+        if (state != null && state.binaryProtocol) {
+            byte[] encoded = DeviceBinaryProtocol.encodeControl(state.downlinkSeq.getAndIncrement(), command);
+            if (encoded != null) {
+                session.sendMessage(new BinaryMessage(encoded));
+                return;
+            }
+        }
+        session.sendMessage(text != null ? text : new TextMessage(command));
     }
 
     private void playTts(WebSocketSession session, String sessionId, String text) throws Exception {
         if (text == null || text.isEmpty()) return;
         if (!session.isOpen() || !activeSessions.containsKey(sessionId)) return;
-        session.sendMessage(new TextMessage("{\"type\":\"tts\",\"state\":\"start\"}"));
+        sendTtsSignal(session, true);
         sendTtsStream(session, text);
         if (session.isOpen()) {
-            session.sendMessage(new TextMessage("{\"type\":\"tts\",\"state\":\"end\"}"));
+            sendTtsSignal(session, false);
         }
         SessionState state = sessionStates.get(sessionId);
         if (state != null) state.ttsEndTime = System.currentTimeMillis();
     }
 
+    /**
+     * 服务端主动向设备播报一段语音（如健康告警）；设备正在对话时每隔 2 秒重试，最多等待约 30 秒
+     * @return 设备当前是否在线
+     */
+    public boolean announce(String deviceId, String text) {
+        String sessionId = deviceToSessionMap.get(deviceId);
+        WebSocketSession session = sessionId != null ? activeSessions.get(sessionId) : null;
+        if (session == null || !session.isOpen()) return false;
+        workerExecutor.submit(() -> announceWhenIdle(deviceId, text, 0));
+        return true;
+    }
+
+    private void announceWhenIdle(String deviceId, String text, int attempt) {
+        String sessionId = deviceToSessionMap.get(deviceId);
+        WebSocketSession session = sessionId != null ? activeSessions.get(sessionId) : null;
+        SessionState state = sessionId != null ? sessionStates.get(sessionId) : null;
+        if (session == null || state == null || !session.isOpen()) return;
+
+        if (!state.busy.compareAndSet(false, true)) {
+            if (attempt < ANNOUNCE_MAX_RETRIES) {
+                scheduler.schedule(() -> workerExecutor.submit(() -> announceWhenIdle(deviceId, text, attempt + 1)),
+                        2, TimeUnit.SECONDS);
+            } else {
+                log.warn("设备持续忙碌，放弃播报: device={}, text={}", deviceId, text);
+            }
+            return;
+        }
+        try {
+            log.info("主动播报: device={}, text={}", deviceId, text);
+            playTts(session, sessionId, text);
+        } catch (Exception e) {
+            log.warn("主动播报失败: device={}, error={}", deviceId, e.getMessage());
+        } finally {
+            state.busy.set(false);
+        }
+    }
+
+    @EventListener
+    public void onVitalsAlert(VitalsAlertEvent event) {
+        if (!announce(event.deviceId(), event.message())) {
+            log.info("设备不在线，健康告警未播报: device={}", event.deviceId());
+        }
+    }
+
+    /**
+     * 闹钟到点，在用户名下所有在线台灯上播报
+     */
+    @EventListener
+    public void onAlarmFired(AlarmFiredEvent event) {
+        int announced = 0;
+        for (String deviceId : deviceRegistry.devicesOfUser(event.userId())) {
+            if (announce(deviceId, event.message())) announced++;
+        }
+        if (announced == 0) {
+            log.info("用户没有在线设备，闹钟未播报: user={}, alarm={}", event.userId(), event.alarmId());
+        }
+    }
+
     private void handleAsrText(WebSocketSession session, String sessionId, String text) {
         if (text == null || text.trim().isEmpty()) return;
         if (!validateSession(sessionId, session)) return;
@@ -366,8 +845,10 @@ public class WebSocketServer extends AbstractWebSocketHandler {
         String pinyin = WakeWordUtils.convertToPinyin(question);
         String cleanPinyin = pinyin.replaceAll("[^a-z]", "");
 
-        if (WakeWordUtils.isWakeWord(cleanPinyin)) {
-            log.info("触发唤醒词: 小爱同学 (pinyin: {})", cleanPinyin);
+        WakeWordMatcher matcher = state.wakeWordMatcher;
+        int wakeWordIndex = matcher.match(cleanPinyin);
+        if (wakeWordIndex >= 0) {
+            log.info("触发唤醒词: {} (pinyin: {})", matcher.getWord(wakeWordIndex), cleanPinyin);
             handleWakeUp(session, sessionId);
             return;
         }
@@ -452,6 +933,9 @@ public class WebSocketServer extends AbstractWebSocketHandler {
             return;
         }
 
+        // 整个问答的截止时间，向下传递给智能体调用
+        long deadline = System.currentTimeMillis() + voiceDeadlineMs;
+
         // 使用线程池执行业务逻辑
         workerExecutor.submit(() -> {
             try {
@@ -460,13 +944,19 @@ public class WebSocketServer extends AbstractWebSocketHandler {
                     return;
                 }
 
-                ControlCommandEnum command = ControlCommandEnum.match(question);
-                if (command != null) {
-                    processControlCommand(session, sessionId, command, question);
+                AlarmTimeParser.ParsedAlarm alarm = AlarmTimeParser.parse(question, LocalDateTime.now());
+                if (alarm != null) {
+                    processVoiceAlarm(session, sessionId, alarm, question);
                     return;
                 }
 
-                processAiChat(session, sessionId, question);
+                IntentEngine.IntentMatch intent = IntentEngine.match(question);
+                if (intent != null) {
+                    processControlCommand(session, sessionId, intent, question);
+                    return;
+                }
+
+                processAiChat(session, sessionId, question, deadline);
 
             } catch (Exception e) {
                 log.error("处理失败", e);
@@ -475,15 +965,17 @@ public class WebSocketServer extends AbstractWebSocketHandler {
         });
     }
 
-    private void processControlCommand(WebSocketSession session, String sessionId, ControlCommandEnum command, String question) throws Exception {
-        log.info("检测到控制命令: {}, 原问题: {}", command.getCommand(), question);
+    private void processControlCommand(WebSocketSession session, String sessionId, IntentEngine.IntentMatch intent, String question) throws Exception {
+        log.info("检测到控制命令: {}, 原问题: {}", intent, question);
         
         if (session.isOpen()) {
-            session.sendMessage(new TextMessage(command.getCommand()));
-            log.info("已发送控制命令到设备: {}", command.getCommand());
+            for (String deviceCommand : toDeviceCommands(intent, getDeviceKey(session))) {
+                sendControl(session, deviceCommand);
+                log.info("已发送控制命令到设备: {}", deviceCommand);
+            }
         }
 
-        String confirmText = command.getConfirmText();
+        String confirmText = intent.getConfirmText();
         if (confirmText != null) {
             playTts(session, sessionId, confirmText);
         }
@@ -493,14 +985,73 @@ public class WebSocketServer extends AbstractWebSocketHandler {
         log.info("控制命令处理完成，会话已解锁");
     }
 
-    private void processAiChat(WebSocketSession session, String sessionId, String question) throws Exception {
+    /**
+     * 本地处理语音闹钟：直接写入 user_alarms，不经过智能体
+     */
+    private void processVoiceAlarm(WebSocketSession session, String sessionId, AlarmTimeParser.ParsedAlarm alarm, String question) throws Exception {
+        log.info("检测到语音闹钟: {} -> type={}, time={}, date={}, repeat={}, tag={}", question,
+                alarm.getType(), alarm.getTime(), alarm.getTargetDate(), alarm.getRepeatDays(), alarm.getTag());
+
+        String userId = resolveUserId(session);
+        String reply;
+        if (userId == null) {
+            reply = ALARM_UNBOUND_REPLY;
+        } else {
+            String result = userAlarmsService.createAlarm(alarm.toRequest(userId));
+            if ("创建成功".equals(result)) {
+                String tag = "无".equals(alarm.getTag()) ? "" : alarm.getTag();
+                reply = "好的，" + alarm.describe() + "的" + tag + "闹钟已设好";
+            } else if ("闹钟已存在".equals(result)) {
+                reply = ALARM_EXISTS_REPLY;
+            } else {
+                log.warn("语音闹钟创建失败: {}", result);
+                reply = ALARM_FAILED_REPLY;
+            }
+        }
+
+        playTts(session, sessionId, reply);
+        Thread.sleep(800);
+        resetSessionState(sessionId);
+    }
+
+    private String resolveUserId(WebSocketSession session) {
+        Object userId = session.getAttributes().get(DeviceHandshakeInterceptor.ATTR_USER_ID);
+        if (userId != null) return userId.toString();
+        return defaultAlarmUserId == null || defaultAlarmUserId.isEmpty() ? null : defaultAlarmUserId;
+    }
+
+    /**
+     * 把意图换算成设备命令
+     * 设备没有亮度/色温的绝对设置指令，按最近上报的状态换算成一次相对调节；状态未知时先归零再调到目标值
+     */
+    private List<String> toDeviceCommands(IntentEngine.IntentMatch intent, String deviceId) {
+        ControlCommandEnum command = intent.getCommand();
+        if (command != ControlCommandEnum.BRIGHTNESS_SET && command != ControlCommandEnum.TEMP_SET) {
+            return List.of(intent.toDeviceCommand());
+        }
+
+        boolean brightness = command == ControlCommandEnum.BRIGHTNESS_SET;
+        String up = brightness ? "brightness_up" : "tem_up";
+        String down = brightness ? "brightness_down" : "tem_down";
+        int target = intent.getValue();
+
+        DeviceRegistry.DeviceState device = deviceRegistry.get(deviceId);
+        if (device == null || !device.isLightKnown()) {
+            return List.of("(" + down + ",100)", "(" + up + "," + target + ")");
+        }
+        int delta = target - (brightness ? device.getBrightness() : device.getTemperature());
+        if (delta == 0) return List.of();
+        return List.of(delta > 0 ? "(" + up + "," + delta + ")" : "(" + down + "," + (-delta) + ")");
+    }
+
+    private void processAiChat(WebSocketSession session, String sessionId, String question, long deadline) throws Exception {
         SessionState state = sessionStates.get(sessionId);
         // 使用会话独立的语音配置
         String shouldUseVoiceId = state != null ? state.voiceId : defaultVoiceId;
         Double shouldUseSpeed = state != null ? state.speedRatio : defaultSpeedRatio;
 
         log.info("请求智能体: '{}' (Voice: {}, Speed: {})", question, shouldUseVoiceId, shouldUseSpeed);
-        String[] response = cozeAPI.CozeRequest(question, shouldUseVoiceId, shouldUseSpeed, true);
+        String[] response = cozeAPI.CozeRequest(question, shouldUseVoiceId, shouldUseSpeed, true, deadline);
 
         if (response != null && response.length >= 2) {
             String replyText = response[1];
@@ -540,23 +1091,22 @@ public class WebSocketServer extends AbstractWebSocketHandler {
 
     private AliyunRealtimeASR startAsrForSession(WebSocketSession session, String sessionId) {
         if (!session.isOpen() || !activeSessions.containsKey(sessionId)) return null;
+        SessionState owner = sessionStates.get(sessionId);
+        if (owner == null) return null;
 
+        // 回调通过会话状态取当前连接：会话恢复后同一个 ASR 继续为新连接服务
         AliyunRealtimeASR asr = new AliyunRealtimeASR(credentials.getAppKey());
         asr.setOnResultCallback(text -> {
-            if (!activeSessions.containsKey(sessionId)) return;
-            AliyunRealtimeASR currentAsr = asrServices.get(sessionId);
+            WebSocketSession currentSession = owner.session;
+            String currentId = owner.sessionId;
+            if (currentSession == null || currentId == null || !activeSessions.containsKey(currentId)) return;
+            AliyunRealtimeASR currentAsr = asrServices.get(currentId);
             if (currentAsr == null || currentAsr != asr) return;
-            if (isSessionBusy(sessionId)) return;
-            handleAsrText(session, sessionId, text);
+            if (isSessionBusy(currentId)) return;
+            handleAsrText(currentSession, currentId, text);
         });
 
-        asr.setOnActivityCallback(() -> {
-            if (!activeSessions.containsKey(sessionId)) return;
-            SessionState state = sessionStates.get(sessionId);
-            if (state != null) {
-                state.lastAsrResultTime = System.currentTimeMillis();
-            }
-        });
+        asr.setOnActivityCallback(() -> owner.lastAsrResultTime = System.currentTimeMillis());
 
         asrServices.put(sessionId, asr);
         try {
@@ -629,10 +1179,123 @@ public class WebSocketServer extends AbstractWebSocketHandler {
     public void afterConnectionClosed(@NotNull WebSocketSession session, @NotNull CloseStatus status) {
         String id = session.getId();
         log.info("ESP32 Disconnected: id={}, code={}, reason={}", id, status.getCode(), status.getReason());
+        if (parkSession(session, id)) return;
         cleanupSession(id, "连接关闭: code=" + status.getCode());
     }
 
+    private void markConnected(WebSocketSession session, String id, String deviceKey) {
+        Object boundUser = session.getAttributes().get(DeviceHandshakeInterceptor.ATTR_USER_ID);
+        boolean stableId = session.getAttributes().get(DeviceHandshakeInterceptor.ATTR_DEVICE_ID) != null;
+        deviceRegistry.connected(deviceKey, id, String.valueOf(session.getRemoteAddress()),
+                boundUser != null ? boundUser.toString() : null,
+                DeviceHandshakeInterceptor.isBinaryProtocol(session.getAttributes()), !stableId);
+    }
+
+    /**
+     * 携带 deviceId 的设备断线后暂不清理：会话状态与仍在运行的 ASR 保留 resumeWindowMs，
+     * 期间继续向 ASR 发送静音帧保活，超时后再完整清理
+     * @return 是否已保留；未携带 deviceId、未开启恢复或会话已被替换时返回 false
+     */
+    private synchronized boolean parkSession(WebSocketSession session, String sessionId) {
+        Object stableId = session.getAttributes().get(DeviceHandshakeInterceptor.ATTR_DEVICE_ID);
+        if (resumeWindowMs <= 0 || stableId == null) return false;
+        String deviceKey = stableId.toString();
+        if (!sessionId.equals(deviceToSessionMap.get(deviceKey))) return false;
+
+        SessionState state = sessionStates.remove(sessionId);
+        if (state == null) return false;
+        if (state.tasks != null) state.tasks.forEach(t -> t.cancel(false));
+        state.fragmentBuffer.reset();
+        state.session = null;
+        state.sessionId = null;
+
+        activeSessions.remove(sessionId);
+        deviceToSessionMap.remove(deviceKey, sessionId);
+        deviceRegistry.disconnected(deviceKey, sessionId);
+        AliyunRealtimeASR asr = asrServices.remove(sessionId);
+
+        List<ScheduledFuture<?>> tasks = new ArrayList<>();
+        if (asr != null) {
+            tasks.add(scheduler.scheduleAtFixedRate(() -> {
+                if (!asr.isRunning()) return;
+                try {
+                    asr.sendOpusStream(OPUS_SILENCE_FRAME);
+                } catch (Exception e) {
+                    log.debug("静音帧发送异常（忽略）: {}", e.getMessage());
+                }
+            }, 1, 1, TimeUnit.SECONDS));
+        }
+        ParkedSession parked = new ParkedSession(state, asr, tasks);
+        tasks.add(scheduler.schedule(() -> expireParked(deviceKey, parked), resumeWindowMs, TimeUnit.MILLISECONDS));
+        parkedSessions.put(deviceKey, parked);
+        log.info("会话等待恢复: device={}, session={}, window={}ms", deviceKey, sessionId, resumeWindowMs);
+        return true;
+    }
+
+    private void expireParked(String deviceKey, ParkedSession parked) {
+        if (!parkedSessions.remove(deviceKey, parked)) return;
+        parked.tasks().forEach(t -> t.cancel(false));
+        log.info("会话恢复超时，释放资源: device={}", deviceKey);
+        if (parked.asr() != null) {
+            try { parked.asr().forceStop(); } catch (Exception ignored) {}
+        }
+    }
+
+    /**
+     * 恢复窗口内重连：把保留的会话状态与 ASR 绑定到新连接，跳过 ASR 重新建连
+     * @return 是否已恢复
+     */
+    private synchronized boolean resumeSession(WebSocketSession session, String sessionId, String deviceKey) {
+        if (session.getAttributes().get(DeviceHandshakeInterceptor.ATTR_DEVICE_ID) == null) return false;
+        ParkedSession parked = parkedSessions.remove(deviceKey);
+        if (parked == null) return false;
+        parked.tasks().forEach(t -> t.cancel(false));
+
+        SessionState state = parked.state();
+        long now = System.currentTimeMillis();
+        state.lastPongTime = now;
+        state.lastAsrSendTime = now;
+        // 断线前未完成的对话已随旧连接失效
+        state.busy.set(false);
+        state.lastUplinkSeq = -1;
+        state.binaryProtocol = DeviceHandshakeInterceptor.isBinaryProtocol(session.getAttributes());
+        Object wakeWord = session.getAttributes().get(DeviceHandshakeInterceptor.ATTR_WAKE_WORD);
+        if (wakeWord != null) {
+            state.wakeWordMatcher = WakeWordUtils.newMatcher(wakeWord.toString().split("[,，]"));
+        }
+        state.session = session;
+        state.sessionId = sessionId;
+
+        activeSessions.put(sessionId, session);
+        sessionStates.put(sessionId, state);
+        deviceToSessionMap.put(deviceKey, sessionId);
+        markConnected(session, sessionId, deviceKey);
+
+        AliyunRealtimeASR asr = parked.asr();
+        if (asr != null && asr.isRunning()) {
+            asrServices.put(sessionId, asr);
+        } else {
+            if (asr != null) {
+                try { asr.forceStop(); } catch (Exception ignored) {}
+            }
+            workerExecutor.submit(() -> {
+                try {
+                    startAsrForSession(session, sessionId);
+                } catch (Exception e) {
+                    log.error("恢复会话时 ASR 启动失败: {}", e.getMessage());
+                }
+            });
+        }
+
+        scheduleSessionTasks(session, sessionId);
+        resumedCount.incrementAndGet();
+        log.info("会话已恢复: device={}, session={}, awake={}", deviceKey, sessionId, state.awake.get());
+        return true;
+    }
+
     private String getDeviceKey(WebSocketSession session) {
+        Object deviceId = session.getAttributes().get(DeviceHandshakeInterceptor.ATTR_DEVICE_ID);
+        if (deviceId != null) return deviceId.toString();
         try {
             if (session.getRemoteAddress() != null) {
                 return session.getRemoteAddress().toString();
@@ -656,7 +1319,9 @@ public class WebSocketServer extends AbstractWebSocketHandler {
 
         WebSocketSession session = activeSessions.remove(sessionId);
         if (session != null) {
-            deviceToSessionMap.remove(getDeviceKey(session), sessionId);
+            String deviceKey = getDeviceKey(session);
+            deviceToSessionMap.remove(deviceKey, sessionId);
+            deviceRegistry.disconnected(deviceKey, sessionId);
         }
 
         AliyunRealtimeASR asr = asrServices.remove(sessionId);
@@ -680,24 +1345,162 @@ public class WebSocketServer extends AbstractWebSocketHandler {
         log.warn("WebSocket 传输错误: id={}, error={}", id, exception.getMessage());
     }
     
-    public void broadcastControlMessage(String message) {
-        if (message == null || message.isEmpty()) return;
-        activeSessions.values().forEach(session -> {
-            if (session.isOpen()) {
-                try {
-                    session.sendMessage(new TextMessage(message));
-                } catch (Exception e) {
-                    log.error("广播消息失败: {}", e.getMessage());
-                }
+    /**
+     * 按设备ID、用户ID或广播发送控制指令
+     * 指定 deviceId 时只发给该设备；否则指定 userId 时发给该用户的所有设备；都未指定时广播。
+     * 同一目标在合并窗口内的指令合并后下发，返回的是合并后那一次下发的结果。
+     * 不阻塞调用线程：REST 接口直接返回该 future，由 Spring MVC 异步完成响应
+     */
+    public CompletableFuture<DeliveryReport> dispatchControl(String deviceId, String userId, String message) {
+        String target = deviceId != null && !deviceId.isEmpty() ? TARGET_DEVICE + deviceId
+                : userId != null && !userId.isEmpty() ? TARGET_USER + userId
+                : TARGET_ALL;
+        // 同一窗口的提交共享结果，超时只作用于本次调用的副本
+        return commandCoalescer.submit(target, message).copy()
+                .orTimeout(coalesceWindowMs + broadcastTimeoutMs, TimeUnit.MILLISECONDS)
+                .exceptionally(e -> {
+                    log.warn("控制指令下发未完成: target={}, command={}, error={}", target, message, e.toString());
+                    DeliveryReport report = new DeliveryReport(target);
+                    report.failed.incrementAndGet();
+                    return report;
+                });
+    }
+
+    private DeliveryReport sendCoalesced(String target, List<String> commands) {
+        DeliveryReport report = new DeliveryReport(target);
+        for (String command : commands) {
+            DeliveryReport part;
+            if (target.startsWith(TARGET_DEVICE)) {
+                part = sendToDevice(target.substring(TARGET_DEVICE.length()), command);
+            } else if (target.startsWith(TARGET_USER)) {
+                part = sendToUser(target.substring(TARGET_USER.length()), command);
+            } else {
+                part = broadcastControlMessage(command);
             }
-        });
+            report.add(part);
+        }
+        return report;
     }
 
-    public String getLatestLt() {
-        return latestLt.get();
+    /**
+     * 发送控制指令到单台设备：设备ID -> 会话ID -> 会话，O(1)
+     */
+    public DeliveryReport sendToDevice(String deviceId, String message) {
+        DeliveryReport report = new DeliveryReport(TARGET_DEVICE + deviceId);
+        if (message == null || message.isEmpty()) return report;
+        deliverToDevice(deviceId, message, null, report);
+        return report;
     }
 
-    public int getLatestVolume() {
-        return latestVolume.get();
+    /**
+     * 发送控制指令到用户名下的所有在线设备
+     */
+    public DeliveryReport sendToUser(String userId, String message) {
+        DeliveryReport report = new DeliveryReport(TARGET_USER + userId);
+        if (message == null || message.isEmpty()) return report;
+        TextMessage text = new TextMessage(message);
+        for (String deviceId : deviceRegistry.devicesOfUser(userId)) {
+            deliverToDevice(deviceId, message, text, report);
+        }
+        return report;
+    }
+
+    /**
+     * 广播控制指令：文本消息只构造一次，按连接分片后并行写入各自的发送队列
+     */
+    public DeliveryReport broadcastControlMessage(String message) {
+        DeliveryReport report = new DeliveryReport(TARGET_ALL);
+        if (message == null || message.isEmpty()) return report;
+
+        TextMessage text = new TextMessage(message);
+        List<WebSocketSession> targets = new ArrayList<>(activeSessions.values());
+        int parallelism = Math.min(Math.max(1, broadcastParallelism), targets.size());
+        if (parallelism <= 1) {
+            for (WebSocketSession session : targets) deliver(session, message, text, report);
+            return report;
+        }
+
+        int chunk = (targets.size() + parallelism - 1) / parallelism;
+        CompletableFuture<?>[] parts = new CompletableFuture<?>[parallelism];
+        for (int p = 0; p < parallelism; p++) {
+            int from = p * chunk;
+            int to = Math.min(targets.size(), from + chunk);
+            parts[p] = CompletableFuture.runAsync(() -> {
+                for (int i = from; i < to; i++) deliver(targets.get(i), message, text, report);
+            }, broadcastExecutor);
+        }
+        try {
+            CompletableFuture.allOf(parts).get(broadcastTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.warn("广播未在 {}ms 内完成: {}", broadcastTimeoutMs, report);
+        } catch (Exception e) {
+            log.error("广播消息失败: {}", e.getMessage());
+        }
+        return report;
+    }
+
+    private void deliverToDevice(String deviceId, String message, TextMessage text, DeliveryReport report) {
+        String sessionId = deviceToSessionMap.get(deviceId);
+        WebSocketSession session = sessionId != null ? activeSessions.get(sessionId) : null;
+        if (session == null) {
+            report.offline.incrementAndGet();
+            return;
+        }
+        deliver(session, message, text != null ? text : new TextMessage(message), report);
+    }
+
+    private void deliver(WebSocketSession session, String message, TextMessage text, DeliveryReport report) {
+        if (!session.isOpen()) {
+            report.offline.incrementAndGet();
+            return;
+        }
+        try {
+            sendControl(session, message, text);
+            report.delivered.incrementAndGet();
+        } catch (Exception e) {
+            report.failed.incrementAndGet();
+            log.error("发送控制指令失败: session={}, error={}", session.getId(), e.getMessage());
+        }
+    }
+
+    /**
+     * 控制指令投递结果（按消息计数，合并下发多条指令时累加）
+     */
+    public static final class DeliveryReport {
+        private final String target;
+        private final AtomicInteger delivered = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicInteger offline = new AtomicInteger();
+
+        DeliveryReport(String target) {
+            this.target = target;
+        }
+
+        public String getTarget() {
+            return target;
+        }
+
+        public int getDelivered() {
+            return delivered.get();
+        }
+
+        public int getFailed() {
+            return failed.get();
+        }
+
+        public int getOffline() {
+            return offline.get();
+        }
+
+        void add(DeliveryReport other) {
+            delivered.addAndGet(other.delivered.get());
+            failed.addAndGet(other.failed.get());
+            offline.addAndGet(other.offline.get());
+        }
+
+        @Override
+        public String toString() {
+            return target + " delivered=" + delivered.get() + ", failed=" + failed.get() + ", offline=" + offline.get();
+        }
     }
 }
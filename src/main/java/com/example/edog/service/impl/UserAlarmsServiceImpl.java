@@ -6,7 +6,10 @@ import com.example.edog.mapper.UserAlarmsMapper;
 import com.example.edog.service.UserAlarmsService;
 import com.example.edog.dto.AlarmCreateRequest;
 import com.example.edog.dto.AlarmResponse;
+import com.example.edog.event.AlarmChangedEvent;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDate;
@@ -36,6 +39,9 @@ public class UserAlarmsServiceImpl extends ServiceImpl<UserAlarmsMapper, UserAla
      */
     private static final String[] DAY_NAMES = {"", "周一", "周二", "周三", "周四", "周五", "周六", "周日"};
     
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    
     @Override
     public String createAlarm(AlarmCreateRequest request) {
         try {
@@ -115,6 +121,7 @@ public class UserAlarmsServiceImpl extends ServiceImpl<UserAlarmsMapper, UserAla
             alarm.setUpdatedAt(LocalDateTime.now());
             
             if (save(alarm)) {
+                eventPublisher.publishEvent(new AlarmChangedEvent(alarm.getId(), alarm));
                 return "创建成功";
             } else {
                 return "创建失败";
@@ -142,6 +149,7 @@ public class UserAlarmsServiceImpl extends ServiceImpl<UserAlarmsMapper, UserAla
             }
             
             this.removeById(alarmId);
+            eventPublisher.publishEvent(new AlarmChangedEvent(alarmId, null));
             log.info("闹钟删除成功，闹钟ID: {}", alarmId);
             return true;
         } catch (Exception e) {
@@ -197,6 +205,7 @@ public class UserAlarmsServiceImpl extends ServiceImpl<UserAlarmsMapper, UserAla
             alarm.setStatus(status);
             alarm.setUpdatedAt(LocalDateTime.now());
             this.updateById(alarm);
+            eventPublisher.publishEvent(new AlarmChangedEvent(alarmId, alarm));
             log.info("闹钟状态更新成功，闹钟ID: {}, 新状态: {}", alarmId, status);
             return true;
         } catch (Exception e) {
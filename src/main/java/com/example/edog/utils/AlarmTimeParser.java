@@ -0,0 +1,339 @@
+package com.example.edog.utils;
+
+import com.example.edog.dto.AlarmCreateRequest;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAdjusters;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 语音闹钟时间表达式解析工具类
+ * 把 "明天早上七点叫我起床"、"每个工作日八点提醒我开会"、"二十分钟后提醒我关火" 这类语句
+ * 解析为创建闹钟所需的 type / targetDate / repeatDays / tag
+ */
+public class AlarmTimeParser {
+
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm");
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    private static final int ALARM_TYPE_ONE_TIME = 1;
+    private static final int ALARM_TYPE_RECURRING = 2;
+
+    private static final Pattern TRIGGER_PATTERN = Pattern.compile("(叫我|叫醒|喊我|提醒我|提醒一下|闹钟)");
+    private static final Pattern CANCEL_PATTERN = Pattern.compile("(取消|删除|删掉|关闭|关掉|不用)");
+    private static final Pattern EDIT_PATTERN = Pattern.compile("(改成|改到|改为|改在|换成|换到|换为|调整|调到|推迟|延后|挪到)");
+    private static final Pattern CN_NUMBER_PATTERN = Pattern.compile("[零一二两三四五六七八九十]+");
+
+    // "周三8点" 归一化后是 "周38点"，星期后的数字不能作为小时的开头
+    private static final Pattern TIME_PATTERN = Pattern.compile("(?<![周期拜])(\\d{1,2})\\s*[点:：时]\\s*(?:(1刻)|(3刻)|(半)|(\\d{1,2})\\s*分?)?");
+    private static final Pattern RELATIVE_PATTERN = Pattern.compile("(\\d{1,3})\\s*(分钟|个?小时|个半小时)(?:之|以)?后");
+    private static final Pattern MONTH_DAY_PATTERN = Pattern.compile("(\\d{1,2})月(\\d{1,2})[日号]");
+    private static final Pattern WEEKDAY_PATTERN = Pattern.compile("(下个?)?(?:周|星期|礼拜)([1-7日天])");
+    private static final Pattern WEEKLY_PATTERN = Pattern.compile("每个?(?:周|星期|礼拜)([1-7日天、和,，]+)");
+    private static final Pattern REMIND_TAG_PATTERN = Pattern.compile("提醒我(?:一下)?(?:要)?(.+)");
+    private static final Pattern TAG_TRIM_PATTERN = Pattern.compile("[，。,.!！?？~\\s]+$");
+
+    private static final String EVERY_DAY = "1,2,3,4,5,6,7";
+    private static final String WORKDAYS = "1,2,3,4,5";
+    private static final String WEEKEND = "6,7";
+    private static final String DAY_NAMES = "一二三四五六日";
+
+    /**
+     * 语音闹钟解析结果
+     */
+    public static class ParsedAlarm {
+        private final int type;
+        private final LocalTime time;
+        private final LocalDate targetDate;
+        private final String repeatDays;
+        private final String tag;
+        private final String when;
+
+        ParsedAlarm(int type, LocalTime time, LocalDate targetDate, String repeatDays, String tag, String when) {
+            this.type = type;
+            this.time = time;
+            this.targetDate = targetDate;
+            this.repeatDays = repeatDays;
+            this.tag = tag;
+            this.when = when;
+        }
+
+        public AlarmCreateRequest toRequest(String userId) {
+            return new AlarmCreateRequest(
+                    userId,
+                    time.format(TIME_FORMATTER),
+                    type,
+                    targetDate != null ? targetDate.format(DATE_FORMATTER) : null,
+                    repeatDays,
+                    tag
+            );
+        }
+
+        /**
+         * 口语化描述，用于确认语，如 "明天7点30分"、"工作日8点"
+         */
+        public String describe() {
+            String minute = time.getMinute() == 0 ? "" : (time.getMinute() == 30 ? "半" : time.getMinute() + "分");
+            return when + time.getHour() + "点" + minute;
+        }
+
+        public int getType() {
+            return type;
+        }
+
+        public LocalTime getTime() {
+            return time;
+        }
+
+        public LocalDate getTargetDate() {
+            return targetDate;
+        }
+
+        public String getRepeatDays() {
+            return repeatDays;
+        }
+
+        public String getTag() {
+            return tag;
+        }
+    }
+
+    /**
+     * 解析语音闹钟
+     * @param text 语音识别文本
+     * @param now 当前时间
+     * @return 解析结果；不是闹钟语句或缺少时间时返回 null
+     */
+    public static ParsedAlarm parse(String text, LocalDateTime now) {
+        if (text == null || text.isEmpty()) return null;
+        if (!TRIGGER_PATTERN.matcher(text).find()) return null;
+        // 取消/删除、修改类语句交给智能体处理
+        if (CANCEL_PATTERN.matcher(text).find() || EDIT_PATTERN.matcher(text).find()) return null;
+
+        String normalized = normalizeNumbers(text.replace("一下", ""));
+        String tag = extractTag(normalized);
+
+        // 1. 相对时间："20分钟后"、"1个半小时后"
+        Matcher relative = RELATIVE_PATTERN.matcher(normalized);
+        if (relative.find()) {
+            int amount = Integer.parseInt(relative.group(1));
+            String unit = relative.group(2);
+            long minutes = unit.startsWith("分") ? amount : amount * 60L + (unit.contains("半") ? 30 : 0);
+            if (minutes <= 0) return null;
+            LocalDateTime at = now.plusMinutes(minutes).withSecond(0).withNano(0);
+            return new ParsedAlarm(ALARM_TYPE_ONE_TIME, at.toLocalTime(), at.toLocalDate(), null, tag,
+                    dayWord(at.toLocalDate(), now.toLocalDate()));
+        }
+
+        // 2. 绝对时刻
+        Matcher timeMatcher = TIME_PATTERN.matcher(normalized);
+        if (!timeMatcher.find()) return null;
+        int hour = Integer.parseInt(timeMatcher.group(1));
+        int minute = 0;
+        if (timeMatcher.group(2) != null) minute = 15;
+        else if (timeMatcher.group(3) != null) minute = 45;
+        else if (timeMatcher.group(4) != null) minute = 30;
+        else if (timeMatcher.group(5) != null) minute = Integer.parseInt(timeMatcher.group(5));
+        if (hour > 24 || minute > 59) return null;
+        // 出现两个时刻（"8点的闹钟9点再叫我"）通常是修改已有闹钟，不新建
+        int timeStart = timeMatcher.start();
+        if (timeMatcher.find()) return null;
+
+        String prefix = normalized.substring(0, timeStart);
+        hour = applyPeriod(prefix, hour);
+        // 24点（含"晚上12点"）是所说日期次日的 0 点
+        boolean midnight = hour == 24;
+        if (midnight) hour = 0;
+        LocalTime time = LocalTime.of(hour, minute);
+
+        // 3. 循环闹钟
+        String repeatDays = parseRepeatDays(normalized);
+        if (repeatDays != null) {
+            if (midnight) repeatDays = shiftDays(repeatDays);
+            return new ParsedAlarm(ALARM_TYPE_RECURRING, time, null, repeatDays, tag, repeatWord(repeatDays));
+        }
+
+        // 4. 单次闹钟：确定日期，未指定日期时取下一个到达的该时刻
+        LocalDate today = now.toLocalDate();
+        // 次日 0 点总在今天之后
+        boolean todayPassed = !midnight && !time.isAfter(now.toLocalTime());
+        LocalDate date = parseDate(normalized, today, todayPassed);
+        if (date != null && midnight) date = date.plusDays(1);
+        if (date == null) {
+            date = time.isAfter(now.toLocalTime()) ? today : today.plusDays(1);
+        }
+        if (date.isBefore(today) || (date.equals(today) && !time.isAfter(now.toLocalTime()))) {
+            return null;
+        }
+        return new ParsedAlarm(ALARM_TYPE_ONE_TIME, time, date, null, tag, dayWord(date, today));
+    }
+
+    /**
+     * 把中文数字串替换为阿拉伯数字，如 "七点十五" -> "7点15"
+     */
+    static String normalizeNumbers(String text) {
+        Matcher matcher = CN_NUMBER_PATTERN.matcher(text);
+        StringBuilder sb = new StringBuilder();
+        while (matcher.find()) {
+            matcher.appendReplacement(sb, String.valueOf(chineseToInt(matcher.group())));
+        }
+        matcher.appendTail(sb);
+        return sb.toString();
+    }
+
+    private static int chineseToInt(String cn) {
+        int total = 0, unit = 0;
+        for (int i = 0; i < cn.length(); i++) {
+            char c = cn.charAt(i);
+            if (c == '十') {
+                total += (unit == 0 ? 1 : unit) * 10;
+                unit = 0;
+            } else {
+                unit = unit * 10 + "零一二三四五六七八九".indexOf(c == '两' ? '二' : c);
+            }
+        }
+        return total + unit;
+    }
+
+    private static int applyPeriod(String prefix, int hour) {
+        if (prefix.contains("凌晨")) {
+            return hour == 12 ? 0 : hour;
+        }
+        if (prefix.contains("中午")) {
+            return hour < 6 ? hour + 12 : hour;
+        }
+        if (prefix.contains("晚上") || prefix.contains("今晚") || prefix.contains("夜里") || prefix.contains("明晚")) {
+            // "晚上12点" 是午夜而不是中午
+            return hour <= 12 ? hour + 12 : hour;
+        }
+        if (prefix.contains("下午") || prefix.contains("傍晚")) {
+            return hour < 12 ? hour + 12 : hour;
+        }
+        return hour;
+    }
+
+    private static String parseRepeatDays(String text) {
+        if (text.contains("工作日")) return WORKDAYS;
+        if (text.contains("周末")) return text.contains("每") ? WEEKEND : null;
+        if (text.contains("每天") || text.contains("每日") || text.contains("天天") || text.contains("每个早上")
+                || text.contains("每天早上") || text.contains("每晚")) {
+            return EVERY_DAY;
+        }
+
+        Matcher weekly = WEEKLY_PATTERN.matcher(text);
+        if (weekly.find()) {
+            TreeSet<Integer> days = new TreeSet<>();
+            for (char c : weekly.group(1).toCharArray()) {
+                if (c >= '1' && c <= '7') days.add(c - '0');
+                else if (c == '日' || c == '天') days.add(7);
+            }
+            if (days.isEmpty()) return null;
+            StringBuilder sb = new StringBuilder();
+            for (int day : days) {
+                if (sb.length() > 0) sb.append(',');
+                sb.append(day);
+            }
+            return sb.toString();
+        }
+        return null;
+    }
+
+    /**
+     * 循环日各顺延一天，如 "1,5" -> "2,6"、"7" -> "1"
+     */
+    private static String shiftDays(String repeatDays) {
+        TreeSet<Integer> days = new TreeSet<>();
+        for (String day : repeatDays.split(",")) days.add(Integer.parseInt(day) % 7 + 1);
+        StringBuilder sb = new StringBuilder();
+        for (int day : days) {
+            if (sb.length() > 0) sb.append(',');
+            sb.append(day);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param todayPassed 今天的该时刻是否已过；"周三"、"周末" 这类未指明哪一周的日期此时顺延到下一次
+     */
+    private static LocalDate parseDate(String text, LocalDate today, boolean todayPassed) {
+        if (text.contains("大后天")) return today.plusDays(3);
+        if (text.contains("后天")) return today.plusDays(2);
+        if (text.contains("明天") || text.contains("明早") || text.contains("明晚")) return today.plusDays(1);
+        if (text.contains("今天") || text.contains("今晚")) return today;
+        if (text.contains("周末")) {
+            DayOfWeek dow = today.getDayOfWeek();
+            if (dow == DayOfWeek.SATURDAY) return todayPassed ? today.plusDays(1) : today;
+            if (dow == DayOfWeek.SUNDAY && !todayPassed) return today;
+            return today.with(TemporalAdjusters.next(DayOfWeek.SATURDAY));
+        }
+
+        Matcher monthDay = MONTH_DAY_PATTERN.matcher(text);
+        if (monthDay.find()) {
+            int month = Integer.parseInt(monthDay.group(1));
+            int day = Integer.parseInt(monthDay.group(2));
+            try {
+                LocalDate date = LocalDate.of(today.getYear(), month, day);
+                return date.isBefore(today) ? date.plusYears(1) : date;
+            } catch (Exception e) {
+                return null;
+            }
+        }
+
+        Matcher weekday = WEEKDAY_PATTERN.matcher(text);
+        if (weekday.find()) {
+            char c = weekday.group(2).charAt(0);
+            int dow = (c == '日' || c == '天') ? 7 : c - '0';
+            if (weekday.group(1) != null) {
+                return today.with(TemporalAdjusters.next(DayOfWeek.MONDAY)).plusDays(dow - 1);
+            }
+            return todayPassed ? today.with(TemporalAdjusters.next(DayOfWeek.of(dow)))
+                    : today.with(TemporalAdjusters.nextOrSame(DayOfWeek.of(dow)));
+        }
+        return null;
+    }
+
+    private static String extractTag(String text) {
+        Matcher remind = REMIND_TAG_PATTERN.matcher(text);
+        if (remind.find()) {
+            String tag = TAG_TRIM_PATTERN.matcher(remind.group(1)).replaceAll("");
+            if (!tag.isEmpty()) {
+                return tag.length() > 20 ? tag.substring(0, 20) : tag;
+            }
+        }
+        if (text.contains("起床") || text.contains("叫醒") || text.contains("叫我")) {
+            return "起床";
+        }
+        return "无";
+    }
+
+    private static String dayWord(LocalDate date, LocalDate today) {
+        long days = date.toEpochDay() - today.toEpochDay();
+        if (days == 0) return "今天";
+        if (days == 1) return "明天";
+        if (days == 2) return "后天";
+        return date.getMonthValue() + "月" + date.getDayOfMonth() + "日";
+    }
+
+    private static String repeatWord(String repeatDays) {
+        switch (repeatDays) {
+            case EVERY_DAY:
+                return "每天";
+            case WORKDAYS:
+                return "工作日";
+            case WEEKEND:
+                return "周末";
+            default:
+                StringBuilder sb = new StringBuilder("每周");
+                for (String day : repeatDays.split(",")) {
+                    sb.append(DAY_NAMES.charAt(Integer.parseInt(day) - 1));
+                }
+                return sb.append("，").toString();
+        }
+    }
+}
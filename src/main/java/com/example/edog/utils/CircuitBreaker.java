@@ -0,0 +1,113 @@
+package com.example.edog.utils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 轻量级熔断器
+ * CLOSED: 正常放行，连续失败达到阈值后进入 OPEN
+ * OPEN: 直接拒绝，冷却时间到后进入 HALF_OPEN
+ * HALF_OPEN: 只放行一个探测请求，成功则关闭，失败则重新打开
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED(0), OPEN(1), HALF_OPEN(2);
+
+        private final int code;
+
+        State(int code) {
+            this.code = code;
+        }
+
+        public int getCode() {
+            return code;
+        }
+    }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openDurationMs;
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicLong openedAt = new AtomicLong();
+    // 半开状态下是否已有探测请求在途
+    private final AtomicInteger probeInFlight = new AtomicInteger();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    public CircuitBreaker(String name, int failureThreshold, long openDurationMs) {
+        this.name = name;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openDurationMs = Math.max(0, openDurationMs);
+    }
+
+    /**
+     * 尝试获取调用许可
+     * @return true 允许调用；false 熔断中，调用方应直接走降级
+     */
+    public boolean tryAcquire() {
+        State current = state.get();
+        if (current == State.CLOSED) return true;
+
+        if (current == State.OPEN) {
+            if (System.currentTimeMillis() - openedAt.get() < openDurationMs) {
+                rejectedCount.incrementAndGet();
+                return false;
+            }
+            state.compareAndSet(State.OPEN, State.HALF_OPEN);
+        }
+
+        // HALF_OPEN：只允许一个探测请求
+        if (probeInFlight.compareAndSet(0, 1)) {
+            return true;
+        }
+        rejectedCount.incrementAndGet();
+        return false;
+    }
+
+    public void onSuccess() {
+        consecutiveFailures.set(0);
+        if (state.get() != State.CLOSED) {
+            state.set(State.CLOSED);
+        }
+        probeInFlight.set(0);
+    }
+
+    public void onFailure() {
+        State current = state.get();
+        if (current == State.HALF_OPEN) {
+            trip();
+            return;
+        }
+        if (consecutiveFailures.incrementAndGet() >= failureThreshold && current == State.CLOSED) {
+            trip();
+        }
+    }
+
+    /**
+     * 调用未真正发出（如被舱壁拒绝）时归还探测许可
+     */
+    public void release() {
+        probeInFlight.set(0);
+    }
+
+    private void trip() {
+        openedAt.set(System.currentTimeMillis());
+        state.set(State.OPEN);
+        probeInFlight.set(0);
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public String getName() {
+        return name;
+    }
+}
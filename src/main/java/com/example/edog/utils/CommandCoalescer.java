@@ -0,0 +1,176 @@
+package com.example.edog.utils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 控制指令合并器
+ * 同一目标（设备、用户或广播）在一个时间窗口内收到的指令合并后一次下发，例如拖动亮度滑块产生的连续请求：
+ * <ul>
+ *     <li>相对调节按轴求和：brightness_up 10 + brightness_up 5 + brightness_down 3 合并为 brightness_up 12</li>
+ *     <li>绝对设置后写覆盖：volume_set 40、volume_set 70 合并为 volume_set 70；其后的相对调节叠加到设置值上</li>
+ *     <li>无法识别的指令按原顺序透传</li>
+ * </ul>
+ * 注意设备端会把每次调节截断到 0-100，跨越边界的多次相对调节合并后结果可能与逐条执行略有不同。
+ *
+ * @param <R> 下发结果类型
+ */
+public class CommandCoalescer<R> {
+
+    /**
+     * 合并后的下发回调
+     */
+    @FunctionalInterface
+    public interface Sink<R> {
+        R send(String target, List<String> commands);
+    }
+
+    private static final String[][] AXES = {
+            // 轴名, 增加指令, 减少指令, 绝对设置指令
+            {"brightness", "brightness_up", "brightness_down", null},
+            {"tem", "tem_up", "tem_down", null},
+            {"volume", "volume_up", "volume_down", "volume_set"}
+    };
+
+    private final long windowMs;
+    private final ScheduledExecutorService scheduler;
+    private final Sink<R> sink;
+    private final Map<String, Pending<R>> pending = new ConcurrentHashMap<>();
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    private static final class AxisState {
+        final String[] axis;
+        Integer absolute;
+        int delta;
+
+        AxisState(String[] axis) {
+            this.axis = axis;
+        }
+    }
+
+    private static final class Pending<R> {
+        final CompletableFuture<R> result = new CompletableFuture<>();
+        final Map<String, AxisState> axes = new LinkedHashMap<>();
+        final List<String> passthrough = new ArrayList<>();
+        int count;
+        boolean flushed;
+    }
+
+    /**
+     * @param windowMs 合并窗口，0 表示不合并、立即下发
+     */
+    public CommandCoalescer(long windowMs, ScheduledExecutorService scheduler, Sink<R> sink) {
+        this.windowMs = Math.max(0, windowMs);
+        this.scheduler = scheduler;
+        this.sink = sink;
+    }
+
+    /**
+     * 提交一条指令
+     * @return 合并后实际下发的结果；同一窗口内的提交共享同一个结果
+     */
+    public CompletableFuture<R> submit(String target, String command) {
+        submitted.incrementAndGet();
+        if (windowMs == 0) {
+            try {
+                return CompletableFuture.completedFuture(sink.send(target, List.of(command)));
+            } catch (Exception e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+
+        while (true) {
+            Pending<R> p = pending.computeIfAbsent(target, k -> {
+                Pending<R> created = new Pending<>();
+                scheduler.schedule(() -> flush(k, created), windowMs, TimeUnit.MILLISECONDS);
+                return created;
+            });
+            synchronized (p) {
+                // 窗口已经关闭，重新开一个窗口
+                if (p.flushed) continue;
+                p.count++;
+                merge(p, command);
+                return p.result;
+            }
+        }
+    }
+
+    private void merge(Pending<R> p, String command) {
+        int comma = command.indexOf(',');
+        if (command.length() < 5 || command.charAt(0) != '(' || comma < 0 || !command.endsWith(")")) {
+            p.passthrough.add(command);
+            return;
+        }
+        String name = command.substring(1, comma).trim();
+        int value;
+        try {
+            value = Integer.parseInt(command.substring(comma + 1, command.length() - 1).trim());
+        } catch (NumberFormatException e) {
+            p.passthrough.add(command);
+            return;
+        }
+
+        for (String[] axis : AXES) {
+            int sign = name.equals(axis[1]) ? 1 : name.equals(axis[2]) ? -1 : 0;
+            boolean absolute = axis[3] != null && name.equals(axis[3]);
+            if (sign == 0 && !absolute) continue;
+
+            AxisState state = p.axes.computeIfAbsent(axis[0], k -> new AxisState(axis));
+            if (absolute) {
+                state.absolute = value;
+                state.delta = 0;
+            } else {
+                state.delta += sign * value;
+            }
+            return;
+        }
+        p.passthrough.add(command);
+    }
+
+    private void flush(String target, Pending<R> p) {
+        List<String> commands = new ArrayList<>();
+        synchronized (p) {
+            p.flushed = true;
+            pending.remove(target, p);
+            for (AxisState state : p.axes.values()) {
+                if (state.absolute != null) {
+                    int v = Math.max(0, Math.min(100, state.absolute + state.delta));
+                    commands.add("(" + state.axis[3] + "," + v + ")");
+                } else if (state.delta != 0) {
+                    int d = Math.min(100, Math.abs(state.delta));
+                    commands.add("(" + (state.delta > 0 ? state.axis[1] : state.axis[2]) + "," + d + ")");
+                }
+            }
+            commands.addAll(p.passthrough);
+            coalesced.addAndGet(p.count - commands.size());
+        }
+
+        try {
+            p.result.complete(sink.send(target, commands));
+        } catch (Exception e) {
+            p.result.completeExceptionally(e);
+        }
+    }
+
+    public long getWindowMs() {
+        return windowMs;
+    }
+
+    public long getSubmittedCount() {
+        return submitted.get();
+    }
+
+    /** 被合并掉（未单独下发）的指令数 */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+}
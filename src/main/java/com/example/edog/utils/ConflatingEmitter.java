@@ -0,0 +1,159 @@
+package com.example.edog.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * 合并推送的 SSE 订阅者
+ * 每个键（如设备ID）只保留最新一条待发送事件，新事件覆盖旧事件；同一时刻最多一个发送任务在执行。
+ * 慢客户端因此只会收到最新状态而不会积压，占用的内存与订阅的键数成正比。
+ * 事件内容在真正发送时才通过 Supplier 生成，读取的是发送那一刻的最新值。
+ * 心跳也作为一个键走同一个发送任务，不在调用线程上直接写连接；单次发送阻塞过久的订阅者由调用方通过
+ * {@link #dropIfStalled} 断开。
+ */
+public class ConflatingEmitter {
+
+    private static final Logger log = LoggerFactory.getLogger(ConflatingEmitter.class);
+
+    // 心跳占用的键，不会与设备ID冲突
+    private static final String HEARTBEAT_KEY = "\u0000heartbeat";
+
+    private final SseEmitter emitter;
+    private final Executor executor;
+    private final Map<String, Event> pending = new ConcurrentHashMap<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private volatile boolean closed;
+
+    // 正在发送的线程与开始时间，只在持有 sendLock 时修改，便于判断并打断阻塞的发送
+    private final Object sendLock = new Object();
+    private Thread sender;
+    private long sendingSince;
+
+    /**
+     * @param name 事件名；为 null 时作为注释行发送（心跳）
+     */
+    private record Event(String name, Supplier<?> payload) {
+    }
+
+    public ConflatingEmitter(SseEmitter emitter, Executor executor) {
+        this.emitter = emitter;
+        this.executor = executor;
+    }
+
+    /**
+     * 投递事件；同一个键尚未发出的旧事件被覆盖
+     * @param payload 发送时调用，返回 null 表示无需发送
+     */
+    public void offer(String key, String eventName, Supplier<?> payload) {
+        if (closed) return;
+        pending.put(key, new Event(eventName, payload));
+        schedule();
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::drain);
+            } catch (Exception e) {
+                scheduled.set(false);
+                log.warn("推送任务提交失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void drain() {
+        try {
+            Iterator<Map.Entry<String, Event>> it = pending.entrySet().iterator();
+            while (it.hasNext() && !closed) {
+                Map.Entry<String, Event> entry = it.next();
+                Event event = entry.getValue();
+                // 只在值未被覆盖时移除；被覆盖的新事件留到下一轮
+                pending.remove(entry.getKey(), event);
+                Object data = event.payload().get();
+                if (data == null) continue;
+                synchronized (sendLock) {
+                    sender = Thread.currentThread();
+                    sendingSince = System.currentTimeMillis();
+                }
+                try {
+                    emitter.send(event.name() == null
+                            ? SseEmitter.event().comment(String.valueOf(data))
+                            : SseEmitter.event().name(event.name()).data(data));
+                } finally {
+                    synchronized (sendLock) {
+                        sender = null;
+                        sendingSince = 0;
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.debug("推送失败，关闭订阅: {}", e.getMessage());
+            close();
+        } finally {
+            // dropIfStalled 可能刚打断本线程，不把中断状态带到线程池的下一个任务
+            Thread.interrupted();
+            // 发送期间被关闭时 close 没有结束连接，由发送线程完成
+            if (closed) completeQuietly();
+            scheduled.set(false);
+            // 发送期间到达的新事件
+            if (!closed && !pending.isEmpty()) schedule();
+        }
+    }
+
+    /**
+     * 投递一条注释行作为心跳，保持连接不被代理超时断开；与其他事件一样在推送线程中发送
+     */
+    public void heartbeat() {
+        offer(HEARTBEAT_KEY, null, () -> "ping");
+    }
+
+    /**
+     * 当前这次发送已阻塞超过 maxBlockMs 时关闭订阅并打断发送线程
+     * @return 是否因阻塞被关闭
+     */
+    public boolean dropIfStalled(long maxBlockMs) {
+        synchronized (sendLock) {
+            if (sender == null || System.currentTimeMillis() - sendingSince <= maxBlockMs) return false;
+            close();
+            sender.interrupt();
+            return true;
+        }
+    }
+
+    /**
+     * 关闭订阅；不会阻塞调用线程（正在发送时由发送线程在发送结束后结束连接）
+     */
+    public void close() {
+        if (closed) return;
+        closed = true;
+        pending.clear();
+        boolean sending;
+        synchronized (sendLock) {
+            sending = sender != null;
+        }
+        if (!sending) completeQuietly();
+    }
+
+    private void completeQuietly() {
+        try {
+            emitter.complete();
+        } catch (Exception ignored) {
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public SseEmitter getEmitter() {
+        return emitter;
+    }
+}
@@ -2,7 +2,16 @@ package com.example.edog.utils;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.http.converter.StringHttpMessageConverter;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestTemplate;
@@ -14,7 +23,10 @@ import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
 
+@Slf4j
 @Component
 public class CozeAPI {
 
@@ -23,12 +35,124 @@ public class CozeAPI {
     private static final String BOT_ID = "7589593616806068233";
 
     /**
-     * 调用 Coze 接口
+     * 熔断/限流/超时时的本地兜底回复，启动时预合成到短语缓存
+     */
+    public static final String FALLBACK_REPLY = "我现在有点忙，请稍后再问我吧";
+
+    // 剩余时间不足该值时不再发起请求，直接降级
+    private static final long MIN_REMAINING_MS = 300;
+
+    @Value("${kouzi.agent.timeout-ms:8000}")
+    private long defaultTimeoutMs = 8000;
+
+    @Value("${kouzi.agent.connect-timeout-ms:2000}")
+    private int connectTimeoutMs = 2000;
+
+    @Value("${kouzi.agent.max-concurrent:16}")
+    private int maxConcurrent = 16;
+
+    @Value("${kouzi.agent.breaker.failure-threshold:5}")
+    private int breakerFailureThreshold = 5;
+
+    @Value("${kouzi.agent.breaker.open-duration-ms:30000}")
+    private long breakerOpenDurationMs = 30000;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private CircuitBreaker breaker;
+    private Semaphore bulkhead;
+
+    private final AtomicLong bulkheadRejected = new AtomicLong();
+    private final AtomicLong deadlineRejected = new AtomicLong();
+    private Counter fallbackCounter;
+
+    @PostConstruct
+    public void init() {
+        breaker = new CircuitBreaker("coze", breakerFailureThreshold, breakerOpenDurationMs);
+        bulkhead = new Semaphore(Math.max(1, maxConcurrent));
+
+        if (meterRegistry != null) {
+            Gauge.builder("coze.breaker.state", breaker, b -> b.getState().getCode())
+                    .description("Coze 熔断器状态: 0-关闭, 1-打开, 2-半开")
+                    .register(meterRegistry);
+            FunctionCounter.builder("coze.calls.rejected", breaker, CircuitBreaker::getRejectedCount)
+                    .tag("reason", "breaker")
+                    .register(meterRegistry);
+            FunctionCounter.builder("coze.calls.rejected", bulkheadRejected, AtomicLong::get)
+                    .tag("reason", "bulkhead")
+                    .register(meterRegistry);
+            FunctionCounter.builder("coze.calls.rejected", deadlineRejected, AtomicLong::get)
+                    .tag("reason", "deadline")
+                    .register(meterRegistry);
+            Gauge.builder("coze.calls.inflight", bulkhead, s -> maxConcurrent - s.availablePermits())
+                    .register(meterRegistry);
+            fallbackCounter = Counter.builder("coze.calls.fallback").register(meterRegistry);
+        }
+    }
+
+    /**
+     * 调用 Coze 接口（使用默认超时）
      */
     public String[] CozeRequest(String question, String voiceId, Double speedRatio, boolean stream) {
+        return CozeRequest(question, voiceId, speedRatio, stream, System.currentTimeMillis() + defaultTimeoutMs);
+    }
+
+    /**
+     * 调用 Coze 接口
+     * 请求受熔断器和舱壁保护，超时时间由调用方传入的截止时间决定；
+     * 被拒绝或超时时返回 {@link #FALLBACK_REPLY}
+     *
+     * @param deadlineMillis 截止时间（epoch 毫秒）
+     */
+    public String[] CozeRequest(String question, String voiceId, Double speedRatio, boolean stream, long deadlineMillis) {
+        long remaining = deadlineMillis - System.currentTimeMillis();
+        if (remaining < MIN_REMAINING_MS) {
+            deadlineRejected.incrementAndGet();
+            return fallback("截止时间已到");
+        }
+
+        if (!breaker.tryAcquire()) {
+            return fallback("熔断器打开");
+        }
+
+        if (!bulkhead.tryAcquire()) {
+            breaker.release();
+            bulkheadRejected.incrementAndGet();
+            return fallback("并发请求已满");
+        }
+
+        try {
+            String[] result = doRequest(question, stream, deadlineMillis);
+            if (result == null) {
+                breaker.onFailure();
+                return fallback("请求失败");
+            }
+            breaker.onSuccess();
+            return result;
+        } finally {
+            bulkhead.release();
+        }
+    }
+
+    private String[] fallback(String reason) {
+        log.warn("Coze 调用降级，使用本地兜底回复: {}", reason);
+        if (fallbackCounter != null) fallbackCounter.increment();
+        return new String[]{ "", FALLBACK_REPLY };
+    }
+
+    public CircuitBreaker.State getBreakerState() {
+        return breaker.getState();
+    }
+
+    /**
+     * 实际发起 HTTP 请求
+     * @return 解析结果；网络异常、超时或 HTTP 错误时返回 null（计入熔断失败）
+     */
+    private String[] doRequest(String question, boolean stream, long deadlineMillis) {
         
         try {
-            RestTemplate restTemplate = createUtf8RestTemplate();
+            RestTemplate restTemplate = createUtf8RestTemplate(deadlineMillis);
             String url = "https://api.coze.cn/v3/chat";
 
             HttpHeaders headers = new HttpHeaders();
@@ -80,17 +204,22 @@ public class CozeAPI {
                 }
             } else {
                 System.err.println("[CozeAPI] HTTP 请求失败: " + response.getStatusCode());
-                return new String[]{ "", "请求失败" };
+                return null;
             }
 
         } catch (Exception e) {
-            e.printStackTrace();
-            return new String[]{ "", "系统异常" };
+            log.warn("Coze 请求异常: {}", e.getMessage());
+            return null;
         }
     }
 
-    private RestTemplate createUtf8RestTemplate() {
-        RestTemplate restTemplate = new RestTemplate();
+    private RestTemplate createUtf8RestTemplate(long deadlineMillis) {
+        int remaining = (int) Math.max(1, Math.min(Integer.MAX_VALUE, deadlineMillis - System.currentTimeMillis()));
+        SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
+        factory.setConnectTimeout(Math.min(connectTimeoutMs, remaining));
+        factory.setReadTimeout(remaining);
+
+        RestTemplate restTemplate = new RestTemplate(factory);
         restTemplate.getMessageConverters().removeIf(converter ->
                 converter instanceof StringHttpMessageConverter);
         restTemplate.getMessageConverters().add(0,
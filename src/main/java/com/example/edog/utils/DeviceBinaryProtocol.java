@@ -0,0 +1,210 @@
+package com.example.edog.utils;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * 设备二进制协议编解码
+ * 握手时协商（/esp32?proto=bin 或请求头 X-Lamp-Proto: bin），未协商的设备继续使用文本协议。
+ *
+ * 每条 WebSocket 二进制消息的格式：
+ * <pre>
+ *   opcode(1 字节) | seq(varint) | 负载
+ * </pre>
+ * <ul>
+ *     <li>CONTROL   负载为 命令编号(varint) + 参数(varint)，对应文本 "(brightness_up,10)"</li>
+ *     <li>TELEMETRY 负载为若干 字段编号(varint) + 取值(varint)，对应文本 "(80,50)" 或 JSON 上报</li>
+ *     <li>VITALS    负载为健康样本，格式同批量上传接口（见 {@link HealthSampleCodec}），对应 {"type":"vitals",...}</li>
+ *     <li>VITALS_ACK 负载为 最后入队的样本序号(varint) + 入队数(varint) + 无效数(varint) + 是否需重试(1 字节)</li>
+ *     <li>AUDIO     负载为若干 长度(varint) + Opus 帧，一条消息可打包多帧</li>
+ *     <li>TTS_START / TTS_END 无负载，对应 {"type":"tts","state":"start|end"}</li>
+ * </ul>
+ * seq 由发送方按消息递增（uint32 回绕），接收方据此发现丢包或乱序。
+ */
+public final class DeviceBinaryProtocol {
+
+    public static final int OP_CONTROL = 0x01;
+    public static final int OP_TELEMETRY = 0x02;
+    public static final int OP_VITALS = 0x03;
+    public static final int OP_VITALS_ACK = 0x04;
+    public static final int OP_AUDIO = 0x10;
+    public static final int OP_TTS_START = 0x11;
+    public static final int OP_TTS_END = 0x12;
+
+    /** 命令编号即下标 + 1，顺序只能追加 */
+    private static final String[] COMMANDS = {
+            "brightness_up", "brightness_down", "tem_up", "tem_down", "volume_up", "volume_down", "volume_set"
+    };
+
+    /** 遥测字段编号即下标 + 1，顺序只能追加 */
+    private static final int[] TELEMETRY_FIELDS = {
+            DeviceTelemetry.VOLUME, DeviceTelemetry.BRIGHTNESS, DeviceTelemetry.TEMPERATURE,
+            DeviceTelemetry.AMBIENT_LIGHT, DeviceTelemetry.PRESENCE, DeviceTelemetry.FIRMWARE
+    };
+
+    private DeviceBinaryProtocol() {
+    }
+
+    // ---------------------------------------------------------------- 编码
+
+    /**
+     * 把文本控制指令 "(name,value)" 编码为 CONTROL 消息
+     * @return 编码结果；命令未登记或格式不符时返回 null（调用方应回退到文本发送）
+     */
+    public static byte[] encodeControl(int seq, String command) {
+        if (command == null) return null;
+        int len = command.length();
+        if (len < 5 || command.charAt(0) != '(' || command.charAt(len - 1) != ')') return null;
+        int comma = command.indexOf(',');
+        if (comma < 0) return null;
+
+        int id = 0;
+        for (int i = 0; i < COMMANDS.length; i++) {
+            String name = COMMANDS[i];
+            if (name.length() == comma - 1 && command.startsWith(name, 1)) {
+                id = i + 1;
+                break;
+            }
+        }
+        if (id == 0) return null;
+
+        if (comma + 1 == len - 1) return null;
+        int value = 0;
+        for (int i = comma + 1; i < len - 1; i++) {
+            char c = command.charAt(i);
+            if (c < '0' || c > '9' || value > 100_000) return null;
+            value = value * 10 + (c - '0');
+        }
+
+        byte[] out = new byte[1 + varintSize(seq) + varintSize(id) + varintSize(value)];
+        int pos = 0;
+        out[pos++] = OP_CONTROL;
+        pos = writeVarint(out, pos, seq);
+        pos = writeVarint(out, pos, id);
+        writeVarint(out, pos, value);
+        return out;
+    }
+
+    /**
+     * 把 frames[from, to) 打包为一条 AUDIO 消息
+     */
+    public static byte[] encodeAudio(int seq, List<byte[]> frames, int from, int to) {
+        int size = 1 + varintSize(seq);
+        for (int i = from; i < to; i++) {
+            int n = frames.get(i).length;
+            size += varintSize(n) + n;
+        }
+        byte[] out = new byte[size];
+        int pos = 0;
+        out[pos++] = OP_AUDIO;
+        pos = writeVarint(out, pos, seq);
+        for (int i = from; i < to; i++) {
+            byte[] frame = frames.get(i);
+            pos = writeVarint(out, pos, frame.length);
+            System.arraycopy(frame, 0, out, pos, frame.length);
+            pos += frame.length;
+        }
+        return out;
+    }
+
+    /**
+     * 无负载的信令消息（TTS_START / TTS_END）
+     */
+    public static byte[] encodeSignal(int opcode, int seq) {
+        byte[] out = new byte[1 + varintSize(seq)];
+        out[0] = (byte) opcode;
+        writeVarint(out, 1, seq);
+        return out;
+    }
+
+    /**
+     * 健康样本确认消息
+     * @param lastSeq 最后一条入队样本的序号，没有入队时传 -1（编码为 0xFFFFFFFF）
+     */
+    public static byte[] encodeVitalsAck(int seq, long lastSeq, int accepted, int invalid, boolean retry) {
+        int last = (int) lastSeq;
+        byte[] out = new byte[1 + varintSize(seq) + varintSize(last) + varintSize(accepted) + varintSize(invalid) + 1];
+        out[0] = (byte) OP_VITALS_ACK;
+        int pos = writeVarint(out, 1, seq);
+        pos = writeVarint(out, pos, last);
+        pos = writeVarint(out, pos, accepted);
+        pos = writeVarint(out, pos, invalid);
+        out[pos] = (byte) (retry ? 1 : 0);
+        return out;
+    }
+
+    // ---------------------------------------------------------------- 解码
+
+    /**
+     * 读取消息头的 opcode，之后用 {@link #readVarint} 读取 seq，buffer 即位于负载起点
+     * @return opcode；空消息返回 -1
+     */
+    public static int readOpcode(ByteBuffer buffer) {
+        return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+    }
+
+    /**
+     * 读取 TELEMETRY 负载到复用的解析结果
+     * @return 是否至少解析出一个字段
+     */
+    public static boolean decodeTelemetry(ByteBuffer buffer, DeviceTelemetry out) {
+        out.clear();
+        while (buffer.hasRemaining()) {
+            long tag = readVarint(buffer);
+            long value = readVarint(buffer);
+            if (tag < 0 || value < 0) break;
+            if (tag < 1 || tag > TELEMETRY_FIELDS.length) continue;
+            out.set(TELEMETRY_FIELDS[(int) tag - 1], (int) Math.min(value, Integer.MAX_VALUE));
+        }
+        if (out.isEmpty()) return false;
+        out.kind = DeviceTelemetry.Kind.BINARY;
+        return true;
+    }
+
+    /**
+     * 读取 AUDIO 负载中的下一帧
+     * @return 帧数据；已读完或长度非法时返回 null
+     */
+    public static byte[] nextAudioFrame(ByteBuffer buffer) {
+        if (!buffer.hasRemaining()) return null;
+        long len = readVarint(buffer);
+        if (len <= 0 || len > buffer.remaining()) return null;
+        byte[] frame = new byte[(int) len];
+        buffer.get(frame);
+        return frame;
+    }
+
+    // ---------------------------------------------------------------- varint
+
+    /**
+     * 读取无符号 LEB128 varint（最多 32 位）
+     * @return 数值；数据不完整或超长返回 -1
+     */
+    public static long readVarint(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (!buffer.hasRemaining()) return -1;
+            int b = buffer.get() & 0xFF;
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value & 0xFFFFFFFFL;
+        }
+        return -1;
+    }
+
+    static int writeVarint(byte[] out, int pos, int value) {
+        while ((value & ~0x7F) != 0) {
+            out[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[pos++] = (byte) value;
+        return pos;
+    }
+
+    static int varintSize(int value) {
+        if ((value & ~0x7F) == 0) return 1;
+        if ((value & ~0x3FFF) == 0) return 2;
+        if ((value & ~0x1FFFFF) == 0) return 3;
+        if ((value & ~0xFFFFFFF) == 0) return 4;
+        return 5;
+    }
+}
@@ -1,17 +1,71 @@
 package com.example.edog.utils;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.nio.ByteBuffer;
 
 /**
  * 设备协议解析工具类
  * 负责解析设备上报的状态数据，如音量、灯光状态等
+ *
+ * 单遍手写扫描，不使用正则、不截取子串、不装箱，结果写入调用方复用的 {@link DeviceTelemetry}。支持的格式：
+ * <ul>
+ *     <li>灯光状态 "(亮度,色温)"，逗号可为全角</li>
+ *     <li>键值元组 "(volume,50)"、"(vol,50)"、"(lux,320)"、"(presence,1)"、"(fw,1.2.3)"，键不区分大小写</li>
+ *     <li>JSON 中的已知字段，如 {"volume":50,"presence":true,"firmware":"1.2.3"}</li>
+ * </ul>
+ * 新增上报字段时在 {@link #KEY_NAMES}/{@link #KEY_FIELDS} 中登记键名即可。
  */
 public class DeviceProtocolParser {
-    
-    private static final Pattern LT_PATTERN = Pattern.compile("^\\((\\d+)\\s*[，,]\\s*(\\d+)\\)$");
-    private static final Pattern VOLUME_PATTERN = Pattern.compile("^\\((?i:volume|vol)\\s*[，,]\\s*(\\d{1,3})\\)$");
-    private static final Pattern VOLUME_JSON_PATTERN = Pattern.compile("\"volume\"\\s*:\\s*(\\d{1,3})");
+
+    private static final String[] KEY_NAMES = {
+            "volume", "vol", "brightness", "temperature", "temp", "lux", "ambient", "presence", "firmware", "fw"
+    };
+    private static final int[] KEY_FIELDS = {
+            DeviceTelemetry.VOLUME, DeviceTelemetry.VOLUME,
+            DeviceTelemetry.BRIGHTNESS,
+            DeviceTelemetry.TEMPERATURE, DeviceTelemetry.TEMPERATURE,
+            DeviceTelemetry.AMBIENT_LIGHT, DeviceTelemetry.AMBIENT_LIGHT,
+            DeviceTelemetry.PRESENCE,
+            DeviceTelemetry.FIRMWARE, DeviceTelemetry.FIRMWARE
+    };
+
+    // 超过该值的数字不再累加，避免溢出（所有字段都会被截断到更小的范围）
+    private static final int NUMBER_CAP = 1_000_000;
+
+    private static final ThreadLocal<Sources> SOURCES = ThreadLocal.withInitial(Sources::new);
+    private static final ThreadLocal<DeviceTelemetry> LEGACY = ThreadLocal.withInitial(DeviceTelemetry::new);
+
+    /**
+     * 解析一条文本消息
+     * @param text 收到的文本消息（无需预先 trim）
+     * @param out 复用的解析结果，解析前会被清空
+     * @return 是否识别出至少一个字段
+     */
+    public static boolean parse(CharSequence text, DeviceTelemetry out) {
+        out.clear();
+        if (text == null) return false;
+        Sources sources = SOURCES.get();
+        CharSource src = sources.chars.reset(text);
+        try {
+            return scan(src, out);
+        } finally {
+            src.reset(null);
+        }
+    }
+
+    /**
+     * 直接解析 UTF-8 字节（position 到 limit），不移动 buffer 的 position
+     */
+    public static boolean parse(ByteBuffer utf8, DeviceTelemetry out) {
+        out.clear();
+        if (utf8 == null) return false;
+        Sources sources = SOURCES.get();
+        ByteSource src = sources.bytes.reset(utf8);
+        try {
+            return scan(src, out);
+        } finally {
+            src.reset(null);
+        }
+    }
 
     /**
      * 解析音量上报数据
@@ -19,19 +73,9 @@ public class DeviceProtocolParser {
      * @return 解析出的音量值(0-100)，如果未匹配则返回null
      */
     public static Integer parseVolume(String text) {
-        if (text == null) return null;
-        
-        Matcher vMatcher = VOLUME_PATTERN.matcher(text);
-        if (vMatcher.matches()) {
-            return parseIntSafe(vMatcher.group(1));
-        }
-        
-        Matcher vjMatcher = VOLUME_JSON_PATTERN.matcher(text);
-        if (vjMatcher.find()) {
-            return parseIntSafe(vjMatcher.group(1));
-        }
-        
-        return null;
+        DeviceTelemetry t = LEGACY.get();
+        if (!parse(text, t) || !t.has(DeviceTelemetry.VOLUME)) return null;
+        return t.getVolume();
     }
 
     /**
@@ -40,36 +84,280 @@ public class DeviceProtocolParser {
      * @return 格式化后的状态字符串 "(brightness,temperature)"，如果未匹配则返回null
      */
     public static String parseLightStatus(String text) {
-        if (text == null) return null;
-        
-        Matcher matcher = LT_PATTERN.matcher(text);
-        if (matcher.matches()) {
-            String brightness = matcher.group(1);
-            String temperature = matcher.group(2);
-            return formatLightStatus(brightness, temperature);
-        }
-        
-        return null;
+        DeviceTelemetry t = LEGACY.get();
+        if (!parse(text, t) || t.getKind() != DeviceTelemetry.Kind.LIGHT) return null;
+        return "(" + t.getBrightness() + "," + t.getTemperature() + ")";
     }
 
-    private static int parseIntSafe(String val) {
-        try {
-            int v = Integer.parseInt(val);
-            return Math.max(0, Math.min(100, v));
-        } catch (NumberFormatException e) {
+    // ---------------------------------------------------------------- 扫描
+
+    private static boolean scan(Source src, DeviceTelemetry out) {
+        int start = 0;
+        int end = src.length();
+        while (start < end && src.at(start) <= ' ') start++;
+        while (end > start && src.at(end - 1) <= ' ') end--;
+        if (start == end) return false;
+
+        if (src.at(start) == '(' && src.at(end - 1) == ')') {
+            if (scanTuple(src, start + 1, end - 1, out)) return true;
+            out.clear();
+        }
+        return scanJson(src, start, end, out);
+    }
+
+    /**
+     * "(数字,数字)" 或 "(键,值)"，from/to 不含括号
+     */
+    private static boolean scanTuple(Source src, int from, int to, DeviceTelemetry out) {
+        if (from >= to) return false;
+        int c = src.at(from);
+
+        if (isDigit(c)) {
+            int pos = src.readInt(from, to);
+            int brightness = src.value;
+            pos = src.skipSeparator(pos, to);
+            if (pos < 0 || pos >= to || !isDigit(src.at(pos))) return false;
+            pos = src.readInt(pos, to);
+            if (pos != to) return false;
+            out.kind = DeviceTelemetry.Kind.LIGHT;
+            out.set(DeviceTelemetry.BRIGHTNESS, brightness);
+            out.set(DeviceTelemetry.TEMPERATURE, src.value);
+            return true;
+        }
+
+        int keyEnd = from;
+        while (keyEnd < to && isKeyChar(src.at(keyEnd))) keyEnd++;
+        int field = src.field(from, keyEnd, true);
+        if (field == 0) return false;
+
+        int pos = src.skipSeparator(keyEnd, to);
+        if (pos < 0 || pos >= to) return false;
+        pos = src.readValue(field, pos, to);
+        if (pos != to) return false;
+        out.kind = DeviceTelemetry.Kind.TUPLE;
+        out.set(field, src.value);
+        return true;
+    }
+
+    /**
+     * 在文本中查找 "键": 值，只处理已登记的键，其余内容跳过
+     */
+    private static boolean scanJson(Source src, int from, int to, DeviceTelemetry out) {
+        int pos = from;
+        while (pos < to) {
+            if (src.at(pos) != '"') {
+                pos++;
+                continue;
+            }
+            int keyStart = pos + 1;
+            int keyEnd = keyStart;
+            while (keyEnd < to && src.at(keyEnd) != '"') keyEnd++;
+            if (keyEnd >= to) break;
+            pos = keyEnd + 1;
+
+            int field = src.field(keyStart, keyEnd, false);
+            if (field == 0) continue;
+
+            int p = skipSpaces(src, pos, to);
+            if (p >= to || src.at(p) != ':') continue;
+            p = skipSpaces(src, p + 1, to);
+            if (p >= to) break;
+
+            boolean quoted = src.at(p) == '"';
+            int valueStart = quoted ? p + 1 : p;
+            int valueEnd = src.readValue(field, valueStart, to);
+            if (valueEnd < 0 || valueEnd == valueStart) continue;
+            if (quoted) {
+                if (valueEnd >= to || src.at(valueEnd) != '"') continue;
+                valueEnd++;
+            }
+            out.set(field, src.value);
+            pos = valueEnd;
+        }
+        if (out.isEmpty()) return false;
+        out.kind = DeviceTelemetry.Kind.JSON;
+        return true;
+    }
+
+    private static int skipSpaces(Source src, int pos, int to) {
+        while (pos < to && src.at(pos) <= ' ') pos++;
+        return pos;
+    }
+
+    private static boolean isDigit(int c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isKeyChar(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+    }
+
+    private static int lower(int c) {
+        return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+    }
+
+    // ---------------------------------------------------------------- 输入源
+
+    /**
+     * 字符/字节输入的统一视图；value 保存最近一次读取的数值，避免返回对象
+     */
+    private abstract static class Source {
+        int value;
+
+        abstract int length();
+
+        abstract int at(int i);
+
+        /**
+         * 半角/全角逗号，两侧允许空白
+         * @return 逗号后第一个非空白位置；不是逗号返回 -1
+         */
+        int skipSeparator(int pos, int to) {
+            pos = skipSpaces(this, pos, to);
+            if (pos >= to) return -1;
+            int c = at(pos);
+            if (c == ',' || c == '，') {
+                pos++;
+            } else if (c == 0xEF && pos + 2 < to && at(pos + 1) == 0xBC && at(pos + 2) == 0x8C) {
+                // UTF-8 编码的全角逗号
+                pos += 3;
+            } else {
+                return -1;
+            }
+            return skipSpaces(this, pos, to);
+        }
+
+        int readInt(int pos, int to) {
+            int v = 0;
+            while (pos < to) {
+                int c = at(pos);
+                if (!isDigit(c)) break;
+                if (v < NUMBER_CAP) v = v * 10 + (c - '0');
+                pos++;
+            }
+            value = v;
+            return pos;
+        }
+
+        /**
+         * 按字段类型读取取值：数字、true/false、版本号 x.y.z
+         * @return 取值之后的位置；无法识别返回 -1
+         */
+        int readValue(int field, int pos, int to) {
+            if (pos >= to) return -1;
+            int c = at(pos);
+            if (field == DeviceTelemetry.PRESENCE && (c == 't' || c == 'f')) {
+                return readBoolean(pos, to);
+            }
+            if (field == DeviceTelemetry.FIRMWARE) {
+                return readVersion(pos, to);
+            }
+            if (!isDigit(c)) return -1;
+            return readInt(pos, to);
+        }
+
+        private int readBoolean(int pos, int to) {
+            if (matchesAt(pos, to, "true")) {
+                value = 1;
+                return pos + 4;
+            }
+            if (matchesAt(pos, to, "false")) {
+                value = 0;
+                return pos + 5;
+            }
+            return -1;
+        }
+
+        private int readVersion(int pos, int to) {
+            if (at(pos) == 'v' || at(pos) == 'V') pos++;
+            if (pos >= to || !isDigit(at(pos))) return -1;
+            int packed = 0;
+            for (int part = 0; part < 3; part++) {
+                pos = readInt(pos, to);
+                packed |= Math.min(value, part == 0 ? 0x7FFF : 0xFF) << (8 * (2 - part));
+                if (part < 2 && pos + 1 < to && at(pos) == '.' && isDigit(at(pos + 1))) {
+                    pos++;
+                } else {
+                    break;
+                }
+            }
+            value = packed;
+            return pos;
+        }
+
+        private boolean matchesAt(int pos, int to, String word) {
+            if (to - pos < word.length()) return false;
+            for (int i = 0; i < word.length(); i++) {
+                if (at(pos + i) != word.charAt(i)) return false;
+            }
+            return true;
+        }
+
+        /**
+         * 在已登记的键中查找 [from, to)
+         * @return 字段位；未登记返回 0
+         */
+        int field(int from, int to, boolean ignoreCase) {
+            int len = to - from;
+            for (int k = 0; k < KEY_NAMES.length; k++) {
+                String name = KEY_NAMES[k];
+                if (name.length() != len) continue;
+                int i = 0;
+                while (i < len) {
+                    int c = at(from + i);
+                    if ((ignoreCase ? lower(c) : c) != name.charAt(i)) break;
+                    i++;
+                }
+                if (i == len) return KEY_FIELDS[k];
+            }
             return 0;
         }
     }
 
-    private static String formatLightStatus(String brightness, String temperature) {
-         try {
-            int b = Integer.parseInt(brightness);
-            int t = Integer.parseInt(temperature);
-            b = Math.max(0, Math.min(100, b));
-            t = Math.max(0, Math.min(100, t));
-            return "(" + b + "," + t + ")";
-        } catch (NumberFormatException e) {
-            return null;
+    private static final class CharSource extends Source {
+        private CharSequence text;
+
+        CharSource reset(CharSequence text) {
+            this.text = text;
+            return this;
         }
+
+        @Override
+        int length() {
+            return text.length();
+        }
+
+        @Override
+        int at(int i) {
+            return text.charAt(i);
+        }
+    }
+
+    private static final class ByteSource extends Source {
+        private ByteBuffer buffer;
+        private int base;
+        private int length;
+
+        ByteSource reset(ByteBuffer buffer) {
+            this.buffer = buffer;
+            this.base = buffer != null ? buffer.position() : 0;
+            this.length = buffer != null ? buffer.remaining() : 0;
+            return this;
+        }
+
+        @Override
+        int length() {
+            return length;
+        }
+
+        @Override
+        int at(int i) {
+            return buffer.get(base + i) & 0xFF;
+        }
+    }
+
+    private static final class Sources {
+        final CharSource chars = new CharSource();
+        final ByteSource bytes = new ByteSource();
     }
 }
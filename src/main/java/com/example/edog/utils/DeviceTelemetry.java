@@ -0,0 +1,116 @@
+package com.example.edog.utils;
+
+/**
+ * 设备上报数据的解析结果
+ * 可变、可复用：同一连接的每条文本消息都解析进同一个实例，解析前由 {@link #clear()} 重置。
+ * 每个字段是否出现由位掩码记录，新增上报字段时只需增加一个位和对应的取值字段。
+ */
+public final class DeviceTelemetry {
+
+    /** 消息形态 */
+    public enum Kind {
+        /** 未识别 */
+        UNKNOWN,
+        /** 灯光状态 "(亮度,色温)" */
+        LIGHT,
+        /** 键值元组，如 "(volume,50)"、"(lux,320)" */
+        TUPLE,
+        /** JSON 对象，如 {"volume":50,"presence":true} */
+        JSON,
+        /** 二进制协议 TELEMETRY 消息 */
+        BINARY
+    }
+
+    public static final int VOLUME = 1;
+    public static final int BRIGHTNESS = 1 << 1;
+    public static final int TEMPERATURE = 1 << 2;
+    public static final int AMBIENT_LIGHT = 1 << 3;
+    public static final int PRESENCE = 1 << 4;
+    public static final int FIRMWARE = 1 << 5;
+
+    Kind kind = Kind.UNKNOWN;
+    int fields;
+    int volume;
+    int brightness;
+    int temperature;
+    int ambientLight;
+    boolean presence;
+    int firmware;
+
+    public void clear() {
+        kind = Kind.UNKNOWN;
+        fields = 0;
+    }
+
+    void set(int field, int value) {
+        fields |= field;
+        switch (field) {
+            case VOLUME -> volume = clampPercent(value);
+            case BRIGHTNESS -> brightness = clampPercent(value);
+            case TEMPERATURE -> temperature = clampPercent(value);
+            case AMBIENT_LIGHT -> ambientLight = Math.max(0, value);
+            case PRESENCE -> presence = value != 0;
+            case FIRMWARE -> firmware = value;
+            default -> fields &= ~field;
+        }
+    }
+
+    private static int clampPercent(int v) {
+        return Math.max(0, Math.min(100, v));
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public boolean has(int field) {
+        return (fields & field) == field;
+    }
+
+    public boolean isEmpty() {
+        return fields == 0;
+    }
+
+    public int getVolume() {
+        return volume;
+    }
+
+    public int getBrightness() {
+        return brightness;
+    }
+
+    public int getTemperature() {
+        return temperature;
+    }
+
+    /** 环境光照度（lux） */
+    public int getAmbientLight() {
+        return ambientLight;
+    }
+
+    /** 是否检测到有人 */
+    public boolean isPresence() {
+        return presence;
+    }
+
+    /** 固件版本，按 (major << 16) | (minor << 8) | patch 打包 */
+    public int getFirmware() {
+        return firmware;
+    }
+
+    public String getFirmwareString() {
+        return (firmware >>> 16) + "." + ((firmware >>> 8) & 0xFF) + "." + (firmware & 0xFF);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("DeviceTelemetry{").append(kind);
+        if (has(VOLUME)) sb.append(", volume=").append(volume);
+        if (has(BRIGHTNESS)) sb.append(", brightness=").append(brightness);
+        if (has(TEMPERATURE)) sb.append(", temperature=").append(temperature);
+        if (has(AMBIENT_LIGHT)) sb.append(", ambientLight=").append(ambientLight);
+        if (has(PRESENCE)) sb.append(", presence=").append(presence);
+        if (has(FIRMWARE)) sb.append(", firmware=").append(getFirmwareString());
+        return sb.append('}').toString();
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.edog.utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 健康样本批量上传的紧凑二进制格式（Content-Type: application/octet-stream，可再叠加 gzip）
+ * <pre>
+ *   version(1 字节) | count(varint) | baseSeq(varint) | baseTime(varint, 秒级时间戳)
+ *   每条样本：seqDelta(varint) | timeDelta(zigzag varint, 秒) | heartRate(varint) | breathingRate(varint)
+ * </pre>
+ * seq 与时间都相对上一条样本（第一条相对 base）递增编码，30 秒一条的常规数据每条约 4 字节。
+ */
+public final class HealthSampleCodec {
+
+    public static final int VERSION = 1;
+
+    /**
+     * 逐条接收解码出的样本
+     */
+    @FunctionalInterface
+    public interface SampleVisitor {
+        void accept(int index, long seq, long epochSecond, int heartRate, int breathingRate);
+    }
+
+    private HealthSampleCodec() {
+    }
+
+    /**
+     * 解码整个消息，每解出一条样本立即回调
+     * @return 样本数
+     * @throws IllegalArgumentException 版本不支持、数据截断或样本数超过 maxSamples
+     */
+    public static int decode(ByteBuffer buffer, int maxSamples, SampleVisitor visitor) {
+        if (!buffer.hasRemaining()) throw new IllegalArgumentException("消息为空");
+        int version = buffer.get() & 0xFF;
+        if (version != VERSION) throw new IllegalArgumentException("不支持的版本: " + version);
+
+        long count = read(buffer);
+        if (count > maxSamples) throw new IllegalArgumentException("样本数超过上限: " + count);
+        long seq = read(buffer);
+        long time = read(buffer);
+
+        for (int i = 0; i < count; i++) {
+            seq += read(buffer);
+            long zigzag = read(buffer);
+            time += (zigzag >>> 1) ^ -(zigzag & 1);
+            int heartRate = (int) read(buffer);
+            int breathingRate = (int) read(buffer);
+            visitor.accept(i, seq, time, heartRate, breathingRate);
+        }
+        return (int) count;
+    }
+
+    private static long read(ByteBuffer buffer) {
+        long value = DeviceBinaryProtocol.readVarint(buffer);
+        if (value < 0) throw new IllegalArgumentException("数据不完整");
+        return value;
+    }
+}
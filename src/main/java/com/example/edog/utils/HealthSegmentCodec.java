@@ -0,0 +1,193 @@
+package com.example.edog.utils;
+
+import com.example.edog.entity.HealthData;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 健康数据归档段的列式编码（一台设备一天一个段文件）
+ * <pre>
+ *   magic "LVS1"(4) | count(int) | minTime(long) | maxTime(long) | 5 列各自的字节长度(int x 5)
+ *   time 列：第一条为与 minTime 的差，之后为 delta-of-delta，zigzag varint（毫秒）
+ *   id   列：与上一条的差，zigzag varint
+ *   seq  列：0 表示无序号，否则为 zigzag(与上一个序号的差) + 1
+ *   heartRate / breathingRate 列：与上一条的差，zigzag varint
+ * </pre>
+ * 行按 (上传时间, ID) 升序排列。30 秒一条的常规数据时间列每条 1 字节，心率呼吸也多为 1 字节。
+ * 各列连续存放，读取时五个列游标同步前进，时间超出查询范围即停止，不必解码整个段。
+ * 时间按本地时间直接换算成毫秒（视为 UTC），与数据库中的 DATETIME 一一对应，不受夏令时影响。
+ */
+public final class HealthSegmentCodec {
+
+    private static final int MAGIC = 0x4C565331; // "LVS1"
+    private static final int COLUMNS = 5;
+    public static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 * COLUMNS;
+
+    private HealthSegmentCodec() {
+    }
+
+    public static long toMillis(LocalDateTime time) {
+        return time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    public static LocalDateTime fromMillis(long millis) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000), Math.floorMod(millis, 1000) * 1_000_000, ZoneOffset.UTC);
+    }
+
+    /**
+     * 编码一组已按 (上传时间, ID) 升序排列的数据
+     */
+    public static byte[] encode(List<HealthData> rows) {
+        int n = rows.size();
+        ByteArrayOutputStream time = new ByteArrayOutputStream(n * 2);
+        ByteArrayOutputStream id = new ByteArrayOutputStream(n * 3);
+        ByteArrayOutputStream seq = new ByteArrayOutputStream(n * 2);
+        ByteArrayOutputStream hr = new ByteArrayOutputStream(n);
+        ByteArrayOutputStream br = new ByteArrayOutputStream(n);
+
+        long minTime = n > 0 ? toMillis(rows.get(0).getUploadTime()) : 0;
+        long maxTime = n > 0 ? toMillis(rows.get(n - 1).getUploadTime()) : 0;
+        long prevTime = minTime, prevDelta = 0, prevId = 0, prevSeq = 0;
+        int prevHr = 0, prevBr = 0;
+        for (HealthData row : rows) {
+            long t = toMillis(row.getUploadTime());
+            long delta = t - prevTime;
+            writeVarLong(time, zigzag(delta - prevDelta));
+            prevDelta = delta;
+            prevTime = t;
+
+            writeVarLong(id, zigzag(row.getId() - prevId));
+            prevId = row.getId();
+
+            if (row.getSeq() == null) {
+                writeVarLong(seq, 0);
+            } else {
+                writeVarLong(seq, zigzag(row.getSeq() - prevSeq) + 1);
+                prevSeq = row.getSeq();
+            }
+
+            int h = row.getHeartRate() != null ? row.getHeartRate() : 0;
+            int b = row.getBreathingRate() != null ? row.getBreathingRate() : 0;
+            writeVarLong(hr, zigzag(h - prevHr));
+            writeVarLong(br, zigzag(b - prevBr));
+            prevHr = h;
+            prevBr = b;
+        }
+
+        ByteArrayOutputStream[] columns = {time, id, seq, hr, br};
+        int size = HEADER_SIZE;
+        for (ByteArrayOutputStream c : columns) size += c.size();
+        ByteBuffer out = ByteBuffer.allocate(size).order(ByteOrder.BIG_ENDIAN);
+        out.putInt(MAGIC).putInt(n).putLong(minTime).putLong(maxTime);
+        for (ByteArrayOutputStream c : columns) out.putInt(c.size());
+        for (ByteArrayOutputStream c : columns) out.put(c.toByteArray());
+        return out.array();
+    }
+
+    /** 段内最早一条的时间（毫秒） */
+    public static long minTime(ByteBuffer segment) {
+        checkHeader(segment);
+        return segment.getLong(segment.position() + 8);
+    }
+
+    /** 段内最晚一条的时间（毫秒） */
+    public static long maxTime(ByteBuffer segment) {
+        checkHeader(segment);
+        return segment.getLong(segment.position() + 16);
+    }
+
+    /**
+     * 按 (上传时间, ID) 升序解码时间在 [fromMillis, toMillis) 内、位于 (afterMillis, afterId) 之后的行
+     * @param afterId 为 null 时不限制游标
+     * @param limit 最多返回的行数
+     * @return 回调的行数
+     * @throws IllegalArgumentException 段文件损坏
+     */
+    public static int decode(ByteBuffer segment, String deviceId, long fromMillis, long toMillis,
+                             long afterMillis, Long afterId, int limit, Consumer<HealthData> sink) {
+        checkHeader(segment);
+        int base = segment.position();
+        int count = segment.getInt(base + 4);
+        long minTime = segment.getLong(base + 8);
+        long maxTime = segment.getLong(base + 16);
+        if (count == 0 || limit <= 0 || maxTime < fromMillis || minTime >= toMillis) return 0;
+        if (afterId != null && maxTime < afterMillis) return 0;
+
+        ByteBuffer[] cols = new ByteBuffer[COLUMNS];
+        int offset = base + HEADER_SIZE;
+        for (int i = 0; i < COLUMNS; i++) {
+            int length = segment.getInt(base + 24 + 4 * i);
+            if (length < 0 || offset + length > segment.limit()) throw new IllegalArgumentException("段文件损坏");
+            cols[i] = segment.duplicate();
+            cols[i].position(offset).limit(offset + length);
+            offset += length;
+        }
+
+        long t = minTime, delta = 0, id = 0, seq = 0;
+        int hr = 0, br = 0, emitted = 0;
+        for (int i = 0; i < count; i++) {
+            delta += unzigzag(readVarLong(cols[0]));
+            t += delta;
+            id += unzigzag(readVarLong(cols[1]));
+            long s = readVarLong(cols[2]);
+            if (s != 0) seq += unzigzag(s - 1);
+            hr += (int) unzigzag(readVarLong(cols[3]));
+            br += (int) unzigzag(readVarLong(cols[4]));
+
+            if (t >= toMillis) break;
+            if (t < fromMillis) continue;
+            if (afterId != null && (t < afterMillis || (t == afterMillis && id <= afterId))) continue;
+
+            HealthData row = new HealthData();
+            row.setId(id);
+            row.setDeviceId(deviceId);
+            row.setSeq(s != 0 ? seq : null);
+            row.setUploadTime(fromMillis(t));
+            row.setHeartRate(hr);
+            row.setBreathingRate(br);
+            sink.accept(row);
+            if (++emitted >= limit) break;
+        }
+        return emitted;
+    }
+
+    private static void checkHeader(ByteBuffer segment) {
+        int base = segment.position();
+        if (segment.limit() - base < HEADER_SIZE || segment.getInt(base) != MAGIC) {
+            throw new IllegalArgumentException("不是有效的归档段");
+        }
+    }
+
+    private static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static long unzigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long v) {
+        while ((v & ~0x7FL) != 0) {
+            out.write((int) (v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+    private static long readVarLong(ByteBuffer in) {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (!in.hasRemaining()) throw new IllegalArgumentException("段文件损坏");
+            byte b = in.get();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return result;
+        }
+        throw new IllegalArgumentException("段文件损坏");
+    }
+}
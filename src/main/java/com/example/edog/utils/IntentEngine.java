@@ -0,0 +1,464 @@
+package com.example.edog.utils;
+
+import com.example.edog.enums.ControlCommandEnum;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 本地意图引擎
+ * 启动时把关键词表编译成一个 Aho-Corasick 自动机，一次扫描同时完成：
+ * 完整短语匹配、对象(音量/亮度/色温)与方向(调高/调低)识别、数字参数提取（"百分之五十"、"50%"、"二十"）。
+ * 冲突按特异性确定性地解决：完整短语 > 隐含对象的动词(调亮) > 对象+方向组合 > 仅方向（默认音量，兼容旧行为）。
+ * 英文方向词（up/down 等）只在有明确对象时生效；弱对象"灯"只配合强方向词；含疑问词的句子不是控制命令。
+ * 数字只有配合设置动词、百分号或紧跟在对象之后（"亮度50"）才算绝对设置，"灯光的五个作用" 之类交给智能体。
+ * 扫描过程只使用基本类型局部变量，不做任何分配。
+ */
+public final class IntentEngine {
+
+    // 关键词类别
+    private static final int KIND_PHRASE = 0;      // 直接映射到命令，arg = 命令 ordinal
+    private static final int KIND_SUBJECT = 1;     // 对象，arg = SUBJECT_*
+    private static final int KIND_WEAK_SUBJECT = 2;
+    private static final int KIND_UP = 3;
+    private static final int KIND_DOWN = 4;
+    private static final int KIND_WEAK_UP = 5;     // 单字方向，只在对象之后才生效（对应旧正则 "音量.*[加增高大升]"）
+    private static final int KIND_WEAK_DOWN = 6;
+    private static final int KIND_SET = 7;
+    private static final int KIND_PERCENT = 8;
+    private static final int KIND_EN_UP = 9;       // 英文方向词，只在有明确对象时生效（对应旧正则 "volume.*up"、"increase.*volume"）
+    private static final int KIND_EN_DOWN = 10;
+    private static final int KIND_QUESTION = 11;   // 疑问词，出现即不按控制命令处理
+
+    private static final int SUBJECT_NONE = -1;
+    private static final int SUBJECT_VOLUME = 0;
+    private static final int SUBJECT_BRIGHTNESS = 1;
+    private static final int SUBJECT_TEMP = 2;
+
+    private static final ControlCommandEnum[] COMMANDS = ControlCommandEnum.values();
+
+    // 自动机（数组化存储）
+    private static final char[][] EDGE_CHARS;
+    private static final int[][] EDGE_TARGETS;
+    private static final int[] FAIL;
+    private static final int[] OUTPUT;       // 以该节点结尾的最长关键词，-1 表示无
+    private static final int[] DICT_LINK;    // 沿失败链下一个有输出的节点，-1 表示无
+
+    // 关键词表
+    private static final int[] KW_KIND;
+    private static final int[] KW_ARG;
+    private static final int[] KW_LEN;
+    private static final boolean[] KW_LATIN;  // 英文关键词，要求前后不是字母
+
+    static {
+        List<String> words = new ArrayList<>();
+        List<int[]> meta = new ArrayList<>();
+
+        for (ControlCommandEnum command : COMMANDS) {
+            for (String phrase : command.getPhrases()) {
+                add(words, meta, phrase, KIND_PHRASE, command.ordinal());
+            }
+        }
+        addAll(words, meta, KIND_SUBJECT, SUBJECT_VOLUME, "音量", "声音", "volume");
+        addAll(words, meta, KIND_SUBJECT, SUBJECT_BRIGHTNESS, "亮度", "灯光", "brightness");
+        addAll(words, meta, KIND_SUBJECT, SUBJECT_TEMP, "色温", "temperature");
+        addAll(words, meta, KIND_WEAK_SUBJECT, SUBJECT_BRIGHTNESS, "灯");
+        addAll(words, meta, KIND_UP, 0, "调高", "提高", "增大", "加大", "升高", "大一点", "大点");
+        addAll(words, meta, KIND_DOWN, 0, "调低", "降低", "减小", "减少", "小一点", "小点");
+        addAll(words, meta, KIND_EN_UP, 0, "up", "increase");
+        addAll(words, meta, KIND_EN_DOWN, 0, "down", "decrease");
+        addAll(words, meta, KIND_QUESTION, 0, "为什么", "怎么", "吗");
+        addAll(words, meta, KIND_WEAK_UP, 0, "加", "增", "高", "大", "升", "亮", "暖");
+        addAll(words, meta, KIND_WEAK_DOWN, 0, "减", "降", "低", "小", "暗", "冷");
+        addAll(words, meta, KIND_SET, 0, "调到", "调成", "调至", "设为", "设成", "设到", "设置为", "设置到", "set");
+        addAll(words, meta, KIND_PERCENT, 0, "百分之");
+
+        int n = words.size();
+        KW_KIND = new int[n];
+        KW_ARG = new int[n];
+        KW_LEN = new int[n];
+        KW_LATIN = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            KW_KIND[i] = meta.get(i)[0];
+            KW_ARG[i] = meta.get(i)[1];
+            KW_LEN[i] = words.get(i).length();
+            KW_LATIN[i] = isLatinLetter(words.get(i).charAt(0));
+        }
+
+        // 1. 构建 trie
+        List<StringBuilder> chars = new ArrayList<>();
+        List<List<Integer>> targets = new ArrayList<>();
+        List<Integer> output = new ArrayList<>();
+        chars.add(new StringBuilder());
+        targets.add(new ArrayList<>());
+        output.add(-1);
+        for (int w = 0; w < n; w++) {
+            String word = words.get(w);
+            int node = 0;
+            for (int i = 0; i < word.length(); i++) {
+                char c = word.charAt(i);
+                int idx = chars.get(node).indexOf(String.valueOf(c));
+                if (idx >= 0) {
+                    node = targets.get(node).get(idx);
+                } else {
+                    int next = chars.size();
+                    chars.add(new StringBuilder());
+                    targets.add(new ArrayList<>());
+                    output.add(-1);
+                    chars.get(node).append(c);
+                    targets.get(node).add(next);
+                    node = next;
+                }
+            }
+            int existing = output.get(node);
+            if (existing < 0) output.set(node, w);
+        }
+
+        int nodes = chars.size();
+        EDGE_CHARS = new char[nodes][];
+        EDGE_TARGETS = new int[nodes][];
+        OUTPUT = new int[nodes];
+        for (int i = 0; i < nodes; i++) {
+            // 边按字符排序，便于二分查找
+            char[] cs = chars.get(i).toString().toCharArray();
+            Integer[] order = new Integer[cs.length];
+            for (int k = 0; k < cs.length; k++) order[k] = k;
+            Arrays.sort(order, (a, b) -> Character.compare(cs[a], cs[b]));
+            EDGE_CHARS[i] = new char[cs.length];
+            EDGE_TARGETS[i] = new int[cs.length];
+            for (int k = 0; k < cs.length; k++) {
+                EDGE_CHARS[i][k] = cs[order[k]];
+                EDGE_TARGETS[i][k] = targets.get(i).get(order[k]);
+            }
+            OUTPUT[i] = output.get(i);
+        }
+
+        // 2. BFS 计算失败指针与输出链
+        FAIL = new int[nodes];
+        DICT_LINK = new int[nodes];
+        Arrays.fill(DICT_LINK, -1);
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int t : EDGE_TARGETS[0]) {
+            FAIL[t] = 0;
+            queue.add(t);
+        }
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            for (int k = 0; k < EDGE_CHARS[node].length; k++) {
+                char c = EDGE_CHARS[node][k];
+                int child = EDGE_TARGETS[node][k];
+                int f = FAIL[node];
+                while (f != 0 && edge(f, c) < 0) f = FAIL[f];
+                int target = edge(f, c);
+                FAIL[child] = (target >= 0 && target != child) ? target : 0;
+                int fc = FAIL[child];
+                DICT_LINK[child] = OUTPUT[fc] >= 0 ? fc : DICT_LINK[fc];
+                queue.add(child);
+            }
+        }
+    }
+
+    private IntentEngine() {
+    }
+
+    private static void add(List<String> words, List<int[]> meta, String word, int kind, int arg) {
+        words.add(word.toLowerCase());
+        meta.add(new int[]{kind, arg});
+    }
+
+    private static void addAll(List<String> words, List<int[]> meta, int kind, int arg, String... list) {
+        for (String word : list) add(words, meta, word, kind, arg);
+    }
+
+    private static boolean isLatinLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static int edge(int node, char c) {
+        char[] cs = EDGE_CHARS[node];
+        int idx = Arrays.binarySearch(cs, c);
+        return idx >= 0 ? EDGE_TARGETS[node][idx] : -1;
+    }
+
+    /**
+     * 意图匹配结果：命令 + 参数（相对调节的步长或绝对设置的目标值）
+     */
+    public static final class IntentMatch {
+        private final ControlCommandEnum command;
+        private final int value;
+
+        public IntentMatch(ControlCommandEnum command, int value) {
+            this.command = command;
+            this.value = value;
+        }
+
+        public ControlCommandEnum getCommand() {
+            return command;
+        }
+
+        public int getValue() {
+            return value;
+        }
+
+        /**
+         * 发送给设备的命令文本；亮度/色温的绝对设置需由调用方结合设备当前状态换算
+         */
+        public String toDeviceCommand() {
+            return command.format(value);
+        }
+
+        public String getConfirmText() {
+            return command.getConfirmText(value);
+        }
+
+        @Override
+        public String toString() {
+            return command + "(" + value + ")";
+        }
+    }
+
+    /**
+     * 识别文本中的控制意图
+     * @return 匹配结果；不是本地可处理的控制命令时返回 null
+     */
+    public static IntentMatch match(CharSequence text) {
+        if (text == null || text.length() == 0) return null;
+
+        int bestPhrase = -1, bestPhraseLen = 0;
+        int subject = SUBJECT_NONE, subjectEnd = -1;
+        int weakSubject = SUBJECT_NONE;
+        int strongDir = 0;                 // 1 = up, -1 = down
+        int weakDirAfterSubject = 0;
+        int latinDir = 0;
+        boolean setMarker = false;
+        boolean percentMarker = false;
+
+        // 数字解析状态
+        int number = -1;                   // 最后一个完整数字
+        int numberStart = -1;
+        boolean numberAfterSubject = false; // 数字紧跟在对象之后（中间只有空白）
+        int curTotal = 0, curUnit = 0, curStart = -1;
+        boolean inNumber = false, curHasDigit = false;
+
+        int state = 0;
+        int len = text.length();
+        for (int i = 0; i <= len; i++) {
+            char c = i < len ? Character.toLowerCase(text.charAt(i)) : '\0';
+
+            // ---- 数字（阿拉伯数字与中文数字） ----
+            int digit = i < len ? digitOf(c) : -2;
+            if (digit >= 0 && digit <= 9) {
+                if (!inNumber) {
+                    inNumber = true;
+                    curTotal = 0;
+                    curUnit = 0;
+                    curStart = i;
+                    curHasDigit = false;
+                }
+                if (c >= '0' && c <= '9') {
+                    curUnit = curUnit * 10 + digit;
+                } else {
+                    curUnit = digit;
+                }
+                curHasDigit = true;
+            } else if (digit == 10 || digit == 100) {
+                if (!inNumber) {
+                    inNumber = true;
+                    curTotal = 0;
+                    curUnit = 0;
+                    curStart = i;
+                    curHasDigit = false;
+                }
+                curTotal += (curUnit == 0 ? 1 : curUnit) * digit;
+                curUnit = 0;
+                curHasDigit = true;
+            } else if (inNumber) {
+                inNumber = false;
+                // "一点"、"一些"、"一下" 是量词而不是参数
+                boolean measureWord = c == '点' || c == '些' || c == '下';
+                if (curHasDigit && !measureWord) {
+                    number = Math.min(curTotal + curUnit, 1000);
+                    numberStart = curStart;
+                    numberAfterSubject = subject != SUBJECT_NONE && blankBetween(text, subjectEnd + 1, curStart);
+                    if (c == '%' || c == '％') percentMarker = true;
+                }
+            }
+            if (i == len) break;
+
+            // ---- Aho-Corasick 转移 ----
+            int next;
+            while ((next = edge(state, c)) < 0 && state != 0) state = FAIL[state];
+            state = next < 0 ? 0 : next;
+
+            for (int node = OUTPUT[state] >= 0 ? state : DICT_LINK[state]; node >= 0; node = DICT_LINK[node]) {
+                int kw = OUTPUT[node];
+                int kind = KW_KIND[kw];
+                int kwStart = i - KW_LEN[kw] + 1;
+                // 英文关键词必须是完整单词，"update" 里的 "up" 不算
+                if (KW_LATIN[kw] && ((kwStart > 0 && isLatinLetter(text.charAt(kwStart - 1)))
+                        || (i + 1 < len && isLatinLetter(text.charAt(i + 1))))) {
+                    continue;
+                }
+                switch (kind) {
+                    case KIND_PHRASE:
+                        if (KW_LEN[kw] > bestPhraseLen) {
+                            bestPhrase = KW_ARG[kw];
+                            bestPhraseLen = KW_LEN[kw];
+                        }
+                        break;
+                    case KIND_SUBJECT:
+                        if (subject == SUBJECT_NONE) {
+                            subject = KW_ARG[kw];
+                            subjectEnd = i;
+                        }
+                        break;
+                    case KIND_WEAK_SUBJECT:
+                        if (weakSubject == SUBJECT_NONE) weakSubject = KW_ARG[kw];
+                        break;
+                    case KIND_UP:
+                    case KIND_DOWN:
+                        if (strongDir == 0) strongDir = kind == KIND_UP ? 1 : -1;
+                        break;
+                    case KIND_WEAK_UP:
+                    case KIND_WEAK_DOWN:
+                        if (subject != SUBJECT_NONE && kwStart > subjectEnd && weakDirAfterSubject == 0) {
+                            weakDirAfterSubject = kind == KIND_WEAK_UP ? 1 : -1;
+                        }
+                        break;
+                    case KIND_EN_UP:
+                    case KIND_EN_DOWN:
+                        if (latinDir == 0) latinDir = kind == KIND_EN_UP ? 1 : -1;
+                        break;
+                    case KIND_QUESTION:
+                        return null;
+                    case KIND_SET:
+                        setMarker = true;
+                        break;
+                    case KIND_PERCENT:
+                        percentMarker = true;
+                        // "百分之" 里的 "百" 被当成了数字，丢弃
+                        if (numberStart == kwStart) number = -1;
+                        if (inNumber && curStart == kwStart) inNumber = false;
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+
+        return resolve(bestPhrase, subject, weakSubject, strongDir, weakDirAfterSubject, latinDir,
+                setMarker, percentMarker || numberAfterSubject, number);
+    }
+
+    private static boolean blankBetween(CharSequence text, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (!Character.isWhitespace(text.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param setMarker 有设置动词（调到、设为等）
+     * @param valueMarker 数字带百分号，或紧跟在对象之后
+     */
+    private static IntentMatch resolve(int bestPhrase, int subject, int weakSubject, int strongDir,
+                                       int weakDirAfterSubject, int latinDir, boolean setMarker,
+                                       boolean valueMarker, int number) {
+        // 1. 完整短语（最长者优先）
+        if (bestPhrase >= 0) {
+            ControlCommandEnum command = COMMANDS[bestPhrase];
+            if (number > 0 && isRelative(command)) {
+                return new IntentMatch(generalize(command), clampStep(number));
+            }
+            return new IntentMatch(command, command.getDefaultValue());
+        }
+
+        int effectiveSubject = subject != SUBJECT_NONE ? subject : weakSubject;
+        // 单字方向与英文方向词只配合明确对象；弱对象"灯"必须有强方向词
+        int dir = strongDir;
+        if (dir == 0 && subject != SUBJECT_NONE) dir = weakDirAfterSubject != 0 ? weakDirAfterSubject : latinDir;
+
+        // 2. 绝对设置：数字必须有设置动词、百分号或紧跟对象，否则只是句子里碰巧出现的数字
+        if (number >= 0 && (setMarker || (valueMarker && subject != SUBJECT_NONE && dir == 0))) {
+            int target = Math.min(number, 100);
+            switch (effectiveSubject) {
+                case SUBJECT_BRIGHTNESS:
+                    return new IntentMatch(ControlCommandEnum.BRIGHTNESS_SET, target);
+                case SUBJECT_TEMP:
+                    return new IntentMatch(ControlCommandEnum.TEMP_SET, target);
+                default:
+                    return new IntentMatch(ControlCommandEnum.VOLUME_SET, target);
+            }
+        }
+
+        // 3. 对象 + 方向；没有对象时沿用旧行为默认调节音量
+        if (dir != 0) {
+            ControlCommandEnum command;
+            switch (effectiveSubject) {
+                case SUBJECT_BRIGHTNESS:
+                    command = dir > 0 ? ControlCommandEnum.BRIGHTNESS_UP : ControlCommandEnum.BRIGHTNESS_DOWN;
+                    break;
+                case SUBJECT_TEMP:
+                    command = dir > 0 ? ControlCommandEnum.TEMP_UP : ControlCommandEnum.TEMP_DOWN;
+                    break;
+                default:
+                    command = dir > 0 ? ControlCommandEnum.VOLUME_UP : ControlCommandEnum.VOLUME_DOWN;
+                    break;
+            }
+            return new IntentMatch(command, number > 0 ? clampStep(number) : command.getDefaultValue());
+        }
+
+        return null;
+    }
+
+    private static boolean isRelative(ControlCommandEnum command) {
+        return command != ControlCommandEnum.LIGHT_ON && command != ControlCommandEnum.LIGHT_OFF && !command.isAbsolute();
+    }
+
+    /**
+     * 带数字参数时，固定步长的短语命令换成通用命令（确认语不再写死 10%）
+     */
+    private static ControlCommandEnum generalize(ControlCommandEnum command) {
+        switch (command) {
+            case BRIGHTNESS_UP_SMALL:
+                return ControlCommandEnum.BRIGHTNESS_UP;
+            case BRIGHTNESS_DOWN_SMALL:
+                return ControlCommandEnum.BRIGHTNESS_DOWN;
+            case TEMP_UP_SMALL:
+                return ControlCommandEnum.TEMP_UP;
+            case TEMP_DOWN_SMALL:
+                return ControlCommandEnum.TEMP_DOWN;
+            default:
+                return command;
+        }
+    }
+
+    private static int clampStep(int value) {
+        return Math.max(1, Math.min(100, value));
+    }
+
+    /**
+     * 数字字符的值：0-9 为个位数字，10/100 为 "十"/"百"，-1 表示非数字
+     */
+    private static int digitOf(char c) {
+        if (c >= '0' && c <= '9') return c - '0';
+        switch (c) {
+            case '零': return 0;
+            case '一': return 1;
+            case '二':
+            case '两': return 2;
+            case '三': return 3;
+            case '四': return 4;
+            case '五': return 5;
+            case '六': return 6;
+            case '七': return 7;
+            case '八': return 8;
+            case '九': return 9;
+            case '十': return 10;
+            case '百': return 100;
+            default: return -1;
+        }
+    }
+}
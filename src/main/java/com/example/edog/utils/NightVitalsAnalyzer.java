@@ -0,0 +1,149 @@
+package com.example.edog.utils;
+
+import com.example.edog.entity.HealthDailySummary;
+import com.example.edog.entity.HealthData;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 单台设备一晚样本的睡眠与生命体征分析，无状态、线程安全
+ * <ul>
+ *     <li>静息心率：5 分钟（restingWindowMs）滑动平均心率的最小值</li>
+ *     <li>入睡时间：窗口开始 baselineMs 内的心率中位数作为清醒基线，滑动平均首次降到基线与静息心率的中点以下
+ *         并持续 onsetSustainMs 的起点</li>
+ *     <li>呼吸规律性：入睡后（无法判断入睡时为整晚）呼吸频率的变异系数</li>
+ *     <li>离群样本：与滑动平均的残差偏离残差中位数超过 outlierZ 个稳健标准差（1.4826 × MAD），
+ *         清醒与睡眠之间的整体变化不算离群</li>
+ * </ul>
+ * 心率或呼吸为 0 的样本视为不在床，不参与计算。
+ */
+public final class NightVitalsAnalyzer {
+
+    /**
+     * 分析参数，所有设备共享
+     */
+    public static final class Config {
+        public long restingWindowMs = 5 * 60_000L;
+        public long baselineMs = 30 * 60_000L;
+        public long onsetSustainMs = 15 * 60_000L;
+        public double outlierZ = 3.5;
+        /** 少于此样本数的夜晚不计算入睡时间与静息心率 */
+        public int minSamples = 60;
+    }
+
+    private NightVitalsAnalyzer() {
+    }
+
+    /**
+     * @param samples 按时间升序的样本
+     * @return 汇总结果（未填写设备ID、日期与计算时间）；没有有效样本时返回 null
+     */
+    public static HealthDailySummary analyze(List<HealthData> samples, Config config) {
+        int n = 0;
+        long[] times = new long[samples.size()];
+        int[] hr = new int[samples.size()];
+        int[] br = new int[samples.size()];
+        for (HealthData d : samples) {
+            if (d.getHeartRate() == null || d.getBreathingRate() == null
+                    || d.getHeartRate() <= 0 || d.getBreathingRate() <= 0) continue;
+            times[n] = HealthSegmentCodec.toMillis(d.getUploadTime());
+            hr[n] = d.getHeartRate();
+            br[n] = d.getBreathingRate();
+            n++;
+        }
+        if (n == 0) return null;
+
+        HealthDailySummary summary = new HealthDailySummary();
+        summary.setSampleCount(n);
+        summary.setAvgHeartRate(mean(hr, 0, n));
+        summary.setAvgBreathingRate(mean(br, 0, n));
+        double[] rolling = rollingMean(times, hr, n, config.restingWindowMs);
+        summary.setHeartRateOutliers(outliers(hr, rolling, n, config.outlierZ));
+        summary.setBreathingRateOutliers(outliers(br, rollingMean(times, br, n, config.restingWindowMs), n, config.outlierZ));
+
+        int onsetIndex = -1;
+        if (n >= config.minSamples) {
+            double resting = Double.MAX_VALUE;
+            for (int i = 0; i < n; i++) {
+                // 窗口未满的前几条不参与，避免单条低值被当成静息心率
+                if (times[i] - times[0] >= config.restingWindowMs) resting = Math.min(resting, rolling[i]);
+            }
+            if (resting == Double.MAX_VALUE) resting = rolling[n - 1];
+            summary.setRestingHeartRate((int) Math.round(resting));
+
+            int baselineEnd = 0;
+            while (baselineEnd < n && times[baselineEnd] - times[0] < config.baselineMs) baselineEnd++;
+            double baseline = median(Arrays.copyOf(hr, baselineEnd), baselineEnd);
+            double threshold = (baseline + resting) / 2;
+            int runStart = -1;
+            for (int i = 0; i < n; i++) {
+                if (rolling[i] > threshold) {
+                    runStart = -1;
+                } else {
+                    if (runStart < 0) runStart = i;
+                    if (times[i] - times[runStart] >= config.onsetSustainMs) {
+                        onsetIndex = runStart;
+                        break;
+                    }
+                }
+            }
+            if (onsetIndex >= 0) summary.setSleepOnset(HealthSegmentCodec.fromMillis(times[onsetIndex]));
+        }
+
+        int from = Math.max(0, onsetIndex);
+        double breathingMean = mean(br, from, n);
+        double sq = 0;
+        for (int i = from; i < n; i++) sq += (br[i] - breathingMean) * (br[i] - breathingMean);
+        summary.setBreathingCv(n - from > 1 ? Math.sqrt(sq / (n - from - 1)) / breathingMean : null);
+        return summary;
+    }
+
+    /**
+     * 以每条样本结尾、长度为 windowMs 的时间窗口内的平均值
+     */
+    private static double[] rollingMean(long[] times, int[] values, int n, long windowMs) {
+        double[] result = new double[n];
+        long sum = 0;
+        int start = 0;
+        for (int i = 0; i < n; i++) {
+            sum += values[i];
+            while (times[i] - times[start] >= windowMs) sum -= values[start++];
+            result[i] = (double) sum / (i - start + 1);
+        }
+        return result;
+    }
+
+    private static int outliers(int[] values, double[] rolling, int n, double z) {
+        double[] residuals = new double[n];
+        for (int i = 0; i < n; i++) residuals[i] = values[i] - rolling[i];
+        double[] sorted = Arrays.copyOf(residuals, n);
+        Arrays.sort(sorted);
+        double median = n % 2 == 1 ? sorted[n / 2] : (sorted[n / 2 - 1] + sorted[n / 2]) / 2;
+        for (int i = 0; i < n; i++) sorted[i] = Math.abs(residuals[i] - median);
+        Arrays.sort(sorted);
+        // MAD 下限取 0.5，避免读数非常平稳时一点波动都算离群
+        double mad = Math.max(0.5, n % 2 == 1 ? sorted[n / 2] : (sorted[n / 2 - 1] + sorted[n / 2]) / 2);
+        double limit = z * 1.4826 * mad;
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (Math.abs(residuals[i] - median) > limit) count++;
+        }
+        return count;
+    }
+
+    /**
+     * 就地排序后取中位数
+     */
+    private static double median(int[] values, int n) {
+        if (n == 0) return 0;
+        Arrays.sort(values, 0, n);
+        return n % 2 == 1 ? values[n / 2] : (values[n / 2 - 1] + values[n / 2]) / 2.0;
+    }
+
+    private static double mean(int[] values, int from, int to) {
+        long sum = 0;
+        for (int i = from; i < to; i++) sum += values[i];
+        return to > from ? (double) sum / (to - from) : 0;
+    }
+}
@@ -0,0 +1,310 @@
+package com.example.edog.utils;
+
+import java.util.Arrays;
+
+/**
+ * 拼音相似度计算
+ * 直接在 char 上计数：a-z 使用固定 26 槽向量，其他字符使用开放寻址计数表；
+ * 计数数组按线程复用，单次计算不分配内存，可用于每一条中间识别结果的模糊匹配。
+ * 提供字符频率余弦、二元组(bigram)余弦与 Jaro-Winkler 三种度量，以及一对多的批量接口。
+ */
+public final class PinyinSimilarity {
+
+    private static final int LETTERS = 26;
+    // bigram 字母表：a-z + 一个"其他字符"桶
+    private static final int BIGRAM_SYMBOLS = LETTERS + 1;
+    private static final int BIGRAM_SLOTS = BIGRAM_SYMBOLS * BIGRAM_SYMBOLS;
+    private static final int EMPTY = -1;
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private PinyinSimilarity() {
+    }
+
+    /**
+     * 线程私有的计数缓冲区
+     */
+    private static final class Scratch {
+        final int[] letters = new int[2 * LETTERS];
+        int[] keys = new int[64];
+        int[] counts = new int[2 * 64];
+        int otherSize;
+
+        final int[] bigrams = new int[2 * BIGRAM_SLOTS];
+        final int[] touched = new int[BIGRAM_SLOTS];
+        int touchedSize;
+
+        boolean[] matchedA = new boolean[64];
+        boolean[] matchedB = new boolean[64];
+
+        Scratch() {
+            Arrays.fill(keys, EMPTY);
+        }
+
+        void resetChars() {
+            Arrays.fill(letters, 0);
+            if (otherSize > 0) {
+                Arrays.fill(keys, EMPTY);
+                Arrays.fill(counts, 0);
+                otherSize = 0;
+            }
+        }
+
+        void resetBigrams() {
+            for (int i = 0; i < touchedSize; i++) {
+                int slot = touched[i];
+                bigrams[slot] = 0;
+                bigrams[BIGRAM_SLOTS + slot] = 0;
+            }
+            touchedSize = 0;
+        }
+
+        /**
+         * 在开放寻址表中为字符计数；side = 0/1 表示第一/第二个字符串
+         */
+        void countOther(char c, int side) {
+            if ((otherSize + 1) * 2 > keys.length) grow();
+            int mask = keys.length - 1;
+            int slot = (c * 0x9E3779B1) >>> 16 & mask;
+            while (keys[slot] != EMPTY && keys[slot] != c) slot = (slot + 1) & mask;
+            if (keys[slot] == EMPTY) {
+                keys[slot] = c;
+                otherSize++;
+            }
+            counts[2 * slot + side]++;
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            int[] oldCounts = counts;
+            keys = new int[oldKeys.length * 2];
+            counts = new int[oldCounts.length * 2];
+            Arrays.fill(keys, EMPTY);
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == EMPTY) continue;
+                int slot = (oldKeys[i] * 0x9E3779B1) >>> 16 & mask;
+                while (keys[slot] != EMPTY) slot = (slot + 1) & mask;
+                keys[slot] = oldKeys[i];
+                counts[2 * slot] = oldCounts[2 * i];
+                counts[2 * slot + 1] = oldCounts[2 * i + 1];
+            }
+        }
+
+        void ensureMatchCapacity(int lenA, int lenB) {
+            if (matchedA.length < lenA) matchedA = new boolean[Math.max(lenA, matchedA.length * 2)];
+            if (matchedB.length < lenB) matchedB = new boolean[Math.max(lenB, matchedB.length * 2)];
+        }
+    }
+
+    // ---------------------------------------------------------------- 字符频率余弦
+
+    /**
+     * 字符频率余弦相似度（与原 PinyinUtils.similarity 语义一致）
+     */
+    public static double cosine(CharSequence s1, CharSequence s2) {
+        if (s1 == null || s2 == null) return 0;
+        if (s1.length() == 0 || s2.length() == 0) return s1.length() == s2.length() ? 1.0 : 0;
+
+        Scratch sc = SCRATCH.get();
+        sc.resetChars();
+        countChars(sc, s1, 0);
+        countChars(sc, s2, 1);
+        return cosineOfCounts(sc);
+    }
+
+    private static void countChars(Scratch sc, CharSequence s, int side) {
+        for (int i = 0, len = s.length(); i < len; i++) {
+            char c = s.charAt(i);
+            if (c >= 'a' && c <= 'z') sc.letters[side * LETTERS + (c - 'a')]++;
+            else sc.countOther(c, side);
+        }
+    }
+
+    private static double cosineOfCounts(Scratch sc) {
+        long dot = 0, norm1 = 0, norm2 = 0;
+        for (int i = 0; i < LETTERS; i++) {
+            int a = sc.letters[i];
+            int b = sc.letters[LETTERS + i];
+            dot += (long) a * b;
+            norm1 += (long) a * a;
+            norm2 += (long) b * b;
+        }
+        if (sc.otherSize > 0) {
+            for (int slot = 0; slot < sc.keys.length; slot++) {
+                if (sc.keys[slot] == EMPTY) continue;
+                int a = sc.counts[2 * slot];
+                int b = sc.counts[2 * slot + 1];
+                dot += (long) a * b;
+                norm1 += (long) a * a;
+                norm2 += (long) b * b;
+            }
+        }
+        return (norm1 == 0 || norm2 == 0) ? 0 : (dot / Math.sqrt(norm1) / Math.sqrt(norm2));
+    }
+
+    // ---------------------------------------------------------------- bigram 余弦
+
+    /**
+     * 相邻字符二元组的余弦相似度，比单字符频率更能区分字母顺序（如 "xiao" 与 "aoxi"）
+     */
+    public static double bigramCosine(CharSequence s1, CharSequence s2) {
+        if (s1 == null || s2 == null) return 0;
+        if (s1.length() < 2 || s2.length() < 2) return cosine(s1, s2);
+
+        Scratch sc = SCRATCH.get();
+        sc.resetBigrams();
+        countBigrams(sc, s1, 0);
+        countBigrams(sc, s2, 1);
+        return cosineOfBigrams(sc);
+    }
+
+    private static void countBigrams(Scratch sc, CharSequence s, int side) {
+        int prev = symbol(s.charAt(0));
+        for (int i = 1, len = s.length(); i < len; i++) {
+            int cur = symbol(s.charAt(i));
+            int slot = prev * BIGRAM_SYMBOLS + cur;
+            if (sc.bigrams[slot] == 0 && sc.bigrams[BIGRAM_SLOTS + slot] == 0) {
+                sc.touched[sc.touchedSize++] = slot;
+            }
+            sc.bigrams[side * BIGRAM_SLOTS + slot]++;
+            prev = cur;
+        }
+    }
+
+    private static double cosineOfBigrams(Scratch sc) {
+        long dot = 0, norm1 = 0, norm2 = 0;
+        for (int i = 0; i < sc.touchedSize; i++) {
+            int slot = sc.touched[i];
+            int a = sc.bigrams[slot];
+            int b = sc.bigrams[BIGRAM_SLOTS + slot];
+            dot += (long) a * b;
+            norm1 += (long) a * a;
+            norm2 += (long) b * b;
+        }
+        return (norm1 == 0 || norm2 == 0) ? 0 : (dot / Math.sqrt(norm1) / Math.sqrt(norm2));
+    }
+
+    private static int symbol(char c) {
+        return c >= 'a' && c <= 'z' ? c - 'a' : LETTERS;
+    }
+
+    // ---------------------------------------------------------------- Jaro-Winkler
+
+    /**
+     * Jaro-Winkler 相似度，对公共前缀给予加权，适合短拼音（唤醒词、设备名、命令词）
+     */
+    public static double jaroWinkler(CharSequence s1, CharSequence s2) {
+        if (s1 == null || s2 == null) return 0;
+        int len1 = s1.length(), len2 = s2.length();
+        if (len1 == 0 && len2 == 0) return 1.0;
+        if (len1 == 0 || len2 == 0) return 0;
+
+        Scratch sc = SCRATCH.get();
+        sc.ensureMatchCapacity(len1, len2);
+        boolean[] m1 = sc.matchedA;
+        boolean[] m2 = sc.matchedB;
+        Arrays.fill(m1, 0, len1, false);
+        Arrays.fill(m2, 0, len2, false);
+
+        int window = Math.max(0, Math.max(len1, len2) / 2 - 1);
+        int matches = 0;
+        for (int i = 0; i < len1; i++) {
+            int from = Math.max(0, i - window);
+            int to = Math.min(len2 - 1, i + window);
+            char c = s1.charAt(i);
+            for (int j = from; j <= to; j++) {
+                if (!m2[j] && s2.charAt(j) == c) {
+                    m1[i] = true;
+                    m2[j] = true;
+                    matches++;
+                    break;
+                }
+            }
+        }
+        if (matches == 0) return 0;
+
+        int transpositions = 0;
+        for (int i = 0, j = 0; i < len1; i++) {
+            if (!m1[i]) continue;
+            while (!m2[j]) j++;
+            if (s1.charAt(i) != s2.charAt(j)) transpositions++;
+            j++;
+        }
+
+        double m = matches;
+        double jaro = (m / len1 + m / len2 + (m - transpositions / 2.0) / m) / 3.0;
+
+        int prefix = 0;
+        int maxPrefix = Math.min(4, Math.min(len1, len2));
+        while (prefix < maxPrefix && s1.charAt(prefix) == s2.charAt(prefix)) prefix++;
+        return jaro + prefix * 0.1 * (1 - jaro);
+    }
+
+    // ---------------------------------------------------------------- 批量接口
+
+    public enum Metric {
+        COSINE, BIGRAM_COSINE, JARO_WINKLER
+    }
+
+    /**
+     * 用一个查询串对一组候选打分
+     * 字符频率余弦只统计一次查询串，之后每个候选只重新统计自身
+     *
+     * @param scores 输出数组，长度不小于候选数，可为 null
+     * @return 得分最高的候选下标；候选为空时返回 -1
+     */
+    public static int bestMatch(CharSequence query, CharSequence[] candidates, Metric metric, double[] scores) {
+        if (query == null || candidates == null || candidates.length == 0) return -1;
+
+        Scratch sc = SCRATCH.get();
+        int best = -1;
+        double bestScore = -1;
+        boolean queryCounted = false;
+        for (int i = 0; i < candidates.length; i++) {
+            CharSequence candidate = candidates[i];
+            double score;
+            if (candidate == null) {
+                score = 0;
+            } else {
+                switch (metric) {
+                    case COSINE:
+                        score = cosineAgainstQuery(sc, query, candidate, !queryCounted);
+                        queryCounted = true;
+                        break;
+                    case BIGRAM_COSINE:
+                        score = bigramCosine(query, candidate);
+                        break;
+                    default:
+                        score = jaroWinkler(query, candidate);
+                        break;
+                }
+            }
+            if (scores != null) scores[i] = score;
+            if (score > bestScore) {
+                bestScore = score;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 查询串的计数保留在 side 0，只清空并重新统计候选所在的 side 1
+     */
+    private static double cosineAgainstQuery(Scratch sc, CharSequence query, CharSequence candidate, boolean countQuery) {
+        if (query.length() == 0) return candidate.length() == 0 ? 1.0 : 0;
+        // 先统计查询串再判断候选是否为空，调用方据此认为查询串已统计
+        if (countQuery) {
+            sc.resetChars();
+            countChars(sc, query, 0);
+        }
+        if (candidate.length() == 0) return 0;
+        if (!countQuery) {
+            Arrays.fill(sc.letters, LETTERS, 2 * LETTERS, 0);
+            for (int slot = 0; slot < sc.keys.length; slot++) sc.counts[2 * slot + 1] = 0;
+        }
+        countChars(sc, candidate, 1);
+        return cosineOfCounts(sc);
+    }
+}
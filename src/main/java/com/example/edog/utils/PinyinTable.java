@@ -0,0 +1,82 @@
+package com.example.edog.utils;
+
+import net.sourceforge.pinyin4j.PinyinHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 汉字拼音查找表
+ * 启动时把 U+4E00–U+9FA5 的常用读音（无声调、小写、仅字母）一次性从 pinyin4j 取出并驻留，
+ * 之后的转换只是一次数组下标访问，不再走 pinyin4j 的属性查找和正则替换。
+ * 多音字取 pinyin4j 返回的第一个读音，与原先逐字调用的行为一致。
+ */
+public final class PinyinTable {
+
+    private static final Logger log = LoggerFactory.getLogger(PinyinTable.class);
+
+    public static final char FIRST = '\u4E00';
+    public static final char LAST = '\u9FA5';
+
+    private static final String[] TABLE = build();
+
+    private PinyinTable() {
+    }
+
+    private static String[] build() {
+        long start = System.currentTimeMillis();
+        String[] table = new String[LAST - FIRST + 1];
+        for (char c = FIRST; c <= LAST; c++) {
+            table[c - FIRST] = lookup(c);
+        }
+        log.info("拼音查找表构建完成: {} 个汉字, 耗时 {}ms", table.length, System.currentTimeMillis() - start);
+        return table;
+    }
+
+    /**
+     * 直接查询 pinyin4j（只在建表和表外字符时使用）
+     */
+    private static String lookup(char c) {
+        try {
+            String[] pinyin = PinyinHelper.toHanyuPinyinStringArray(c);
+            if (pinyin == null || pinyin.length == 0) return null;
+            String raw = pinyin[0];
+            StringBuilder sb = new StringBuilder(raw.length());
+            for (int i = 0; i < raw.length(); i++) {
+                char ch = raw.charAt(i);
+                if (ch >= 'a' && ch <= 'z') sb.append(ch);
+                else if (ch >= 'A' && ch <= 'Z') sb.append((char) (ch + ('a' - 'A')));
+            }
+            return sb.length() == 0 ? null : sb.toString().intern();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * 提前触发建表，避免首次识别结果承担建表开销
+     */
+    public static void preload() {
+        // 访问静态字段即完成类初始化
+        log.debug("拼音查找表已就绪: {}", TABLE.length);
+    }
+
+    /**
+     * 是否为查找表覆盖的汉字
+     */
+    public static boolean isHanzi(char c) {
+        return c >= FIRST && c <= LAST;
+    }
+
+    /**
+     * 查询单个字符的拼音
+     * @return 无声调小写拼音；非汉字或无读音时返回 null
+     */
+    public static String get(char c) {
+        if (c >= FIRST && c <= LAST) return TABLE[c - FIRST];
+        // 表外的 CJK 字符（〇、扩展 A 区、兼容汉字）较少见，走慢路径
+        if (c == '\u3007' || (c >= '\u3400' && c <= '\u4DBF') || (c >= '\uF900' && c <= '\uFAFF')) {
+            return lookup(c);
+        }
+        return null;
+    }
+}
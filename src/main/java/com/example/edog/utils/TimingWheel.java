@@ -0,0 +1,180 @@
+package com.example.edog.utils;
+
+import java.util.function.Consumer;
+
+/**
+ * 分层时间轮
+ * 第一层每格 tickMs、共 wheelSize 格；更远的到期时间放入上一层（每格为下一层一整圈），按需创建。
+ * 插入与取消都是 O(1)（双向链表）；每推进一个 tick 只处理第一层的一个格子，
+ * 上层格子在下一层转完一圈时整体下放一次，因此每个 tick 的开销与任务总数无关，只与到期和下放的任务数有关。
+ * 非线程安全，调用方加锁。
+ *
+ * @param <T> 任务内容
+ */
+public final class TimingWheel<T> {
+
+    /**
+     * 时间轮中的一个任务，用于取消
+     */
+    public static final class Entry<T> {
+        private final T value;
+        private final long expiration;
+        private Bucket<T> bucket;
+        private Entry<T> prev;
+        private Entry<T> next;
+
+        private Entry(T value, long expiration) {
+            this.value = value;
+            this.expiration = expiration;
+        }
+
+        public T getValue() {
+            return value;
+        }
+
+        public long getExpiration() {
+            return expiration;
+        }
+
+        public boolean isScheduled() {
+            return bucket != null;
+        }
+    }
+
+    private static final class Bucket<T> {
+        private final Entry<T> head = new Entry<>(null, 0);
+
+        Bucket() {
+            head.prev = head;
+            head.next = head;
+        }
+
+        void add(Entry<T> entry) {
+            entry.bucket = this;
+            entry.prev = head.prev;
+            entry.next = head;
+            head.prev.next = entry;
+            head.prev = entry;
+        }
+
+        void remove(Entry<T> entry) {
+            entry.prev.next = entry.next;
+            entry.next.prev = entry.prev;
+            entry.prev = null;
+            entry.next = null;
+            entry.bucket = null;
+        }
+
+        /**
+         * 取出全部任务并清空
+         */
+        void drain(Consumer<Entry<T>> sink) {
+            Entry<T> e = head.next;
+            head.next = head;
+            head.prev = head;
+            while (e != head) {
+                Entry<T> next = e.next;
+                e.prev = null;
+                e.next = null;
+                e.bucket = null;
+                sink.accept(e);
+                e = next;
+            }
+        }
+    }
+
+    private final long tickMs;
+    private final int wheelSize;
+    private final long interval;
+    private final Bucket<T>[] buckets;
+    private final TimingWheel<T> root;
+    private TimingWheel<T> overflow;
+    private long currentTime;
+    private int size;
+
+    /**
+     * @param startMs 起始时间，之前的到期时间视为已到期
+     */
+    public TimingWheel(long tickMs, int wheelSize, long startMs) {
+        this(tickMs, wheelSize, startMs, null);
+    }
+
+    private TimingWheel(long tickMs, int wheelSize, long startMs, TimingWheel<T> root) {
+        this.tickMs = tickMs;
+        this.wheelSize = wheelSize;
+        this.interval = tickMs * wheelSize;
+        this.currentTime = startMs - Math.floorMod(startMs, tickMs);
+        this.root = root != null ? root : this;
+        @SuppressWarnings("unchecked")
+        Bucket<T>[] slots = (Bucket<T>[]) new Bucket<?>[wheelSize];
+        this.buckets = slots;
+        for (int i = 0; i < wheelSize; i++) buckets[i] = new Bucket<>();
+    }
+
+    /**
+     * 加入一个任务
+     * @return 到期时间已过时返回 null，由调用方立即执行
+     */
+    public Entry<T> schedule(T value, long expirationMs) {
+        Entry<T> entry = new Entry<>(value, expirationMs);
+        if (!insert(entry)) return null;
+        size++;
+        return entry;
+    }
+
+    public void cancel(Entry<T> entry) {
+        if (entry.bucket == null) return;
+        entry.bucket.remove(entry);
+        size--;
+    }
+
+    private boolean insert(Entry<T> entry) {
+        long expiration = entry.expiration;
+        if (expiration < currentTime) return false;
+        if (expiration < currentTime + interval) {
+            buckets[(int) Math.floorMod(expiration / tickMs, (long) wheelSize)].add(entry);
+            return true;
+        }
+        if (overflow == null) overflow = new TimingWheel<>(interval, wheelSize, currentTime, root);
+        return overflow.insert(entry);
+    }
+
+    /**
+     * 推进到 nowMs，到期的任务交给 expired
+     */
+    public void advance(long nowMs, Consumer<Entry<T>> expired) {
+        while (currentTime + tickMs <= nowMs) {
+            buckets[(int) Math.floorMod(currentTime / tickMs, (long) wheelSize)].drain(e -> {
+                size--;
+                expired.accept(e);
+            });
+            currentTime += tickMs;
+            cascade(currentTime, expired);
+        }
+    }
+
+    /**
+     * 上层到达新的一格时，把该格的任务重新从第一层插入
+     */
+    private void cascade(long time, Consumer<Entry<T>> expired) {
+        TimingWheel<T> level = overflow;
+        while (level != null && Math.floorMod(time, level.tickMs) == 0) {
+            level.currentTime = time;
+            level.buckets[(int) Math.floorMod(time / level.tickMs, (long) wheelSize)].drain(e -> {
+                if (!root.insert(e)) {
+                    size--;
+                    expired.accept(e);
+                }
+            });
+            level = level.overflow;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getCurrentTime() {
+        return currentTime;
+    }
+}
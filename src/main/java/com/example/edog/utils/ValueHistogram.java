@@ -0,0 +1,102 @@
+package com.example.edog.utils;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * 有界整数取值的分位数草图
+ * 把 [0, maxValue] 按固定宽度分桶计数，可合并、可紧凑序列化，适合心率、呼吸频率这类取值范围很小的生理指标。
+ * 桶宽为 1 时分位数是精确的；更宽的桶在桶内按线性插值估计。
+ *
+ * 序列化格式：非空桶数(varint)，随后每个非空桶为 与上一非空桶的下标差(varint) + 计数(varint)
+ */
+public final class ValueHistogram {
+
+    private final int binWidth;
+    private final int[] counts;
+    private long total;
+
+    public ValueHistogram(int maxValue, int binWidth) {
+        this.binWidth = Math.max(1, binWidth);
+        this.counts = new int[maxValue / this.binWidth + 1];
+    }
+
+    /**
+     * 记录一个取值，超出范围的取值计入两端的桶
+     */
+    public void add(int value) {
+        int bin = Math.max(0, Math.min(counts.length - 1, value / binWidth));
+        counts[bin]++;
+        total++;
+    }
+
+    public void merge(ValueHistogram other) {
+        int n = Math.min(counts.length, other.counts.length);
+        for (int i = 0; i < n; i++) counts[i] += other.counts[i];
+        total += other.total;
+    }
+
+    public void clear() {
+        Arrays.fill(counts, 0);
+        total = 0;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * @param q 分位点，0-1
+     * @return 估计值；没有数据时返回 null
+     */
+    public Double quantile(double q) {
+        if (total == 0) return null;
+        double rank = Math.max(0, Math.min(1, q)) * total;
+        long cumulative = 0;
+        for (int i = 0; i < counts.length; i++) {
+            int c = counts[i];
+            if (c == 0) continue;
+            if (cumulative + c >= rank) {
+                if (binWidth == 1) return (double) i;
+                double within = (rank - cumulative) / c;
+                return i * binWidth + within * (binWidth - 1);
+            }
+            cumulative += c;
+        }
+        return (double) (counts.length - 1) * binWidth;
+    }
+
+    public byte[] encode() {
+        int nonEmpty = 0;
+        for (int c : counts) if (c != 0) nonEmpty++;
+        byte[] out = new byte[5 + nonEmpty * 10];
+        int pos = DeviceBinaryProtocol.writeVarint(out, 0, nonEmpty);
+        int previous = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) continue;
+            pos = DeviceBinaryProtocol.writeVarint(out, pos, i - previous);
+            pos = DeviceBinaryProtocol.writeVarint(out, pos, counts[i]);
+            previous = i;
+        }
+        return Arrays.copyOf(out, pos);
+    }
+
+    /**
+     * 把序列化的草图合并进来；数据为空或损坏时忽略剩余部分
+     */
+    public void mergeEncoded(byte[] data) {
+        if (data == null || data.length == 0) return;
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        long nonEmpty = DeviceBinaryProtocol.readVarint(buffer);
+        int bin = 0;
+        for (long i = 0; i < nonEmpty; i++) {
+            long delta = DeviceBinaryProtocol.readVarint(buffer);
+            long count = DeviceBinaryProtocol.readVarint(buffer);
+            if (delta < 0 || count < 0) return;
+            bin += (int) delta;
+            if (bin >= counts.length) return;
+            counts[bin] += (int) count;
+            total += count;
+        }
+    }
+}
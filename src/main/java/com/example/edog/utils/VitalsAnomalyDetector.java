@@ -0,0 +1,134 @@
+package com.example.edog.utils;
+
+import java.util.Arrays;
+
+/**
+ * 单台设备的健康数据异常检测
+ * 每个指标（心率、呼吸频率）维护指数加权的均值与方差作为个人基线，每条样本 O(1) 更新，状态大小固定：
+ * <ul>
+ *     <li>Z_SCORE：样本偏离基线超过 zThreshold 个标准差（需先积累 warmupSamples 条样本）</li>
+ *     <li>SUSTAINED_HIGH / SUSTAINED_LOW：连续 sustainedSamples 条高于上限或低于下限，每次持续只报一次</li>
+ * </ul>
+ * 同一指标的同一规则在 cooldownMs 内只报一次。非线程安全，调用方按设备串行调用。
+ */
+public final class VitalsAnomalyDetector {
+
+    public enum Metric {
+        HEART_RATE, BREATHING_RATE
+    }
+
+    public enum Rule {
+        Z_SCORE, SUSTAINED_HIGH, SUSTAINED_LOW
+    }
+
+    /**
+     * 检测参数，所有设备共享
+     */
+    public static final class Config {
+        /** EWMA 平滑系数，越大基线跟随越快 */
+        public double alpha = 0.05;
+        public double zThreshold = 4.0;
+        public int warmupSamples = 20;
+        /** 标准差下限，避免基线非常平稳时微小波动也被判为异常 */
+        public double heartRateMinStddev = 3.0;
+        public double breathingRateMinStddev = 1.5;
+        public int heartRateHigh = 120;
+        public int heartRateLow = 40;
+        public int breathingRateHigh = 30;
+        public int breathingRateLow = 6;
+        public int sustainedSamples = 3;
+        public long cooldownMs = 600000;
+    }
+
+    private static final int RULES = Rule.values().length;
+
+    private static final class Channel {
+        double mean;
+        double variance;
+        int samples;
+        int highRun;
+        int lowRun;
+    }
+
+    private final Config config;
+    private final Channel heartRate = new Channel();
+    private final Channel breathingRate = new Channel();
+    private final long[] lastAlertAt = new long[Metric.values().length * RULES];
+    private long lastTimestamp = Long.MIN_VALUE;
+
+    public VitalsAnomalyDetector(Config config) {
+        this.config = config;
+        Arrays.fill(lastAlertAt, Long.MIN_VALUE);
+    }
+
+    /**
+     * 异常位：{@link #update} 返回值中对应 (指标, 规则) 的位
+     */
+    public static int bit(Metric metric, Rule rule) {
+        return 1 << (metric.ordinal() * RULES + rule.ordinal());
+    }
+
+    public static Metric metricOf(int bitIndex) {
+        return Metric.values()[bitIndex / RULES];
+    }
+
+    public static Rule ruleOf(int bitIndex) {
+        return Rule.values()[bitIndex % RULES];
+    }
+
+    /**
+     * 处理一条样本，不晚于已处理样本的数据忽略：补传的旧样本，以及设备重试时重发的最后一条
+     * （检测在 (deviceId, seq) 去重之前进行，重复样本不能再次计入基线和持续计数）
+     * @return 触发的异常位，0 表示无异常
+     */
+    public int update(long timestamp, int heartRateValue, int breathingRateValue) {
+        if (timestamp <= lastTimestamp) return 0;
+        lastTimestamp = timestamp;
+        int fired = check(heartRate, Metric.HEART_RATE, heartRateValue, config.heartRateMinStddev,
+                config.heartRateHigh, config.heartRateLow, timestamp);
+        fired |= check(breathingRate, Metric.BREATHING_RATE, breathingRateValue, config.breathingRateMinStddev,
+                config.breathingRateHigh, config.breathingRateLow, timestamp);
+        return fired;
+    }
+
+    private int check(Channel c, Metric metric, int value, double minStddev, int high, int low, long timestamp) {
+        int fired = 0;
+
+        // 先用更新前的基线判断，再把本条样本并入基线
+        if (c.samples >= config.warmupSamples) {
+            double stddev = Math.max(minStddev, Math.sqrt(c.variance));
+            if (Math.abs(value - c.mean) / stddev > config.zThreshold) {
+                fired |= fire(metric, Rule.Z_SCORE, timestamp);
+            }
+        }
+        if (c.samples == 0) {
+            c.mean = value;
+            c.variance = 0;
+        } else {
+            double diff = value - c.mean;
+            double increment = config.alpha * diff;
+            c.mean += increment;
+            c.variance = (1 - config.alpha) * (c.variance + diff * increment);
+        }
+        if (c.samples < Integer.MAX_VALUE) c.samples++;
+
+        c.highRun = value > high ? c.highRun + 1 : 0;
+        c.lowRun = value < low ? c.lowRun + 1 : 0;
+        if (c.highRun == config.sustainedSamples) fired |= fire(metric, Rule.SUSTAINED_HIGH, timestamp);
+        if (c.lowRun == config.sustainedSamples) fired |= fire(metric, Rule.SUSTAINED_LOW, timestamp);
+        return fired;
+    }
+
+    private int fire(Metric metric, Rule rule, long timestamp) {
+        int index = metric.ordinal() * RULES + rule.ordinal();
+        long last = lastAlertAt[index];
+        if (last != Long.MIN_VALUE && timestamp - last < config.cooldownMs) return 0;
+        lastAlertAt[index] = timestamp;
+        return 1 << index;
+    }
+
+    /** 当前基线均值 */
+    public double getBaseline(Metric metric) {
+        return metric == Metric.HEART_RATE ? heartRate.mean : breathingRate.mean;
+    }
+}
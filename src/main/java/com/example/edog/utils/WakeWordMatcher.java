@@ -0,0 +1,128 @@
+package com.example.edog.utils;
+
+import java.util.Arrays;
+
+/**
+ * 唤醒词模糊匹配器（Myers/Hyyrö 位并行近似子串匹配）
+ * 构造时为每个唤醒词预计算字符位掩码，匹配时对文本只扫描一遍即可得到
+ * 每个唤醒词与文本中任意子串的最小编辑距离，多个唤醒词（如设备自定义名称）在同一次扫描中完成。
+ * 唤醒词为小写拼音，长度不超过 63；匹配过程不分配内存。
+ */
+public final class WakeWordMatcher {
+
+    private static final int ALPHABET = 128;
+    private static final int MAX_PATTERN_LENGTH = 63;
+
+    private final String[] words;
+    private final long[][] peq;       // peq[word][char]：字符在唤醒词中出现位置的位掩码
+    private final long[] highBits;
+    private final int[] lengths;
+    private final int[] maxDistances;
+
+    // 每个线程一份扫描状态，避免每次匹配分配数组
+    private final ThreadLocal<ScanState> scratch;
+
+    private static final class ScanState {
+        private final long[] pv;
+        private final long[] mv;
+        private final int[] score;
+        private final int[] best;
+
+        ScanState(int n) {
+            pv = new long[n];
+            mv = new long[n];
+            score = new int[n];
+            best = new int[n];
+        }
+    }
+
+    /**
+     * @param similarityThreshold 相似度阈值，允许的编辑距离为 floor(len * (1 - threshold))
+     * @param pinyinWords 唤醒词拼音（仅 a-z）
+     */
+    public WakeWordMatcher(double similarityThreshold, String... pinyinWords) {
+        int n = pinyinWords.length;
+        this.words = new String[n];
+        this.peq = new long[n][ALPHABET];
+        this.highBits = new long[n];
+        this.lengths = new int[n];
+        this.maxDistances = new int[n];
+
+        for (int w = 0; w < n; w++) {
+            String word = pinyinWords[w];
+            if (word == null || word.isEmpty() || word.length() > MAX_PATTERN_LENGTH) {
+                throw new IllegalArgumentException("唤醒词拼音长度必须在 1-" + MAX_PATTERN_LENGTH + " 之间: " + word);
+            }
+            words[w] = word;
+            int m = word.length();
+            for (int i = 0; i < m; i++) {
+                char c = word.charAt(i);
+                if (c < ALPHABET) peq[w][c] |= 1L << i;
+            }
+            lengths[w] = m;
+            highBits[w] = 1L << (m - 1);
+            maxDistances[w] = (int) Math.floor(m * (1.0 - similarityThreshold) + 1e-9);
+        }
+        this.scratch = ThreadLocal.withInitial(() -> new ScanState(n));
+    }
+
+    /**
+     * 在文本中查找最匹配的唤醒词
+     * @param text 去除非字母字符后的拼音
+     * @return 编辑距离在阈值内且距离最小（相同时取较早登记）的唤醒词下标；没有匹配返回 -1
+     */
+    public int match(CharSequence text) {
+        if (text == null || text.length() == 0) return -1;
+
+        int n = words.length;
+        ScanState st = scratch.get();
+        for (int w = 0; w < n; w++) {
+            st.pv[w] = -1L;
+            st.mv[w] = 0L;
+            st.score[w] = lengths[w];
+            st.best[w] = lengths[w];
+        }
+
+        for (int i = 0, len = text.length(); i < len; i++) {
+            char c = text.charAt(i);
+            for (int w = 0; w < n; w++) {
+                long pv = st.pv[w];
+                long mv = st.mv[w];
+                long eq = c < ALPHABET ? peq[w][c] : 0L;
+
+                long xv = eq | mv;
+                long xh = (((eq & pv) + pv) ^ pv) | eq;
+                long ph = mv | ~(xh | pv);
+                long mh = pv & xh;
+
+                if ((ph & highBits[w]) != 0) st.score[w]++;
+                else if ((mh & highBits[w]) != 0) st.score[w]--;
+                if (st.score[w] < st.best[w]) st.best[w] = st.score[w];
+
+                // 子串匹配：文本起点不计代价，因此左移时不补 1
+                ph <<= 1;
+                mh <<= 1;
+                st.pv[w] = mh | ~(xv | ph);
+                st.mv[w] = ph & xv;
+            }
+        }
+
+        int bestWord = -1;
+        int bestDistance = Integer.MAX_VALUE;
+        for (int w = 0; w < n; w++) {
+            if (st.best[w] <= maxDistances[w] && st.best[w] < bestDistance) {
+                bestDistance = st.best[w];
+                bestWord = w;
+            }
+        }
+        return bestWord;
+    }
+
+    public String getWord(int index) {
+        return words[index];
+    }
+
+    public String[] getWords() {
+        return Arrays.copyOf(words, words.length);
+    }
+}
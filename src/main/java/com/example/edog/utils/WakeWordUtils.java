@@ -1,6 +1,5 @@
 package com.example.edog.utils;
 
-import net.sourceforge.pinyin4j.PinyinHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -11,66 +10,54 @@ public class WakeWordUtils {
     private static final String WAKE_WORD_PINYIN = "xiaoaitongxue";
     private static final double WAKE_WORD_SIMILARITY_THRESHOLD = 0.75;
 
+    private static final WakeWordMatcher DEFAULT_MATCHER = new WakeWordMatcher(WAKE_WORD_SIMILARITY_THRESHOLD, WAKE_WORD_PINYIN);
+
     /**
      * 检测是否为唤醒词
-     * 支持完全匹配、包含匹配和相似度匹配
+     * 在拼音中查找与唤醒词编辑距离足够小的子串，可容忍 "小爱童鞋"、"小艾同学" 等识别偏差，
+     * 也能处理唤醒词前后带有其他字的情况
      */
     public static boolean isWakeWord(String cleanPinyin) {
-        if (cleanPinyin == null || cleanPinyin.isEmpty()) return false;
-
-        // 1. 完全包含唤醒词拼音
-        if (cleanPinyin.contains(WAKE_WORD_PINYIN)) {
-            return true;
-        }
-
-        // 2. 相似度匹配（处理语音识别不准确的情况）
-        // 检查是否与唤醒词相似（如"小爱童鞋"、"小艾同学"等）
-        double similarity = calculatePinyinSimilarity(cleanPinyin, WAKE_WORD_PINYIN);
-        if (similarity >= WAKE_WORD_SIMILARITY_THRESHOLD) {
-            log.debug("唤醒词相似度匹配: {} vs {}, similarity={}", cleanPinyin, WAKE_WORD_PINYIN, similarity);
-            return true;
-        }
+        return DEFAULT_MATCHER.match(cleanPinyin) >= 0;
+    }
 
-        // 3. 检查是否包含相似的子串（处理前后有其他字的情况）
-        if (cleanPinyin.length() > WAKE_WORD_PINYIN.length()) {
-            // 滑动窗口检查
-            int windowSize = WAKE_WORD_PINYIN.length();
-            for (int i = 0; i <= cleanPinyin.length() - windowSize; i++) {
-                String sub = cleanPinyin.substring(i, i + windowSize);
-                double subSimilarity = calculatePinyinSimilarity(sub, WAKE_WORD_PINYIN);
-                if (subSimilarity >= WAKE_WORD_SIMILARITY_THRESHOLD) {
-                    log.debug("唤醒词子串相似度匹配: {} vs {}, similarity={}", sub, WAKE_WORD_PINYIN, subSimilarity);
-                    return true;
-                }
+    /**
+     * 默认唤醒词之外再加上设备自定义的名称（中文或拼音），构造一个一次扫描即可匹配全部名称的匹配器
+     */
+    public static WakeWordMatcher newMatcher(String... customNames) {
+        java.util.LinkedHashSet<String> words = new java.util.LinkedHashSet<>();
+        words.add(WAKE_WORD_PINYIN);
+        if (customNames != null) {
+            for (String name : customNames) {
+                if (name == null || name.isBlank()) continue;
+                String pinyin = convertToPinyin(name).replaceAll("[^a-z]", "");
+                if (!pinyin.isEmpty() && pinyin.length() <= 63) words.add(pinyin);
             }
         }
+        if (words.size() == 1) return DEFAULT_MATCHER;
+        log.info("构造自定义唤醒词匹配器: {}", words);
+        return new WakeWordMatcher(WAKE_WORD_SIMILARITY_THRESHOLD, words.toArray(new String[0]));
+    }
 
-        return false;
+    public static WakeWordMatcher defaultMatcher() {
+        return DEFAULT_MATCHER;
     }
 
     /**
      * 将文本转换为拼音
      */
     public static String convertToPinyin(String text) {
-        StringBuilder pinyin = new StringBuilder();
-        for (char c : text.toCharArray()) {
-            try {
-                String[] pinyinArray = PinyinHelper.toHanyuPinyinStringArray(c);
-                if (pinyinArray != null && pinyinArray.length > 0) {
-                    String raw = pinyinArray[0];
-                    pinyin.append(raw.replaceAll("[1-5]", ""));
-                } else {
-                    pinyin.append(c);
-                }
-            } catch (Exception e) {
-                pinyin.append(c);
-            }
+        StringBuilder pinyin = new StringBuilder(text.length() * 4);
+        for (int i = 0, len = text.length(); i < len; i++) {
+            char c = text.charAt(i);
+            String py = PinyinTable.get(c);
+            pinyin.append(py != null ? py : Character.toLowerCase(c));
         }
-        return pinyin.toString().toLowerCase();
+        return pinyin.toString();
     }
 
     /**
-     * 计算两个拼音字符串的相似度
+     * 计算两个拼音字符串的相似度（整串编辑距离，唤醒词检测已改用 {@link WakeWordMatcher}）
      */
     public static double calculatePinyinSimilarity(String p1, String p2) {
         if (p1 == null || p2 == null) return 0;
@@ -0,0 +1,15 @@
+-- 每晚睡眠与生命体征汇总：每台设备每晚一行，由夜间分析任务写入
+CREATE TABLE IF NOT EXISTS health_daily_summary (
+    device_id               VARCHAR(64) NOT NULL COMMENT '设备ID',
+    summary_date            DATE        NOT NULL COMMENT '夜间窗口结束所在日期',
+    sample_count            INT         NOT NULL COMMENT '有效样本数',
+    sleep_onset             DATETIME    NULL COMMENT '估计的入睡时间',
+    resting_heart_rate      INT         NULL COMMENT '静息心率',
+    avg_heart_rate          DOUBLE      NULL,
+    avg_breathing_rate      DOUBLE      NULL,
+    breathing_cv            DOUBLE      NULL COMMENT '入睡后呼吸频率变异系数',
+    heart_rate_outliers     INT         NOT NULL DEFAULT 0,
+    breathing_rate_outliers INT         NOT NULL DEFAULT 0,
+    computed_at             DATETIME    NOT NULL,
+    PRIMARY KEY (device_id, summary_date)
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4 COMMENT = '每晚睡眠与生命体征汇总';
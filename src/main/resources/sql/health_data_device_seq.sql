@@ -0,0 +1,6 @@
+-- 健康数据批量上传：记录设备ID与设备端序号，(device_id, seq) 唯一使重试不产生重复行
+-- 旧的单条上传不带设备信息，两列为 NULL，不受唯一约束限制
+ALTER TABLE health_data
+    ADD COLUMN device_id VARCHAR(64) NULL COMMENT '设备ID' AFTER id,
+    ADD COLUMN seq BIGINT NULL COMMENT '设备端样本序号' AFTER device_id,
+    ADD UNIQUE KEY uk_health_data_device_seq (device_id, seq);
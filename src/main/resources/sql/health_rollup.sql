@@ -0,0 +1,20 @@
+-- 健康数据按设备的时间序列查询：(device_id, upload_time, id) 复合索引
+ALTER TABLE health_data
+    ADD INDEX idx_health_data_device_time (device_id, upload_time, id);
+
+-- 健康数据汇总：每台设备每个 1 分钟 / 1 小时 / 1 天时间桶一行，写入样本时增量维护
+CREATE TABLE IF NOT EXISTS health_rollup (
+    device_id             VARCHAR(64)    NOT NULL COMMENT '设备ID',
+    granularity           CHAR(2)        NOT NULL COMMENT '粒度：1m / 1h / 1d',
+    bucket_start          DATETIME       NOT NULL COMMENT '时间桶起点',
+    sample_count          INT            NOT NULL COMMENT '样本数',
+    heart_rate_min        INT            NOT NULL,
+    heart_rate_max        INT            NOT NULL,
+    heart_rate_sum        BIGINT         NOT NULL,
+    breathing_rate_min    INT            NOT NULL,
+    breathing_rate_max    INT            NOT NULL,
+    breathing_rate_sum    BIGINT         NOT NULL,
+    heart_rate_sketch     VARBINARY(1024) NULL COMMENT '心率分布草图',
+    breathing_rate_sketch VARBINARY(512)  NULL COMMENT '呼吸频率分布草图',
+    PRIMARY KEY (device_id, granularity, bucket_start)
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4 COMMENT = '健康数据汇总';
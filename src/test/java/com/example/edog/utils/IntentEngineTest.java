@@ -0,0 +1,43 @@
+package com.example.edog.utils;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 本地意图识别回归用例：期望结果为 "命令(参数)"，不应本地处理的句子为 "null"
+ */
+class IntentEngineTest {
+
+    @ParameterizedTest(name = "{0} -> {1}")
+    @CsvSource(delimiter = '|', value = {
+            // 句子里碰巧出现对象和数字，不是设置命令
+            "给我讲讲灯光的五个作用           | null",
+            "模仿一下两只老虎的声音           | null",
+            "色温是三千K好还是五千K好         | null",
+            "灯光有三种颜色                   | null",
+            // 疑问句
+            "为什么灯这么暗                   | null",
+            "音量怎么调                       | null",
+            // 绝对设置：设置动词、百分号、数字紧跟对象
+            "把亮度调到50                     | BRIGHTNESS_SET(50)",
+            "音量调到百分之五十               | VOLUME_SET(50)",
+            "亮度50                           | BRIGHTNESS_SET(50)",
+            "亮度 八十                        | BRIGHTNESS_SET(80)",
+            "色温70%                          | TEMP_SET(70)",
+            "声音设为三十                     | VOLUME_SET(30)",
+            // 相对调节
+            "亮度调高二十                     | BRIGHTNESS_UP(20)",
+            "亮度调高百分之二十               | BRIGHTNESS_UP(20)",
+            "音量加                           | VOLUME_UP(15)",
+            "把灯调亮一点                     | BRIGHTNESS_UP(15)",
+            "volume up                        | VOLUME_UP(15)",
+            // 完整短语
+            "开灯                             | LIGHT_ON(50)",
+            "调高亮度                         | BRIGHTNESS_UP_SMALL(10)",
+    })
+    void match(String text, String expected) {
+        assertEquals(expected, String.valueOf(IntentEngine.match(text)));
+    }
+}